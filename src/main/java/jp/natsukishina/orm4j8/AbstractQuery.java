@@ -7,29 +7,62 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jp.natsukishina.orm4j8.Order.Sort;
+import jp.natsukishina.orm4j8.annotations.FetchType;
 import jp.natsukishina.orm4j8.entity.BaseEntity;
 import jp.natsukishina.orm4j8.exception.DBException;
 
 abstract class AbstractQuery<E extends BaseEntity> implements Query<E> {
-	protected final Connection con;
+	protected Connection con;
 	protected final Class<E> clazz;
+	private final Supplier<Connection> connectionSupplier;
+	private final boolean releaseConnection;
 	private PreparedStatement pstmt;
+	private int updateCount = -1;
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
+	/**
+	 * 呼び出し元が管理するコネクションを使用するクエリ
+	 * @param con コネクション
+	 * @param clazz 操作対象テーブルのクラス
+	 */
 	AbstractQuery(Connection con, Class<E> clazz) {
 		this.con = con;
 		this.clazz = clazz;
+		this.connectionSupplier = () -> con;
+		this.releaseConnection = false;
+	}
+
+	/**
+	 * 実行時にコネクションを取得し、結果の読み出し後に返却するクエリ
+	 * @param connectionSupplier コネクションの取得元
+	 * @param clazz 操作対象テーブルのクラス
+	 */
+	AbstractQuery(Supplier<Connection> connectionSupplier, Class<E> clazz) {
+		this.clazz = clazz;
+		this.connectionSupplier = connectionSupplier;
+		this.releaseConnection = true;
 	}
 
 	/**
@@ -67,6 +100,15 @@ abstract class AbstractQuery<E extends BaseEntity> implements Query<E> {
 		return where(column, "=", actual);
 	}
 
+	@Override
+	public Query<E> whereIn(String column, Collection<?> values) {
+		if (values == null) {
+			throw new IllegalArgumentException("values must not be null");
+		}
+		List<Object> in = new ArrayList<>(values);
+		return where(() -> new Object[]{DBUtil.getColumn4Query(clazz, column), "IN", in});
+	}
+
 	protected Query<E> orWhere(Where<E> where) {
 		throw new UnsupportedOperationException();
 	}
@@ -156,68 +198,133 @@ abstract class AbstractQuery<E extends BaseEntity> implements Query<E> {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public Query<E> select(String... columns) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Query<E> fetch(Class<? extends BaseEntity> targetClass, FetchType fetchType) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Query<E> maxFetchDepth(int depth) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Query<E> fetchSize(int fetchSize) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Query<E> cached(Duration ttl) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public Query<E> execute() {
 		try {
+			if (con == null) {
+				con = connectionSupplier.get();
+			}
 			String rawQuery = buildQuery();
 			log.debug("rawQuery: " + rawQuery);
-			pstmt = con.prepareStatement(rawQuery);
+			pstmt = prepareStatement(rawQuery);
 			List<Object> paramsList = buildParamsListForPreparedStatement();
 			log.debug("params: " + paramsList);
-			IntStream.range(0, paramsList.size()).forEach(idx -> {
-				try {
-					Object obj = paramsList.get(idx);
-					Class<?> fieldClass = obj.getClass();
-					if (fieldClass.equals(Field.class)) {
-						fieldClass = ((Field) obj).getType();
-						if (DBUtil.isInt(fieldClass)) {
-							pstmt.setNull(idx + 1, Types.INTEGER);
-						} else if (DBUtil.isLong(fieldClass)) {
-							pstmt.setNull(idx + 1, Types.BIGINT);
-						} else if (DBUtil.isDouble(fieldClass)) {
-							pstmt.setNull(idx + 1, Types.DOUBLE);
-						} else if (DBUtil.isBoolean(fieldClass)) {
-							pstmt.setNull(idx + 1, Types.BOOLEAN);
-						} else if (DBUtil.isDate(fieldClass)) {
-							pstmt.setNull(idx + 1, Types.DATE);
-						} else if (DBUtil.isLocalDate(fieldClass)) {
-							pstmt.setNull(idx + 1, Types.DATE);
-						} else if (DBUtil.isLocalTime(fieldClass)) {
-							pstmt.setNull(idx + 1, Types.TIME);
-						} else if (DBUtil.isLocalDateTime(fieldClass)) {
-							pstmt.setNull(idx + 1, Types.TIMESTAMP);
-						} else {
-							pstmt.setNull(idx + 1, Types.VARCHAR);
-						}
-					} else if (DBUtil.isInt(fieldClass)) {
-						pstmt.setInt(idx + 1, (int) obj);
+			setParams(pstmt, paramsList);
+			log.info(DBUtil.getPreparedQuery(pstmt));
+			pstmt.execute();
+			updateCount = pstmt.getUpdateCount();
+			afterExecute(pstmt);
+			if (updateCount != -1) {
+				// 更新系の結果は保持済みのため、すぐにコネクションを返却する
+				close();
+			}
+			return this;
+		} catch (SQLException | RuntimeException e) {
+			close();
+			throw e instanceof DBException ? (DBException) e : new DBException(e);
+		}
+	}
+
+	/**
+	 * ステートメントにパラメータをセットします。<br>
+	 * {@link Field}はそのフィールドの型のNULLとしてセットします。
+	 * @param pstmt ステートメント
+	 * @param params パラメータ
+	 */
+	static void setParams(PreparedStatement pstmt, List<Object> params) {
+		IntStream.range(0, params.size()).forEach(idx -> {
+			try {
+				Object obj = params.get(idx);
+				Class<?> fieldClass = obj.getClass();
+				if (fieldClass.equals(Field.class)) {
+					fieldClass = ((Field) obj).getType();
+					if (DBUtil.isInt(fieldClass)) {
+						pstmt.setNull(idx + 1, Types.INTEGER);
 					} else if (DBUtil.isLong(fieldClass)) {
-						pstmt.setLong(idx + 1, (long) obj);
+						pstmt.setNull(idx + 1, Types.BIGINT);
 					} else if (DBUtil.isDouble(fieldClass)) {
-						pstmt.setDouble(idx + 1, (double) obj);
+						pstmt.setNull(idx + 1, Types.DOUBLE);
 					} else if (DBUtil.isBoolean(fieldClass)) {
-						pstmt.setBoolean(idx + 1, (boolean) obj);
+						pstmt.setNull(idx + 1, Types.BOOLEAN);
 					} else if (DBUtil.isDate(fieldClass)) {
-						pstmt.setDate(idx + 1, DBUtil.convertToSqlDate((Date) obj));
+						pstmt.setNull(idx + 1, Types.DATE);
 					} else if (DBUtil.isLocalDate(fieldClass)) {
-						pstmt.setDate(idx + 1, java.sql.Date.valueOf((LocalDate) obj));
+						pstmt.setNull(idx + 1, Types.DATE);
 					} else if (DBUtil.isLocalTime(fieldClass)) {
-						pstmt.setTime(idx + 1, java.sql.Time.valueOf((LocalTime) obj));
+						pstmt.setNull(idx + 1, Types.TIME);
 					} else if (DBUtil.isLocalDateTime(fieldClass)) {
-						pstmt.setTimestamp(idx + 1, java.sql.Timestamp.valueOf((LocalDateTime) obj));
+						pstmt.setNull(idx + 1, Types.TIMESTAMP);
 					} else {
-						pstmt.setString(idx + 1, (String) obj);
+						pstmt.setNull(idx + 1, Types.VARCHAR);
 					}
-				} catch (SQLException e) {
-					e.printStackTrace();
+				} else if (DBUtil.isInt(fieldClass)) {
+					pstmt.setInt(idx + 1, (int) obj);
+				} else if (DBUtil.isLong(fieldClass)) {
+					pstmt.setLong(idx + 1, (long) obj);
+				} else if (DBUtil.isDouble(fieldClass)) {
+					pstmt.setDouble(idx + 1, (double) obj);
+				} else if (DBUtil.isBoolean(fieldClass)) {
+					pstmt.setBoolean(idx + 1, (boolean) obj);
+				} else if (DBUtil.isDate(fieldClass)) {
+					pstmt.setDate(idx + 1, DBUtil.convertToSqlDate((Date) obj));
+				} else if (DBUtil.isLocalDate(fieldClass)) {
+					pstmt.setDate(idx + 1, java.sql.Date.valueOf((LocalDate) obj));
+				} else if (DBUtil.isLocalTime(fieldClass)) {
+					pstmt.setTime(idx + 1, java.sql.Time.valueOf((LocalTime) obj));
+				} else if (DBUtil.isLocalDateTime(fieldClass)) {
+					pstmt.setTimestamp(idx + 1, java.sql.Timestamp.valueOf((LocalDateTime) obj));
+				} else {
+					pstmt.setString(idx + 1, (String) obj);
 				}
-			});
-			log.info(DBUtil.getPreparedQuery(pstmt));
-			pstmt.execute();
-			return this;
-		} catch (SQLException e) {
-			throw new DBException(e);
-		}
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * ステートメントを生成します。
+	 *
+	 * @param sql 実行するクエリ
+	 * @return ステートメント
+	 * @throws SQLException ステートメントの生成に失敗した場合
+	 */
+	protected PreparedStatement prepareStatement(String sql) throws SQLException {
+		return con.prepareStatement(sql);
+	}
+
+	/**
+	 * クエリの実行後、ステートメントを閉じる前に呼び出されます。
+	 *
+	 * @param pstmt 実行したステートメント
+	 * @throws SQLException 実行結果の取得に失敗した場合
+	 */
+	protected void afterExecute(PreparedStatement pstmt) throws SQLException {
 	}
 
 	/**
@@ -229,17 +336,24 @@ abstract class AbstractQuery<E extends BaseEntity> implements Query<E> {
 
 	@Override
 	public int getUpdateCount() {
-		try {
-			return pstmt.getUpdateCount();
-		} catch (SQLException e) {
-			throw new DBException(e);
-		}
+		return updateCount;
 	}
 
 	@Override
 	public ResultSet getResultSet() {
 		try {
-			return pstmt.getResultSet();
+			ResultSet rs = pstmt.getResultSet();
+			if (rs == null || !releaseConnection) {
+				return rs;
+			}
+			// 実行時に取得したコネクションは結果を読み出してから返却する
+			try {
+				CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+				rowSet.populate(rs);
+				return rowSet;
+			} finally {
+				close();
+			}
 		} catch (SQLException e) {
 			throw new DBException(e);
 		}
@@ -269,6 +383,108 @@ abstract class AbstractQuery<E extends BaseEntity> implements Query<E> {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public <T> List<T> getAll(Class<T> type) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int[] pluckInt(String column) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long[] pluckLong(String column) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public double[] pluckDouble(String column) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> List<T> pluck(String column, Class<T> type) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long count() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean exists() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> T sum(String column, Class<T> type) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> T min(String column, Class<T> type) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> T max(String column, Class<T> type) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <K> Map<K, Long> countBy(String column, Class<K> keyType) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <K, V> Map<K, V> groupBy(String column, Class<K> keyType, Aggregate aggregate, String valueColumn,
+			Class<V> valueType) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Page<E> page(int size) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Page<E> page(int size, String token) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<Page<E>> pages(int size) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Stream<E> stream() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void forEach(Consumer<? super E> action) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @return 実行済みであればtrue
+	 */
+	protected boolean isExecuted() {
+		return pstmt != null;
+	}
+
+	/**
+	 * 実行結果を破棄し、同じクエリを再度実行できる状態に戻します。<br>
+	 * 呼び出し前に{@link #close()}してください。
+	 */
+	protected void reset() {
+		pstmt = null;
+		updateCount = -1;
+	}
+
 
 	@Override
 	protected void finalize() throws Throwable {
@@ -276,6 +492,11 @@ abstract class AbstractQuery<E extends BaseEntity> implements Query<E> {
 		super.finalize();
 	}
 
+	/**
+	 * ステートメントを閉じ、実行時に取得したコネクションを返却する
+	 *
+	 * @return 正常に閉じられた場合はtrue
+	 */
 	protected boolean close() {
 		try {
 			if (pstmt != null && !pstmt.isClosed()) {
@@ -285,6 +506,21 @@ abstract class AbstractQuery<E extends BaseEntity> implements Query<E> {
 		} catch (Exception e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			releaseConnection();
+		}
+	}
+
+	private void releaseConnection() {
+		if (!releaseConnection || con == null) {
+			return;
+		}
+		try {
+			con.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} finally {
+			con = null;
 		}
 	}
 }
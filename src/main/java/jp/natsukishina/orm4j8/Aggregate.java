@@ -0,0 +1,35 @@
+package jp.natsukishina.orm4j8;
+
+/**
+ * 集計関数を定義するenum型
+ * @author 417.72KI
+ *
+ */
+public enum Aggregate {
+	/** 件数 */
+	COUNT("COUNT"),
+	/** 合計 */
+	SUM("SUM"),
+	/** 最小値 */
+	MIN("MIN"),
+	/** 最大値 */
+	MAX("MAX"),
+	/** 平均値 */
+	AVG("AVG"),
+	;
+
+	/** SQLの関数名 */
+	public final String function;
+
+	private Aggregate(String function) {
+		this.function = function;
+	}
+
+	/**
+	 * @param column `table`.`column`形式のカラム名。nullの場合は全ての行(*)
+	 * @return 集計関数のSQL
+	 */
+	String toSql(String column) {
+		return function + "(" + (column == null ? "*" : column) + ")";
+	}
+}
@@ -0,0 +1,350 @@
+package jp.natsukishina.orm4j8;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.natsukishina.orm4j8.DB.Type;
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * 複数のエンティティの登録・更新・削除をJDBCのバッチ更新でまとめて実行するクラス<br>
+ * 生成したクエリが同じもの(同じテーブル・同じ形)ごとに1つのステートメントを使い回し、
+ * {@link #batchSize}件ずつaddBatch・executeBatchします。
+ * クエリの種類ごとの実行順は最初に現れた順で、種類をまたいだ実行順は保証しません。<br>
+ * 複数行のINSERTに対応したDBMSでは、登録は
+ * <pre>INSERT INTO table (...) VALUES (...), (...), ...</pre>
+ * という1つのクエリにまとめます。1つのクエリの行数は{@link #batchSize}・プレースホルダの上限({@link Type#maxParameters})・
+ * パケットの上限(MySQLはmax_allowed_packet)を超えないように決めます。<br>
+ * データベースで採番される主キー({@link jp.natsukishina.orm4j8.annotations.Column#generated()})は、
+ * 実行ごとにgetGeneratedKeysで取得してエンティティにセットします。
+ * @author 417.72KI
+ *
+ */
+final class BatchWriter {
+	/** 1回のexecuteBatchで実行する件数のデフォルト値 */
+	static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/** max_allowed_packetを取得できない場合・MySQL以外で1つのクエリに許容する大きさ(バイト) */
+	static final long DEFAULT_MAX_PACKET = 4 * 1024 * 1024;
+	/** パケットのうち、プロトコルのヘッダ等のために空けておく大きさ(バイト) */
+	private static final long PACKET_MARGIN = 1024;
+
+	private static final Logger log = LoggerFactory.getLogger(BatchWriter.class);
+
+	private final Connection con;
+	private final int batchSize;
+	private final Type type;
+	/** 複数行のINSERTを使用しない場合はnull */
+	private final Type multiRowType;
+	/** 採番方法の名前 → 採番した値。使用しない場合はnull */
+	private final ToLongFunction<String> idGenerator;
+	/** 1つのクエリに許容する大きさ。未取得の場合は0 */
+	private long maxPacket = 0;
+
+	/**
+	 * @param con 実行に使用するコネクション
+	 * @param batchSize 1回のexecuteBatchで実行する件数(複数行のINSERTでは1つのクエリの最大行数)
+	 * @param type データベース種別
+	 * @param multiRowInsert 対応したDBMSで複数行のINSERTを使用する場合はtrue
+	 * @param idGenerator {@link jp.natsukishina.orm4j8.annotations.Column#generator()}を指定した主キーの採番に使用する関数。
+	 * 使用しない場合はnull
+	 */
+	BatchWriter(Connection con, int batchSize, Type type, boolean multiRowInsert, ToLongFunction<String> idGenerator) {
+		this.con = con;
+		this.batchSize = batchSize;
+		this.type = type;
+		this.multiRowType = multiRowInsert && type.multiRowInsert ? type : null;
+		this.idGenerator = idGenerator;
+	}
+
+	/**
+	 * エンティティをまとめて登録します。
+	 * @param elements 登録するエンティティ
+	 * @return エンティティごとの更新件数
+	 */
+	int[] insert(List<? extends BaseEntity> elements) {
+		completePrimaryKeys(elements);
+		if (multiRowType != null) {
+			return insertMultiRow(elements);
+		}
+		List<AbstractQuery<?>> queries = new ArrayList<>(elements.size());
+		elements.forEach(element -> queries.add(new Insert<>(con, element)));
+		return execute(queries);
+	}
+
+	/**
+	 * エンティティをまとめて更新します。
+	 * @param elements 更新するエンティティ
+	 * @return エンティティごとの更新件数
+	 */
+	int[] update(List<? extends BaseEntity> elements) {
+		List<AbstractQuery<?>> queries = new ArrayList<>(elements.size());
+		elements.forEach(element -> queries.add(new Update<>(con, element)));
+		return execute(queries);
+	}
+
+	/**
+	 * エンティティをまとめて登録・更新します。<br>
+	 * DBMSによって更新した行の件数が異なる(MySQLは2件、値が変わらない場合は0件)ため、
+	 * 実行できたエンティティはそれぞれ1件として返します。
+	 * @param elements 登録・更新するエンティティ(主キーの値が全て必要)
+	 * @return エンティティごとの件数
+	 */
+	int[] upsert(List<? extends BaseEntity> elements) {
+		List<AbstractQuery<?>> queries = new ArrayList<>(elements.size());
+		elements.forEach(element -> queries.add(new Upsert<>(con, type, element)));
+		int[] updateCounts = execute(queries);
+		for (int i = 0; i < updateCounts.length; i++) {
+			if (updateCounts[i] != Statement.EXECUTE_FAILED) {
+				updateCounts[i] = 1;
+			}
+		}
+		return updateCounts;
+	}
+
+	/**
+	 * エンティティをまとめて削除します。
+	 * @param elements 削除するエンティティ
+	 * @return エンティティごとの更新件数
+	 */
+	int[] delete(List<? extends BaseEntity> elements) {
+		List<AbstractQuery<?>> queries = new ArrayList<>(elements.size());
+		elements.forEach(element -> queries.add(new Delete<>(con, element)));
+		return execute(queries);
+	}
+
+	/**
+	 * クラスごとに複数行のINSERTでまとめて登録します。
+	 * @param elements 登録するエンティティ
+	 * @return エンティティごとの更新件数
+	 */
+	private int[] insertMultiRow(List<? extends BaseEntity> elements) {
+		// (クラス, 採番させる主キー) → elementsの添字
+		Map<List<Object>, List<Integer>> groups = new LinkedHashMap<>();
+		for (int i = 0; i < elements.size(); i++) {
+			BaseEntity element = elements.get(i);
+			ColumnMetadata generatedColumn = Insert.getColumnToGenerate(EntityMetadata.of(element.getClass()), element);
+			groups.computeIfAbsent(Arrays.asList(element.getClass(), generatedColumn), k -> new ArrayList<>()).add(i);
+		}
+
+		int[] updateCounts = new int[elements.size()];
+		for (Map.Entry<List<Object>, List<Integer>> group : groups.entrySet()) {
+			Class<?> clazz = (Class<?>) group.getKey().get(0);
+			ColumnMetadata generatedColumn = (ColumnMetadata) group.getKey().get(1);
+			boolean omitGenerated = generatedColumn != null;
+			EntityMetadata metadata = EntityMetadata.of(clazz);
+			List<Integer> indexes = group.getValue();
+			int columns = metadata.getColumns().size() - (omitGenerated ? 1 : 0);
+			int maxRows = Math.max(1, Math.min(batchSize, multiRowType.maxParameters / Math.max(columns, 1)));
+			long headerSize = Insert.buildMultiRowQuery(clazz, 1, omitGenerated).length();
+			// 行数 → ステートメント(端数の行数のみ別のステートメントになる)
+			Map<Integer, PreparedStatement> statements = new HashMap<>();
+			try {
+				int from = 0;
+				while (from < indexes.size()) {
+					List<Object> params = new ArrayList<>();
+					long size = headerSize;
+					int rows = 0;
+					while (from + rows < indexes.size() && rows < maxRows) {
+						List<Object> values = Insert.valuesOf(metadata, elements.get(indexes.get(from + rows)),
+								omitGenerated);
+						long rowSize = estimateSize(values);
+						if (rows > 0 && size + rowSize > getMaxPacket()) {
+							break;
+						}
+						size += rowSize;
+						params.addAll(values);
+						rows++;
+					}
+					String sql = Insert.buildMultiRowQuery(clazz, rows, omitGenerated);
+					PreparedStatement pstmt = statements.get(rows);
+					if (pstmt == null) {
+						log.debug("multi-row insert: " + metadata.getTableName() + " x " + rows);
+						pstmt = prepareStatement(sql, generatedColumn);
+						statements.put(rows, pstmt);
+					}
+					AbstractQuery.setParams(pstmt, params);
+					int count = pstmt.executeUpdate();
+					List<BaseEntity> inserted = new ArrayList<>(rows);
+					for (int i = 0; i < rows; i++) {
+						updateCounts[indexes.get(from + i)] = count == rows ? 1 : Statement.SUCCESS_NO_INFO;
+						inserted.add(elements.get(indexes.get(from + i)));
+					}
+					if (omitGenerated) {
+						Insert.setGeneratedKeys(pstmt, generatedColumn, inserted);
+					}
+					from += rows;
+				}
+			} catch (SQLException e) {
+				throw new DBException(e);
+			} finally {
+				for (PreparedStatement pstmt : statements.values()) {
+					try {
+						pstmt.close();
+					} catch (SQLException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+		return updateCounts;
+	}
+
+	/**
+	 * @param sql 実行するクエリ
+	 * @param generatedColumn 採番された値を取得する主キー。取得しない場合はnull
+	 * @return ステートメント
+	 * @throws SQLException ステートメントの生成に失敗した場合
+	 */
+	private PreparedStatement prepareStatement(String sql, ColumnMetadata generatedColumn) throws SQLException {
+		if (generatedColumn == null) {
+			return con.prepareStatement(sql);
+		}
+		return con.prepareStatement(sql, new String[] { generatedColumn.name });
+	}
+
+	/**
+	 * @return 1つのクエリに許容する大きさ(バイト)
+	 */
+	private long getMaxPacket() {
+		if (maxPacket == 0) {
+			maxPacket = DEFAULT_MAX_PACKET;
+			if (multiRowType == Type.MYSQL) {
+				try (Statement stmt = con.createStatement();
+						ResultSet rs = stmt.executeQuery("SELECT @@max_allowed_packet")) {
+					if (rs.next()) {
+						maxPacket = rs.getLong(1);
+					}
+				} catch (SQLException e) {
+					log.warn("failed to get max_allowed_packet: " + e.getMessage());
+				}
+			}
+			maxPacket = Math.max(maxPacket - PACKET_MARGIN, 1);
+		}
+		return maxPacket;
+	}
+
+	/**
+	 * クライアント側でパラメータを埋め込んだ場合の1行分の大きさを多めに見積もります。
+	 * @param values 1行分のパラメータ
+	 * @return 見積もった大きさ(バイト)
+	 */
+	private static long estimateSize(List<Object> values) {
+		// 括弧・区切り
+		long size = 4;
+		for (Object value : values) {
+			if (value instanceof String) {
+				// UTF-8で最大4バイト、全ての文字をエスケープした場合に2倍
+				size += ((String) value).length() * 8L + 4;
+			} else {
+				size += 32;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * 主キーの値が無いエンティティに、テーブルごとに1回だけ最大値を検索して連番を採番します。<br>
+	 * 同時に登録する主キーの値があるエンティティとも重複しないように採番します。
+	 * 採番方法を指定した主キーはその方法で採番します。
+	 * @param elements 登録するエンティティ
+	 */
+	private void completePrimaryKeys(List<? extends BaseEntity> elements) {
+		Map<Class<?>, List<BaseEntity>> incomplete = new LinkedHashMap<>();
+		for (BaseEntity element : elements) {
+			ColumnMetadata primaryColumn = Insert.getColumnToComplete(EntityMetadata.of(element.getClass()), element);
+			if (primaryColumn == null) {
+				continue;
+			}
+			if (primaryColumn.generator != null && idGenerator != null) {
+				Insert.setPrimaryValue(primaryColumn, element, idGenerator.applyAsLong(primaryColumn.generator));
+			} else {
+				incomplete.computeIfAbsent(element.getClass(), c -> new ArrayList<>()).add(element);
+			}
+		}
+		incomplete.forEach((clazz, list) -> {
+			ColumnMetadata primaryColumn = EntityMetadata.of(clazz).getPrimaryColumn();
+			Long maxValue = new Select<>(con, list.get(0).getClass()).max(primaryColumn.name, Long.class);
+			long nextValue = maxValue == null ? 0 : maxValue;
+			for (BaseEntity element : elements) {
+				Object value = element.getClass() == clazz ? primaryColumn.accessor.get(element) : null;
+				if (value instanceof Number) {
+					nextValue = Math.max(nextValue, ((Number) value).longValue());
+				}
+			}
+			for (BaseEntity element : list) {
+				Insert.setPrimaryValue(primaryColumn, element, ++nextValue);
+			}
+		});
+	}
+
+	/**
+	 * クエリをバッチ更新で実行します。
+	 * @param queries 実行するクエリ
+	 * @return クエリごとの更新件数(queriesの順)。JDBCドライバが件数を返さない場合は{@link Statement#SUCCESS_NO_INFO}
+	 */
+	private int[] execute(List<? extends AbstractQuery<?>> queries) {
+		// クエリ → queriesの添字
+		Map<String, List<Integer>> groups = new LinkedHashMap<>();
+		List<List<Object>> paramsList = new ArrayList<>(queries.size());
+		for (int i = 0; i < queries.size(); i++) {
+			AbstractQuery<?> query = queries.get(i);
+			groups.computeIfAbsent(query.buildQuery(), sql -> new ArrayList<>()).add(i);
+			paramsList.add(query.buildParamsListForPreparedStatement());
+		}
+
+		int[] updateCounts = new int[queries.size()];
+		for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+			log.debug("batch: " + group.getKey() + " x " + group.getValue().size());
+			List<Integer> indexes = group.getValue();
+			// 同じクエリでは採番させる主キーも同じ
+			AbstractQuery<?> first = queries.get(indexes.get(0));
+			ColumnMetadata generatedColumn = first instanceof Insert ? ((Insert<?>) first).getGeneratedColumn() : null;
+			try (PreparedStatement pstmt = prepareStatement(group.getKey(), generatedColumn)) {
+				for (int from = 0; from < indexes.size(); from += batchSize) {
+					List<Integer> chunk = indexes.subList(from, Math.min(from + batchSize, indexes.size()));
+					for (int index : chunk) {
+						AbstractQuery.setParams(pstmt, paramsList.get(index));
+						pstmt.addBatch();
+					}
+					int[] counts = pstmt.executeBatch();
+					for (int i = 0; i < chunk.size(); i++) {
+						updateCounts[chunk.get(i)] = i < counts.length ? counts[i] : Statement.SUCCESS_NO_INFO;
+					}
+					if (generatedColumn != null) {
+						List<BaseEntity> inserted = new ArrayList<>(chunk.size());
+						chunk.forEach(index -> inserted.add(((Insert<?>) queries.get(index)).getElement()));
+						Insert.setGeneratedKeys(pstmt, generatedColumn, inserted);
+					}
+				}
+			} catch (SQLException e) {
+				throw new DBException(e);
+			}
+		}
+		return updateCounts;
+	}
+
+	/**
+	 * @param updateCounts {@link #execute(List)}の結果
+	 * @return 更新件数の合計。件数が不明なものは1件として数える
+	 */
+	static int sum(int[] updateCounts) {
+		return Arrays.stream(updateCounts).map(count -> count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0))
+				.sum();
+	}
+}
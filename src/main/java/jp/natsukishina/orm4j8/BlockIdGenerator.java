@@ -0,0 +1,79 @@
+package jp.natsukishina.orm4j8;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jp.natsukishina.orm4j8.DB.Type;
+
+/**
+ * データベースから{@link #getBlockSize()}個ずつ値の範囲を確保し、メモリ上から採番するクラス<br>
+ * 確保した範囲からの採番はロックを取らずに行い、範囲を使い切った時だけ1つのスレッドが次の範囲を確保します。
+ * そのため、ほとんどの登録は採番のためのクエリを実行しません。<br>
+ * 確保した範囲のうち使用しなかった値(アプリケーションの終了時の残り等)は欠番になります。
+ * @author 417.72KI
+ *
+ */
+public abstract class BlockIdGenerator implements IdGenerator {
+	private final int blockSize;
+	private final AtomicReference<Block> current = new AtomicReference<>();
+
+	/**
+	 * @param blockSize 1回に確保する値の数
+	 */
+	protected BlockIdGenerator(int blockSize) {
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("blockSize must be positive");
+		}
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * @return 1回に確保する値の数
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	@Override
+	public long next(Type type, ConnectionProvider connectionProvider) {
+		while (true) {
+			Block block = current.get();
+			if (block != null) {
+				long value = block.next.getAndIncrement();
+				if (value < block.end) {
+					return value;
+				}
+			}
+			synchronized (this) {
+				// 他のスレッドが確保し直していなければ確保する
+				if (current.get() == block) {
+					long start = reserve(type, connectionProvider);
+					current.set(new Block(start, start + blockSize));
+				}
+			}
+		}
+	}
+
+	/**
+	 * データベースから値の範囲を1つ確保します。<br>
+	 * 同時に呼び出されることはありません。
+	 * @param type データベース種別
+	 * @param connectionProvider 確保に使用するコネクションの取得元
+	 * @return 確保した範囲の最初の値(この値から{@link #getBlockSize()}個を採番します)
+	 */
+	protected abstract long reserve(Type type, ConnectionProvider connectionProvider);
+
+	/**
+	 * 確保した値の範囲
+	 */
+	private static final class Block {
+		final AtomicLong next;
+		/** 範囲の終わり(この値を含まない) */
+		final long end;
+
+		Block(long start, long end) {
+			this.next = new AtomicLong(start);
+			this.end = end;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package jp.natsukishina.orm4j8;
+
+/**
+ * {@link jp.natsukishina.orm4j8.annotations.Cacheable}を指定したクラスのキャッシュの統計情報
+ * @author 417.72KI
+ *
+ */
+public final class CacheStats {
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final int size;
+
+	CacheStats(long hitCount, long missCount, long evictionCount, int size) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+	}
+
+	/**
+	 * @return キャッシュから取得できた回数
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return キャッシュに無く、データベースに問い合わせた回数
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return 最大数・有効期限を超えたために破棄した件数
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return 保持しているエンティティの件数
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return キャッシュから取得できた割合。問い合わせが無い場合は0
+	 */
+	public double getHitRate() {
+		long total = hitCount + missCount;
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats [hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+				+ ", size=" + size + "]";
+	}
+}
@@ -0,0 +1,291 @@
+package jp.natsukishina.orm4j8;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * 上限付きのコネクションプール<br>
+ * 貸し出したコネクションは{@link Connection#close()}を呼ぶとプールに返却されます。
+ * @author 417.72KI
+ *
+ */
+class ConnectionPool implements ConnectionProvider {
+	private static final long MAX_HOUSEKEEPING_PERIOD = 30000L;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final ConnectionProvider factory;
+	private final int minSize;
+	private final long borrowTimeout;
+	private final long idleTimeout;
+	private final long leakDetectionThreshold;
+	private final Semaphore permits;
+	private final BlockingDeque<Entry> idle = new LinkedBlockingDeque<>();
+	private final Set<Entry> leased = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed = false;
+
+	ConnectionPool(ConnectionProvider factory, PoolConfig config) {
+		if (config.getMinSize() > config.getMaxSize()) {
+			throw new IllegalArgumentException("minSize must not be greater than maxSize");
+		}
+		this.factory = factory;
+		this.minSize = config.getMinSize();
+		this.borrowTimeout = config.getBorrowTimeout();
+		this.idleTimeout = config.getIdleTimeout();
+		this.leakDetectionThreshold = config.getLeakDetectionThreshold();
+		this.permits = new Semaphore(config.getMaxSize(), true);
+
+		housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "orm4j8-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = MAX_HOUSEKEEPING_PERIOD;
+		if (idleTimeout > 0) {
+			period = Math.min(period, idleTimeout);
+		}
+		if (leakDetectionThreshold > 0) {
+			period = Math.min(period, leakDetectionThreshold);
+		}
+		period = Math.max(period / 2, 100L);
+		housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * コネクションを借り受けます。<br>
+	 * 空きが無い場合は設定された待機時間まで返却を待ちます。
+	 * @return 借り受けたコネクション
+	 */
+	Connection borrow() {
+		if (closed) {
+			throw new DBException("connection pool has already been closed");
+		}
+		try {
+			if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+				throw new DBException("timed out after " + borrowTimeout + "ms waiting for a connection (active="
+						+ leased.size() + ")");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DBException(e);
+		}
+
+		try {
+			Entry entry;
+			while ((entry = idle.pollFirst()) != null && entry.isClosed()) {
+				entry.discard();
+			}
+			if (entry == null) {
+				entry = new Entry(factory.getConnection());
+			}
+			entry.borrowedAt = System.currentTimeMillis();
+			entry.borrowedBy = leakDetectionThreshold > 0 ? new Throwable("connection was borrowed here") : null;
+			entry.leakReported = false;
+			leased.add(entry);
+			return createLease(entry);
+		} catch (Exception e) {
+			permits.release();
+			if (e instanceof DBException) {
+				throw (DBException) e;
+			}
+			throw new DBException(e);
+		}
+	}
+
+	@Override
+	public Connection getConnection() {
+		return borrow();
+	}
+
+	/**
+	 * 貸し出し中のコネクション数
+	 * @return 貸し出し中のコネクション数
+	 */
+	int getActiveCount() {
+		return leased.size();
+	}
+
+	/**
+	 * 待機中のコネクション数
+	 * @return 待機中のコネクション数
+	 */
+	int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * プールを閉じ、保持しているコネクションを破棄します。<br>
+	 * 貸し出し中のコネクションは返却時に破棄されます。
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+		Entry entry;
+		while ((entry = idle.pollFirst()) != null) {
+			entry.discard();
+		}
+	}
+
+	/**
+	 * closeしても実際には閉じないコネクションを返します。<br>
+	 * トランザクション中のコネクションを各クエリに共有する際に使用します。
+	 * @param con 共有するコネクション
+	 * @return closeが無視されるコネクション
+	 */
+	static Connection share(Connection con) {
+		return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "close":
+						return null;
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					default:
+						break;
+					}
+					try {
+						return method.invoke(con, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	private Connection createLease(Entry entry) {
+		AtomicBoolean returned = new AtomicBoolean(false);
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "close":
+						if (returned.compareAndSet(false, true)) {
+							giveBack(entry);
+						}
+						return null;
+					case "isClosed":
+						if (returned.get()) {
+							return true;
+						}
+						break;
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "toString":
+						return "Pooled[" + entry.connection + "]";
+					default:
+						break;
+					}
+					if (returned.get()) {
+						throw new SQLException("connection has already been returned to the pool");
+					}
+					try {
+						return method.invoke(entry.connection, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	private void giveBack(Entry entry) {
+		if (!leased.remove(entry)) {
+			return;
+		}
+		try {
+			if (closed || entry.isClosed()) {
+				entry.discard();
+				return;
+			}
+			if (!entry.connection.getAutoCommit()) {
+				entry.connection.rollback();
+				entry.connection.setAutoCommit(true);
+			}
+			entry.lastUsed = System.currentTimeMillis();
+			entry.borrowedBy = null;
+			idle.offerFirst(entry);
+		} catch (SQLException e) {
+			log.warn("discard connection which could not be reset", e);
+			entry.discard();
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void housekeep() {
+		long now = System.currentTimeMillis();
+		if (idleTimeout > 0) {
+			for (Entry entry : idle) {
+				if (idle.size() + leased.size() <= minSize) {
+					break;
+				}
+				if (now - entry.lastUsed > idleTimeout && idle.remove(entry)) {
+					entry.discard();
+				}
+			}
+		}
+		if (leakDetectionThreshold > 0) {
+			leased.stream().filter(entry -> !entry.leakReported)
+					.filter(entry -> now - entry.borrowedAt > leakDetectionThreshold).forEach(entry -> {
+						entry.leakReported = true;
+						log.warn("possible connection leak: held for " + (now - entry.borrowedAt) + "ms",
+								entry.borrowedBy);
+					});
+		}
+		try {
+			while (!closed && idle.size() + leased.size() < minSize) {
+				idle.offerLast(new Entry(factory.getConnection()));
+			}
+		} catch (Exception e) {
+			log.warn("failed to fill connection pool", e);
+		}
+	}
+
+	/**
+	 * プール内のコネクションと貸し出し状態
+	 */
+	private static class Entry {
+		private final Connection connection;
+		private volatile long lastUsed = System.currentTimeMillis();
+		private volatile long borrowedAt;
+		private volatile Throwable borrowedBy;
+		private volatile boolean leakReported;
+
+		private Entry(Connection connection) {
+			this.connection = connection;
+		}
+
+		private boolean isClosed() {
+			try {
+				return connection.isClosed();
+			} catch (SQLException e) {
+				return true;
+			}
+		}
+
+		private void discard() {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
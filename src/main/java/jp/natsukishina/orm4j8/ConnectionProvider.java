@@ -0,0 +1,29 @@
+package jp.natsukishina.orm4j8;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * コネクションの取得元を示すインターフェース<br>
+ * {@link DB#config(DB.Type, ConnectionProvider)}で設定すると、全ての操作がこのインターフェースからコネクションを取得します。<br>
+ * 取得したコネクションは操作の完了後にcloseされるため、プールから取得する場合はcloseで返却されるようにしてください。
+ * @author 417.72KI
+ *
+ */
+@FunctionalInterface
+public interface ConnectionProvider {
+
+	/**
+	 * コネクションを取得します。
+	 * @return コネクション
+	 * @throws SQLException コネクションの取得に失敗した場合
+	 */
+	Connection getConnection() throws SQLException;
+
+	/**
+	 * 保持しているリソースを解放します。<br>
+	 * 設定が変更された時やJVMのシャットダウン時に呼び出されます。デフォルトでは何もしません。
+	 */
+	default void close() {
+	}
+}
@@ -1,9 +1,13 @@
 package jp.natsukishina.orm4j8;
 
-import java.sql.Connection;
 import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
 
 import org.slf4j.LoggerFactory;
 
@@ -12,12 +16,16 @@ import jp.natsukishina.orm4j8.entity.BaseEntity;
 import jp.natsukishina.orm4j8.exception.DBException;
 
 /**
- * DB操作を扱うクラス。
+ * DB操作を扱うクラス。<br>
+ * 各メソッドはconfigメソッドで設定したデフォルトの{@link Database}に委譲します。<br>
+ * 複数のデータベースを扱う場合は{@link Database}のインスタンスを生成するか、{@link #route(Class, Object)}を使用してください。
  * @author 417.72ki
  *
  */
 public class DB {
-	private static Connection con;
+	private static volatile Database database;
+	private static volatile DatabaseRouter router;
+	private static PoolConfig poolConfig = new PoolConfig();
 
 	private static Type type = null;
 	private static String host = null;
@@ -39,7 +47,7 @@ public class DB {
 	 * @param pass データベースパスワード
 	 * @param option その他オプション(key=value形式)
 	 */
-	public static void config(Type type, String host, int port, String dbName, String user, String pass,
+	public static synchronized void config(Type type, String host, int port, String dbName, String user, String pass,
 			String... option) {
 		DB.type = type;
 		DB.host = host;
@@ -48,7 +56,30 @@ public class DB {
 		DB.user = user;
 		DB.pass = pass;
 		DB.option = option;
-		loadDriver();
+		setDatabase(new Database(type, host, port, dbName, user, pass, poolConfig, option));
+	}
+
+	/**
+	 * 初期設定を行います<br>
+	 * コネクションは全て引数のDataSourceから取得し、内蔵のコネクションプールは使用しません。<br>
+	 * プーリングやステートメントキャッシュはDataSource側の設定に従います。
+	 * @param type データベース種別
+	 * @param dataSource コネクションの取得元となるDataSource
+	 */
+	public static synchronized void config(Type type, DataSource dataSource) {
+		DB.host = null;
+		setDatabase(new Database(type, dataSource));
+	}
+
+	/**
+	 * 初期設定を行います<br>
+	 * コネクションは全て引数のConnectionProviderから取得し、内蔵のコネクションプールは使用しません。
+	 * @param type データベース種別
+	 * @param connectionProvider コネクションの取得元
+	 */
+	public static synchronized void config(Type type, ConnectionProvider connectionProvider) {
+		DB.host = null;
+		setDatabase(new Database(type, connectionProvider));
 	}
 
 	/**
@@ -68,18 +99,129 @@ public class DB {
 		config(type, host, type.defaultPort, dbName, user, pass, option);
 	}
 
+	/**
+	 * 内蔵のコネクションプールの設定を行います。<br>
+	 * 既にプールが生成されている場合は破棄し、新しい設定で生成し直します。
+	 * レプリカ・採番方法・デフォルトのデータベースに行った設定は引き継ぎます。<br>
+	 * DataSourceやConnectionProviderで設定している場合は使用されません。
+	 * @param poolConfig コネクションプールの設定
+	 */
+	public static synchronized void configPool(PoolConfig poolConfig) {
+		if (poolConfig == null) {
+			throw new IllegalArgumentException("poolConfig must not be null");
+		}
+		DB.poolConfig = poolConfig;
+		if (host != null) {
+			Database newDatabase = new Database(type, host, port, dbName, user, pass, poolConfig, option);
+			if (database != null) {
+				newDatabase.takeOverSettings(database);
+			}
+			setDatabase(newDatabase);
+		}
+	}
+
+	/**
+	 * デフォルトのデータベースに読み込み用のレプリカを設定します。<br>
+	 * configメソッドで設定し直した場合、レプリカの設定は破棄されます。
+	 * @param selector レプリカの選択方法
+	 * @param replicas レプリカのコネクション取得元
+	 * @see Database#configReplicas(ReplicaSelector, ConnectionProvider...)
+	 */
+	public static void configReplicas(ReplicaSelector selector, ConnectionProvider... replicas) {
+		getDatabase().configReplicas(selector, replicas);
+	}
+
+	/**
+	 * デフォルトのデータベースに読み込み用のレプリカを設定します。<br>
+	 * configメソッドで設定し直した場合、レプリカの設定は破棄されます。
+	 * @param selector レプリカの選択方法
+	 * @param replicas レプリカ
+	 * @see Database#configReplicas(ReplicaSelector, Database...)
+	 */
+	public static void configReplicas(ReplicaSelector selector, Database... replicas) {
+		getDatabase().configReplicas(selector, replicas);
+	}
+
+	/**
+	 * デフォルトのデータベースに主キーの採番方法を登録します。<br>
+	 * configメソッドで設定し直した場合、登録は破棄されます。
+	 * @param name 採番方法の名前
+	 * @param generator 採番方法
+	 * @see Database#registerIdGenerator(String, IdGenerator)
+	 */
+	public static void registerIdGenerator(String name, IdGenerator generator) {
+		getDatabase().registerIdGenerator(name, generator);
+	}
+
+	/**
+	 * データベースの振り分け方法を設定します。<br>
+	 * {@link #route(Class, Object)}で使用されます。<br>
+	 * 設定した振り分け方法はJVMのシャットダウン時に{@link DatabaseRouter#close()}で破棄されます。
+	 * 設定を変更しても以前の振り分け方法は破棄されないため、不要になった場合は呼び出し側で破棄してください。
+	 * @param router 振り分け方法。nullの場合は常にデフォルトのデータベースを使用します
+	 */
+	public static void configRouter(DatabaseRouter router) {
+		DB.router = router;
+	}
+
 	private DB() {
 	}
 
-	private static Connection getConnection() {
-		try {
-			if(con == null || con.isClosed()) {
-				con = DriverManager.getConnection(createDBUrl(type, host, port, dbName), user, pass);
-			}
-			return con;
-		} catch (Exception e) {
-			throw new DBException(e);
+	private static synchronized void setDatabase(Database database) {
+		Database old = DB.database;
+		DB.database = database;
+		if (old != null) {
+			old.close();
+		}
+	}
+
+	/**
+	 * configメソッドで設定したデフォルトのデータベースを取得します。
+	 * @return デフォルトのデータベース
+	 */
+	public static Database getDatabase() {
+		Database db = database;
+		if (db == null) {
+			throw new DBException("DB.config must be called before connecting");
+		}
+		return db;
+	}
+
+	/**
+	 * 設定された振り分け方法に従い、シャードキーに対応するデータベースを取得します。<br>
+	 * 振り分け方法が設定されていない場合はデフォルトのデータベースを返します。
+	 * @param clazz 操作対象テーブルのクラス
+	 * @param shardKey シャードキー
+	 * @return 操作対象のデータベース
+	 * @see #configRouter(DatabaseRouter)
+	 */
+	public static Database route(Class<? extends BaseEntity> clazz, Object shardKey) {
+		if (clazz == null) {
+			throw new IllegalArgumentException("clazz must not be null");
+		}
+		DatabaseRouter r = router;
+		if (r == null) {
+			return getDatabase();
+		}
+		return r.route(clazz, shardKey);
+	}
+
+	/**
+	 * 設定された振り分け方法に従い、エンティティを扱うデータベースを取得します。<br>
+	 * 振り分け方法が設定されていない場合はデフォルトのデータベースを返します。
+	 * @param element 操作対象のエンティティ
+	 * @return 操作対象のデータベース
+	 * @see #configRouter(DatabaseRouter)
+	 */
+	public static Database route(BaseEntity element) {
+		if (element == null) {
+			throw new IllegalArgumentException("element must not be null");
 		}
+		DatabaseRouter r = router;
+		if (r == null) {
+			return getDatabase();
+		}
+		return r.route(element);
 	}
 
 	/**
@@ -89,10 +231,7 @@ public class DB {
 	 * @return 検索用クエリ
 	 */
 	public static <E extends BaseEntity> Query<E> find(Class<E> clazz) {
-		if(clazz == null) {
-			throw new IllegalArgumentException("clazz must not be null");
-		}
-		return Query.Builder.createFindQuery(getConnection(), clazz);
+		return getDatabase().find(clazz);
 	}
 
 	/**
@@ -104,13 +243,20 @@ public class DB {
 	 */
 	@ForSinglePrimaryKey
 	public static <E extends BaseEntity> E findByPrimary(Class<E> clazz, Object primaryKey) {
-		if(clazz == null) {
-			throw new IllegalArgumentException("clazz must not be null");
-		}
-		if(primaryKey == null) {
-			throw new IllegalArgumentException("primaryKey must not be null");
-		}
-		return find(clazz).where(DBUtil.getPrimaryColumn(clazz), "=", primaryKey.toString()).execute().get();
+		return getDatabase().findByPrimary(clazz, primaryKey);
+	}
+
+	/**
+	 * 複数の主キーを元にエンティティをまとめて検索します
+	 * @param <K> 主キーの型
+	 * @param <E> データベースのテーブルを示す型
+	 * @param clazz 検索対象テーブルのクラスオブジェクト
+	 * @param primaryKeys 主キーの値の一覧
+	 * @return 主キーの値と検索結果エンティティのマップ(primaryKeysの順)
+	 * @see Database#findAllByPrimary(Class, Collection)
+	 */
+	public static <K, E extends BaseEntity> Map<K, E> findAllByPrimary(Class<E> clazz, Collection<K> primaryKeys) {
+		return getDatabase().findAllByPrimary(clazz, primaryKeys);
 	}
 
 	/**
@@ -120,21 +266,7 @@ public class DB {
 	 * @return 登録結果
 	 */
 	public static <E extends BaseEntity> boolean save(E element) {
-		if (element == null) {
-			throw new IllegalArgumentException("element must not be null");
-		}
-		if (DBUtil.getPrimaryValue(element) == null) {
-			return Query.Builder.createInsertQuery(getConnection(), element).execute().result();
-		}
-
-		switch (Query.Builder.createUpdateQuery(getConnection(), element).execute().getUpdateCount()) {
-		case 0:
-			return Query.Builder.createInsertQuery(getConnection(), element).execute().result();
-		case -1:
-			return false;
-		default:
-			return true;
-		}
+		return getDatabase().save(element);
 	}
 
 	/**
@@ -144,82 +276,152 @@ public class DB {
 	 * @return 削除結果
 	 */
 	public static <E extends BaseEntity> boolean delete(E element) {
-		if (element == null) {
-			throw new IllegalArgumentException("element must not be null");
-		}
-		return Query.Builder.createDeleteQuery(getConnection(), element).execute().result();
+		return getDatabase().delete(element);
 	}
 
-	@Deprecated
-	static <E extends BaseEntity> Query<E> rawQuery(Class<E> clazz, String query) {
-		if (clazz == null) {
-			throw new IllegalArgumentException("class must not be null");
-		}
+	/**
+	 * 複数のエンティティをまとめて登録・更新します
+	 * @param <E> データベースのテーブルを示す型
+	 * @param elements 登録・更新するエンティティ
+	 * @return 登録・更新した件数
+	 * @see Database#saveAll(Collection)
+	 */
+	public static <E extends BaseEntity> int saveAll(Collection<E> elements) {
+		return getDatabase().saveAll(elements);
+	}
 
-		if(query == null || query.isEmpty()) {
-			throw new IllegalArgumentException("query must not be empty");
-		}
+	/**
+	 * 複数のエンティティをまとめて登録・更新します
+	 * @param <E> データベースのテーブルを示す型
+	 * @param elements 登録・更新するエンティティ(主キーの値が全て必要)
+	 * @return 登録・更新した件数
+	 * @see Database#upsertAll(Collection)
+	 */
+	public static <E extends BaseEntity> int upsertAll(Collection<E> elements) {
+		return getDatabase().upsertAll(elements);
+	}
 
-		return Query.Builder.createRawQuery(getConnection(), clazz, query);
+	/**
+	 * 複数のエンティティをまとめて登録します
+	 * @param <E> データベースのテーブルを示す型
+	 * @param elements 登録するエンティティ
+	 * @return 登録した件数
+	 * @see Database#insertAll(Collection)
+	 */
+	public static <E extends BaseEntity> int insertAll(Collection<E> elements) {
+		return getDatabase().insertAll(elements);
 	}
 
-	private static String createDBUrl(Type type, String host, int port, String dbName) {
-		if (port == -1) {
-			port = type.defaultPort;
-		}
-		String url = String.format("jdbc:%1$s%2$s:%3$d/%4$s?%5$s", type.protocol, host, port, dbName,
-				StringUtils.join(option, "&"));
-		return url;
+	/**
+	 * 複数のエンティティをまとめて更新します
+	 * @param <E> データベースのテーブルを示す型
+	 * @param elements 更新するエンティティ
+	 * @return 更新した件数
+	 * @see Database#updateAll(Collection)
+	 */
+	public static <E extends BaseEntity> int updateAll(Collection<E> elements) {
+		return getDatabase().updateAll(elements);
+	}
+
+	/**
+	 * 複数のエンティティをまとめて削除します
+	 * @param <E> データベースのテーブルを示す型
+	 * @param elements 削除するエンティティ
+	 * @return 削除した件数
+	 * @see Database#deleteAll(Collection)
+	 */
+	public static <E extends BaseEntity> int deleteAll(Collection<E> elements) {
+		return getDatabase().deleteAll(elements);
 	}
 
 	/**
-	 * トランザクションを開始します<br>
-	 * 内部的には{@link java.sql.Connection}インスタンスのautoCommitプロパティをfalseにして<br>
-	 * 自動コミットをオフにしているだけです。<br>
+	 * 複数のエンティティの1:nリレーションを持つリストフィールドをまとめてロードします。
+	 * @param entities ロードするエンティティ(全て同じクラス)
+	 * @param clazz 1:nの関係になるクラス
+	 * @see Database#loadHasMany(List, Class)
+	 */
+	public static void loadHasMany(List<? extends BaseEntity> entities, Class<? extends BaseEntity> clazz) {
+		getDatabase().loadHasMany(entities, clazz);
+	}
+
+	/**
+	 * 複数のエンティティの1:1リレーションを持つフィールドをまとめてロードします。
+	 * @param entities ロードするエンティティ(全て同じクラス)
+	 * @param clazz 1:1の関係になるクラス
+	 * @see Database#loadHasOne(List, Class)
+	 */
+	public static void loadHasOne(List<? extends BaseEntity> entities, Class<? extends BaseEntity> clazz) {
+		getDatabase().loadHasOne(entities, clazz);
+	}
+
+	@Deprecated
+	static <E extends BaseEntity> Query<E> rawQuery(Class<E> clazz, String query) {
+		return getDatabase().rawQuery(clazz, query);
+	}
+
+	/**
+	 * 呼び出し元スレッドでトランザクションを開始します<br>
+	 * コネクションを1つ取得してautoCommitプロパティをfalseにし、<br>
+	 * コミットまたはロールバックされるまで同じスレッドからの全ての操作でそのコネクションを使用します。<br>
+	 * 既にトランザクション中の場合は継続中のトランザクションを返します。<br>
 	 * 実際にトランザクションが開始されるタイミングはJDBCドライバに依存します。
+	 * @return 開始したトランザクション
 	 */
-	public static void beginTransaction() {
-		try {
-			if (!getConnection().getAutoCommit()) {
-				return;
-			}
+	public static Transaction beginTransaction() {
+		return getDatabase().beginTransaction();
+	}
 
-			getConnection().setAutoCommit(false);
-		} catch (SQLException e) {
-			throw new DBException(e);
-		}
+	/**
+	 * 呼び出し元スレッドで同一性マップのセッションを開始します。<br>
+	 * closeされるまでの間、同じクラス・主キーのエンティティは最初に読み込んだインスタンスを返します。
+	 * @return 開始したセッション
+	 * @see Database#beginSession()
+	 */
+	public static Session beginSession() {
+		return getDatabase().beginSession();
 	}
 
 	/**
-	 * トランザクションをコミットします
+	 * {@link jp.natsukishina.orm4j8.annotations.Cacheable}を指定したクラスのキャッシュの統計情報を取得します。
+	 * @param clazz Cacheableを指定したクラス
+	 * @return 統計情報
 	 */
-	public static void commit() {
-		try {
-			if (getConnection().getAutoCommit()) {
-				return;
-			}
-			getConnection().commit();
-			getConnection().setAutoCommit(true);
+	public static CacheStats getCacheStats(Class<? extends BaseEntity> clazz) {
+		return getDatabase().getCacheStats(clazz);
+	}
 
-		} catch (SQLException e) {
-			throw new DBException(e);
-		}
+	/**
+	 * {@link jp.natsukishina.orm4j8.annotations.Cacheable}を指定したクラスのキャッシュを破棄します。
+	 * @param clazz Cacheableを指定したクラス
+	 */
+	public static void clearCache(Class<? extends BaseEntity> clazz) {
+		getDatabase().clearCache(clazz);
 	}
 
 	/**
-	 * トランザクションをロールバックします
+	 * 呼び出し元スレッドのトランザクションをコミットします
+	 */
+	public static void commit() {
+		getDatabase().commit();
+	}
+
+	/**
+	 * 呼び出し元スレッドのトランザクションをロールバックします
 	 */
 	public static void rollback() {
-		try {
-			if (getConnection().getAutoCommit()) {
-				return;
-			}
-			getConnection().rollback();
-			getConnection().setAutoCommit(true);
+		getDatabase().rollback();
+	}
 
-		} catch (SQLException e) {
-			throw new DBException(e);
-		}
+	/**
+	 * 処理をトランザクション内で実行します。<br>
+	 * 正常に終了した場合はコミットし、例外が発生した場合はロールバックします。<br>
+	 * 既にトランザクション中の場合は継続中のトランザクションに参加し、コミット・ロールバックは呼び出し元に委ねます。
+	 * @param <T> 処理結果の型
+	 * @param work 実行する処理
+	 * @return 処理結果
+	 */
+	public static <T> T transaction(Supplier<T> work) {
+		return getDatabase().transaction(work);
 	}
 
 	static {
@@ -231,18 +433,6 @@ public class DB {
 		}));
 	}
 
-	/**
-	 * JDBCドライバーをロードする<br>
-	 * 参照の登録は各ドライバーのstaticイニシャライザに委譲している
-	 */
-	private static void loadDriver() {
-		try {
-			Class.forName(type.driverClass);
-		} catch (Exception e) {
-			throw new DBException(e);
-		}
-	}
-
 	/**
 	 * JDBCドライバーの参照を破棄する
 	 */
@@ -257,16 +447,15 @@ public class DB {
 	}
 
 	/**
-	 * コネクションを破棄する
+	 * デフォルトのデータベースと振り分け先のコネクションを破棄する
 	 */
-	private static void closeConnection() {
-		try {
-			if (con != null && !con.isClosed()) {
-				con.close();
-			}
-			con = null;
-		} catch (SQLException e) {
-			e.printStackTrace();
+	private static synchronized void closeConnection() {
+		if (database != null) {
+			database.close();
+		}
+		DatabaseRouter r = router;
+		if (r != null) {
+			r.close();
 		}
 	}
 
@@ -276,11 +465,11 @@ public class DB {
 	 */
 	public enum Type {
 		/** MySQL */
-		MYSQL("com.mysql.jdbc.Driver", "mysql://", 3306),
+		MYSQL("com.mysql.jdbc.Driver", "mysql://", 3306, 65535, 65535, true),
 		/** PostgreSQL */
-		POSTGRES("org.postgresql.Driver", "postgresql://", 5432),
+		POSTGRES("org.postgresql.Driver", "postgresql://", 5432, 32767, 32767, true),
 		/** Oracle DB */
-		ORACLE("oracle.jdbc.driver.OracleDriver", "oracle://", 1521),
+		ORACLE("oracle.jdbc.driver.OracleDriver", "oracle://", 1521, 1000, 65535, false),
 		// SQLITE("org.sqlite.JDBC", "sqlite://", 4983)
 		;
 
@@ -290,11 +479,21 @@ public class DB {
 		public final String protocol;
 		/** DBMSで定義されているデフォルトポート */
 		public final int defaultPort;
+		/** 1つのIN句に指定できる値の最大数(プレースホルダ数またはリストの要素数の上限) */
+		public final int maxInListSize;
+		/** 1つのステートメントに指定できるプレースホルダの最大数 */
+		public final int maxParameters;
+		/** INSERT ... VALUES (...), (...)で複数行を登録できる場合はtrue */
+		public final boolean multiRowInsert;
 
-		private Type(String driverClass, String protocol, int defaultPort) {
+		private Type(String driverClass, String protocol, int defaultPort, int maxInListSize, int maxParameters,
+				boolean multiRowInsert) {
 			this.driverClass = driverClass;
 			this.protocol = protocol;
 			this.defaultPort = defaultPort;
+			this.maxInListSize = maxInListSize;
+			this.maxParameters = maxParameters;
+			this.multiRowInsert = multiRowInsert;
 		}
 	}
 }
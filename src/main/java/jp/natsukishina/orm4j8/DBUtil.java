@@ -9,15 +9,14 @@ import java.time.ZoneId;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
 import jp.natsukishina.orm4j8.annotations.Column;
 import jp.natsukishina.orm4j8.annotations.ForSinglePrimaryKey;
 import jp.natsukishina.orm4j8.annotations.HasMany;
 import jp.natsukishina.orm4j8.annotations.HasOne;
-import jp.natsukishina.orm4j8.annotations.UseTable;
 import jp.natsukishina.orm4j8.entity.BaseEntity;
 import jp.natsukishina.orm4j8.exception.DBException;
 
@@ -29,11 +28,7 @@ import jp.natsukishina.orm4j8.exception.DBException;
 public class DBUtil {
 
 	public static <E extends BaseEntity> boolean hasTableName(Class<E> clazz) {
-		UseTable table = clazz.getDeclaredAnnotation(UseTable.class);
-		if (table == null) {
-			return true;
-		}
-		return table.value() != null || !table.value().isEmpty();
+		return EntityMetadata.of(clazz).hasTableName();
 	}
 	
 	static <E extends BaseEntity> String getTableName(E element) {
@@ -47,21 +42,11 @@ public class DBUtil {
 	 * @see jp.natsukishina.orm4j8.annotations.UseTable#value()
 	 */
 	static <E extends BaseEntity> String getTableName(Class<E> clazz) {
-		UseTable table = clazz.getDeclaredAnnotation(UseTable.class);
-		if (table == null) {
-			return null;
-		}
-
-		return table.value();
+		return EntityMetadata.of(clazz).getTableName();
 	}
 
 	public static <E extends BaseEntity> String getTableName4Query(Class<E> clazz) {
-		UseTable table = clazz.getDeclaredAnnotation(UseTable.class);
-		if (table == null) {
-			return null;
-		}
-
-		return "`" + table.value() + "`";
+		return EntityMetadata.of(clazz).getQuotedTableName();
 	}
 
 	static <E extends BaseEntity> String getTableName4Query(String tableName) {
@@ -70,8 +55,7 @@ public class DBUtil {
 
 
 	private static <E extends BaseEntity> Stream<Field> getFieldStream(Class<E> clazz) {
-		Field[] fields = clazz.getDeclaredFields();
-		return Arrays.stream(fields).filter(f -> f.getDeclaredAnnotation(Column.class) != null);
+		return EntityMetadata.of(clazz).getColumns().stream().map(c -> c.field);
 	}
 
 	/**
@@ -81,8 +65,7 @@ public class DBUtil {
 	 * @return 主キーが含まれていればtrue、なければfalse
 	 */
 	static <E extends BaseEntity> boolean hasPrimaryField(Class<E> clazz) {
-		List<Field> fields = getPrimaryFields(clazz);
-		return fields != null && !fields.isEmpty();
+		return EntityMetadata.of(clazz).hasPrimaryColumn();
 	}
 
 	/**
@@ -97,12 +80,11 @@ public class DBUtil {
 
 	@ForSinglePrimaryKey
 	static <E extends BaseEntity> Field getPrimaryField(Class<E> clazz) {
-		Optional<Field> field = getFieldStream(clazz).filter(f -> f.getDeclaredAnnotation(Column.class).primary())
-				.findFirst();
-		if (!field.isPresent()) {
+		ColumnMetadata primaryColumn = EntityMetadata.of(clazz).getPrimaryColumn();
+		if (primaryColumn == null) {
 			return null;
 		}
-		return field.get();
+		return primaryColumn.field;
 	}
 
 	@ForSinglePrimaryKey
@@ -111,8 +93,7 @@ public class DBUtil {
 	}
 
 	static <E extends BaseEntity> List<Field> getPrimaryFields(Class<E> clazz) {
-		return getFieldStream(clazz).filter(f -> f.getDeclaredAnnotation(Column.class).primary())
-				.collect(Collectors.toList());
+		return EntityMetadata.of(clazz).getPrimaryColumns().stream().map(c -> c.field).collect(Collectors.toList());
 	}
 
 	static <E extends BaseEntity> List<Field> getPrimaryFields(E element) {
@@ -121,11 +102,11 @@ public class DBUtil {
 
 	@ForSinglePrimaryKey
 	static <E extends BaseEntity> String getPrimaryColumn(Class<E> clazz) {
-		Field primaryField = getPrimaryField(clazz);
-		if(primaryField == null) {
+		ColumnMetadata primaryColumn = EntityMetadata.of(clazz).getPrimaryColumn();
+		if (primaryColumn == null) {
 			return null;
 		}
-		return primaryField.getDeclaredAnnotation(Column.class).value();
+		return primaryColumn.name;
 	}
 
 	@ForSinglePrimaryKey
@@ -134,8 +115,7 @@ public class DBUtil {
 	}
 
 	static <E extends BaseEntity> List<String> getPrimaryColumns(Class<E> clazz) {
-		return getFieldStream(clazz).filter(f -> f.getDeclaredAnnotation(Column.class).primary())
-				.map(f -> f.getDeclaredAnnotation(Column.class)).map(c -> c.value()).collect(Collectors.toList());
+		return EntityMetadata.of(clazz).getPrimaryColumns().stream().map(c -> c.name).collect(Collectors.toList());
 	}
 
 	static <E extends BaseEntity> List<String> getPrimaryColumns(E element) {
@@ -143,8 +123,7 @@ public class DBUtil {
 	}
 
 	static <E extends BaseEntity> List<String> getNonPrimaryColumns(Class<E> clazz) {
-		return getFieldStream(clazz).filter(f -> !f.getDeclaredAnnotation(Column.class).primary())
-				.map(f -> f.getDeclaredAnnotation(Column.class)).map(c -> c.value()).collect(Collectors.toList());
+		return EntityMetadata.of(clazz).getNonPrimaryColumns().stream().map(c -> c.name).collect(Collectors.toList());
 	}
 
 	static <E extends BaseEntity> List<String> getNonPrimaryColumns(E element) {
@@ -160,23 +139,11 @@ public class DBUtil {
 	 */
 	@ForSinglePrimaryKey
 	static <E extends BaseEntity> Object getPrimaryValue(E element) {
-		Field primaryField = null;
-		try {
-			primaryField = getPrimaryField(element);
-			if (primaryField == null) {
-				return null;
-			}
-
-			primaryField.setAccessible(true);
-			return primaryField.get(element);
-		} catch (IllegalArgumentException | IllegalAccessException e) {
-			e.printStackTrace();
+		ColumnMetadata primaryColumn = EntityMetadata.of(element.getClass()).getPrimaryColumn();
+		if (primaryColumn == null) {
 			return null;
-		} finally {
-			if (primaryField != null) {
-				primaryField.setAccessible(false);
-			}
 		}
+		return primaryColumn.accessor.get(element);
 	}
 
 	static boolean isPrimary(Field field) {
@@ -192,36 +159,51 @@ public class DBUtil {
 	}
 
 	public static <E extends BaseEntity> Field getField(Class<E> clazz, String columnName) {
-		try {
-			Optional<Field> field = getFieldStream(clazz)
-					.filter(f -> columnName.equals(f.getDeclaredAnnotation(Column.class).value())).findFirst();
-			return field.get();
-		} catch (Exception e) {
-			e.printStackTrace();
+		ColumnMetadata column = EntityMetadata.of(clazz).getColumn(columnName);
+		if (column == null) {
 			return null;
 		}
+		return column.field;
 	}
 
 	static <E extends BaseEntity> Field getField4Query(Class<E> clazz, String columnName) {
-		try {
-			Optional<Field> field = getFieldStream(clazz)
-					.filter(f -> columnName.equals(getColumn4Query(clazz, f))).findFirst();
-			return field.get();
-		} catch (Exception e) {
-			e.printStackTrace();
+		ColumnMetadata column = EntityMetadata.of(clazz).getColumn4Query(columnName);
+		if (column == null) {
 			return null;
 		}
+		return column.field;
 	}
 
+	/**
+	 * フィールドの値を取得する
+	 *
+	 * @param <E> データベースのテーブルを示す型
+	 * @param field 取得するフィールド
+	 * @param element 取得元のエンティティ
+	 * @return フィールドの値
+	 */
 	static <E extends BaseEntity> Object getFieldValue(Field field, E element) {
-		try {
-			field.setAccessible(true);
-			return field.get(element);
-		} catch (IllegalArgumentException | IllegalAccessException e) {
-			throw new DBException(e);
-		} finally {
-			field.setAccessible(false);
+		return getAccessor(field).get(element);
+	}
+
+	/**
+	 * フィールドに値を設定する
+	 *
+	 * @param <E> データベースのテーブルを示す型
+	 * @param field 設定するフィールド
+	 * @param element 設定先のエンティティ
+	 * @param value 設定する値
+	 */
+	static <E extends BaseEntity> void setFieldValue(Field field, E element, Object value) {
+		getAccessor(field).set(element, value);
+	}
+
+	private static FieldAccessor getAccessor(Field field) {
+		FieldAccessor accessor = EntityMetadata.of(field.getDeclaringClass()).getAccessor(field);
+		if (accessor == null) {
+			throw new DBException("field [" + field.getName() + "] hasn't annotation Column, HasOne or HasMany");
 		}
+		return accessor;
 	}
 
 	static <E extends BaseEntity> List<Field> getFieldList(Class<E> clazz) {
@@ -229,7 +211,7 @@ public class DBUtil {
 	}
 
 	static <E extends BaseEntity> Field[] getFields(Class<E> clazz) {
-		return getFieldList(clazz).toArray(new Field[0]);
+		return getFieldStream(clazz).toArray(Field[]::new);
 	}
 
 	static String getColumn(Field field) {
@@ -241,21 +223,19 @@ public class DBUtil {
 	}
 
 	static <E extends BaseEntity> String[] getColumns(Class<E> clazz) {
-		return getFieldStream(clazz).map(f -> DBUtil.getColumn(f)).toArray(a -> new String[a]);
+		return EntityMetadata.of(clazz).getColumns().stream().map(c -> c.name).toArray(a -> new String[a]);
 	}
 
 	static <E extends BaseEntity> List<String> getColumnList(Class<E> clazz) {
-		return getFieldStream(clazz).map(f -> DBUtil.getColumn(f)).collect(Collectors.toList());
+		return EntityMetadata.of(clazz).getColumns().stream().map(c -> c.name).collect(Collectors.toList());
 	}
 
 	static <E extends BaseEntity> List<String> getColumnList4Query(Class<E> clazz) {
-		return getFieldStream(clazz).map(f -> "`" + DBUtil.getTableName(clazz) + "`.`" + DBUtil.getColumn(f) + "`")
-				.collect(Collectors.toList());
+		return Arrays.asList(EntityMetadata.of(clazz).getQuotedColumns());
 	}
 
 	static <E extends BaseEntity> String[] getColumns4Query(Class<E> clazz) {
-		return getFieldStream(clazz).map(f -> "`" + DBUtil.getTableName(clazz) + "`.`" + DBUtil.getColumn(f) + "`")
-				.toArray(a -> new String[a]);
+		return EntityMetadata.of(clazz).getQuotedColumns();
 	}
 
 	/**
@@ -268,6 +248,10 @@ public class DBUtil {
 	}
 
 	static <E extends BaseEntity> String getColumn4Query(Class<E> clazz, String column) {
+		ColumnMetadata columnMetadata = EntityMetadata.of(clazz).getColumn(column);
+		if (columnMetadata != null) {
+			return columnMetadata.quotedName;
+		}
 		return "`" + DBUtil.getTableName(clazz) + "`.`" + column + "`";
 	}
 
@@ -286,8 +270,8 @@ public class DBUtil {
 			return null;
 		}
 
-		return Arrays.stream(clazz.getDeclaredFields()).filter(f -> f.getDeclaredAnnotation(HasMany.class) != null)
-		.map(f -> f.getDeclaredAnnotation(HasMany.class)).collect(Collectors.toList());
+		return EntityMetadata.of(clazz).getHasManyRelations().stream().map(r -> r.annotation)
+				.collect(Collectors.toList());
 	}
 
 	public static <E extends BaseEntity> Field getHasManyField(Class<E> clazz, Class<? extends BaseEntity> targetClass) {
@@ -297,14 +281,8 @@ public class DBUtil {
 		if(targetClass == null) {
 			return null;
 		}
-		try {
-			return Arrays.stream(clazz.getDeclaredFields()).filter(f -> f.getDeclaredAnnotation(HasMany.class) != null)
-					.filter(f -> f.getDeclaredAnnotation(HasMany.class).targetClass().equals(targetClass)).findFirst()
-					.get();
-		} catch (Exception e) {
-			e.printStackTrace();
-			return null;
-		}
+		return EntityMetadata.of(clazz).getHasManyRelations().stream().filter(r -> r.targetClass.equals(targetClass))
+				.map(r -> r.field).findFirst().orElse(null);
 	}
 
 	/**
@@ -333,7 +311,7 @@ public class DBUtil {
 			return null;
 		}
 
-		return getHasOneFieldList(clazz).stream().map(f -> f.getDeclaredAnnotation(HasOne.class))
+		return EntityMetadata.of(clazz).getHasOneRelations().stream().map(r -> r.annotation)
 				.collect(Collectors.toList());
 	}
 
@@ -348,8 +326,7 @@ public class DBUtil {
 			return null;
 		}
 
-		return Arrays.stream(clazz.getDeclaredFields()).filter(f -> f.getDeclaredAnnotation(HasOne.class) != null)
-				.collect(Collectors.toList());
+		return EntityMetadata.of(clazz).getHasOneRelations().stream().map(r -> r.field).collect(Collectors.toList());
 	}
 
 	/**
@@ -0,0 +1,925 @@
+package jp.natsukishina.orm4j8;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import jp.natsukishina.orm4j8.DB.Type;
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+import jp.natsukishina.orm4j8.annotations.Cacheable;
+import jp.natsukishina.orm4j8.annotations.FetchType;
+import jp.natsukishina.orm4j8.annotations.ForSinglePrimaryKey;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * 1つのデータベースへの接続を扱うクラス。<br>
+ * インスタンスごとに接続設定、コネクションプール、トランザクションを持つため、
+ * 複数のデータベースを同時に扱う場合はデータベースごとにインスタンスを生成してください。<br>
+ * {@link DB}のstaticメソッドは{@link DB#getDatabase()}で取得できるインスタンスに委譲しています。<br>
+ * JVMのシャットダウン時に破棄されるのはデフォルトのデータベースと{@link DB#configRouter(DatabaseRouter)}で設定した振り分け先のみです。
+ * それ以外のインスタンスは不要になった時点で{@link #close()}してください。
+ * @author 417.72KI
+ *
+ */
+public class Database implements AutoCloseable {
+	private final Type type;
+	private final ConnectionProvider connectionProvider;
+	private final ThreadLocal<Transaction> currentTransaction = new ThreadLocal<>();
+	private final ThreadLocal<Session> currentSession = new ThreadLocal<>();
+	/** {@link Cacheable}を指定したクラスごとのキャッシュ */
+	private final Map<Class<?>, EntityCache> caches = new ConcurrentHashMap<>();
+	private volatile QueryCache queryCache = new QueryCache(QueryCache.DEFAULT_MAX_SIZE);
+	private volatile int batchSize = BatchWriter.DEFAULT_BATCH_SIZE;
+	private volatile boolean multiRowInsert = true;
+	private volatile boolean nativeUpsert = false;
+	/** 名前 → 主キーの採番方法 */
+	private final Map<String, IdGenerator> idGenerators = new ConcurrentHashMap<>();
+	private volatile ReplicaSet replicaSet;
+	private volatile boolean readYourWrites = true;
+	private volatile boolean identityMapInTransaction = false;
+
+	/**
+	 * 内蔵のコネクションプールを使用するインスタンスを生成します。
+	 * @param type データベース種別
+	 * @param host データベースサーバのホスト
+	 * @param port データベースサーバのポート
+	 * @param dbName データベース名
+	 * @param user データベースユーザ名
+	 * @param pass データベースパスワード
+	 * @param option その他オプション(key=value形式)
+	 */
+	public Database(Type type, String host, int port, String dbName, String user, String pass, String... option) {
+		this(type, host, port, dbName, user, pass, new PoolConfig(), option);
+	}
+
+	/**
+	 * 内蔵のコネクションプールを使用するインスタンスを生成します。
+	 * @param type データベース種別
+	 * @param host データベースサーバのホスト
+	 * @param port データベースサーバのポート
+	 * @param dbName データベース名
+	 * @param user データベースユーザ名
+	 * @param pass データベースパスワード
+	 * @param poolConfig コネクションプールの設定
+	 * @param option その他オプション(key=value形式)
+	 */
+	public Database(Type type, String host, int port, String dbName, String user, String pass, PoolConfig poolConfig,
+			String... option) {
+		this(type, createPool(type, createDBUrl(type, host, port, dbName, option), user, pass, poolConfig));
+	}
+
+	/**
+	 * DataSourceからコネクションを取得するインスタンスを生成します。<br>
+	 * 内蔵のコネクションプールは使用せず、プーリングやステートメントキャッシュはDataSource側の設定に従います。
+	 * @param type データベース種別
+	 * @param dataSource コネクションの取得元となるDataSource
+	 */
+	public Database(Type type, DataSource dataSource) {
+		this(type, requireDataSource(dataSource)::getConnection);
+	}
+
+	/**
+	 * ConnectionProviderからコネクションを取得するインスタンスを生成します。
+	 * @param type データベース種別
+	 * @param connectionProvider コネクションの取得元
+	 */
+	public Database(Type type, ConnectionProvider connectionProvider) {
+		if (type == null) {
+			throw new IllegalArgumentException("type must not be null");
+		}
+		if (connectionProvider == null) {
+			throw new IllegalArgumentException("connectionProvider must not be null");
+		}
+		this.type = type;
+		this.connectionProvider = connectionProvider;
+	}
+
+	private static DataSource requireDataSource(DataSource dataSource) {
+		if (dataSource == null) {
+			throw new IllegalArgumentException("dataSource must not be null");
+		}
+		return dataSource;
+	}
+
+	private static ConnectionPool createPool(Type type, String url, String user, String pass, PoolConfig poolConfig) {
+		if (poolConfig == null) {
+			throw new IllegalArgumentException("poolConfig must not be null");
+		}
+		loadDriver(type);
+		return new ConnectionPool(() -> DriverManager.getConnection(url, user, pass), poolConfig);
+	}
+
+	private static String createDBUrl(Type type, String host, int port, String dbName, String... option) {
+		if (type == null) {
+			throw new IllegalArgumentException("type must not be null");
+		}
+		if (port == -1) {
+			port = type.defaultPort;
+		}
+		String url = String.format("jdbc:%1$s%2$s:%3$d/%4$s?%5$s", type.protocol, host, port, dbName,
+				StringUtils.join(option, "&"));
+		return url;
+	}
+
+	/**
+	 * JDBCドライバーをロードする<br>
+	 * 参照の登録は各ドライバーのstaticイニシャライザに委譲している
+	 */
+	private static void loadDriver(Type type) {
+		try {
+			Class.forName(type.driverClass);
+		} catch (Exception e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * データベース種別を取得します。
+	 * @return データベース種別
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * 読み込み用のレプリカを設定します。<br>
+	 * 設定後、検索用クエリはレプリカから取得したコネクションで実行され、登録・更新・削除はこのデータベースで実行されます。<br>
+	 * 全てのレプリカで接続に失敗した場合はこのデータベースから読み込みます。
+	 * @param selector レプリカの選択方法
+	 * @param replicas レプリカのコネクション取得元
+	 */
+	public void configReplicas(ReplicaSelector selector, ConnectionProvider... replicas) {
+		if (replicas == null) {
+			throw new IllegalArgumentException("replicas must not be null");
+		}
+		ReplicaSet old = replicaSet;
+		replicaSet = new ReplicaSet(selector, Arrays.asList(replicas));
+		if (old != null) {
+			old.close();
+		}
+	}
+
+	/**
+	 * 読み込み用のレプリカを設定します。<br>
+	 * レプリカとなるDatabaseのコネクション取得元を使用します。レプリカ側のDatabaseはこのデータベースをcloseしても閉じられません。
+	 * @param selector レプリカの選択方法
+	 * @param replicas レプリカ
+	 * @see #configReplicas(ReplicaSelector, ConnectionProvider...)
+	 */
+	public void configReplicas(ReplicaSelector selector, Database... replicas) {
+		if (replicas == null) {
+			throw new IllegalArgumentException("replicas must not be null");
+		}
+		configReplicas(selector, Arrays.stream(replicas).map(replica -> {
+			if (replica == null) {
+				throw new IllegalArgumentException("replica must not be null");
+			}
+			return (ConnectionProvider) replica::openConnection;
+		}).toArray(ConnectionProvider[]::new));
+	}
+
+	/**
+	 * トランザクション中の読み込み先を設定します。<br>
+	 * trueの場合、トランザクション中に登録・更新・削除を行うと、以降の検索はトランザクションが終わるまでレプリカではなくこのデータベースで実行します。<br>
+	 * falseの場合は常にレプリカから読み込みます。デフォルトはtrueです。
+	 * @param readYourWrites 書き込み後の検索をこのデータベースで行う場合はtrue
+	 */
+	public void setReadYourWrites(boolean readYourWrites) {
+		this.readYourWrites = readYourWrites;
+	}
+
+	/**
+	 * トランザクション中の同一性マップの使用有無を設定します。<br>
+	 * trueの場合、トランザクション中に読み込んだエンティティはトランザクションが終わるまで保持し、
+	 * 同じクラス・主キーのエンティティは最初に読み込んだインスタンスを返します。<br>
+	 * falseの場合は{@link #beginSession()}で開始したセッション中のみ使用します。デフォルトはfalseです。
+	 * @param identityMapInTransaction トランザクション中に同一性マップを使用する場合はtrue
+	 */
+	public void setIdentityMapInTransaction(boolean identityMapInTransaction) {
+		this.identityMapInTransaction = identityMapInTransaction;
+	}
+
+	/**
+	 * {@link Query#cached(java.time.Duration)}で保持する検索結果の最大数を設定します。<br>
+	 * 保持している検索結果は破棄します。デフォルトは{@value QueryCache#DEFAULT_MAX_SIZE}件です。
+	 * @param maxSize 保持する検索結果の最大数
+	 */
+	public void setQueryCacheSize(int maxSize) {
+		this.queryCache = new QueryCache(maxSize);
+	}
+
+	/**
+	 * {@link #saveAll(Collection)}等で1回のexecuteBatchで実行する件数を設定します。<br>
+	 * デフォルトは{@value BatchWriter#DEFAULT_BATCH_SIZE}件です。
+	 * @param batchSize 1回のexecuteBatchで実行する件数
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize must be positive");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * {@link #insertAll(Collection)}等で複数行のINSERTを使用するか設定します。<br>
+	 * trueの場合、対応したDBMS({@link Type#multiRowInsert})では1つのクエリで複数行を登録し、
+	 * 1つのクエリの行数は{@link #setBatchSize(int)}・プレースホルダの上限・パケットの上限を超えないように決めます。
+	 * falseの場合は1行ずつのINSERTをJDBCのバッチ更新で実行します。デフォルトはtrueです。
+	 * @param multiRowInsert 複数行のINSERTを使用する場合はtrue
+	 */
+	public void setMultiRowInsert(boolean multiRowInsert) {
+		this.multiRowInsert = multiRowInsert;
+	}
+
+	/**
+	 * {@link #save(BaseEntity)}・{@link #saveAll(Collection)}で、主キーの値が全てあるエンティティを
+	 * DBMSごとの構文(MySQLはON DUPLICATE KEY UPDATE、PostgreSQLはON CONFLICT、OracleはMERGE)の
+	 * 1つのクエリで登録・更新するか設定します。<br>
+	 * falseの場合は更新し、更新した行が無ければ登録します。デフォルトはfalseです。<br>
+	 * trueにする場合は以下に注意してください。
+	 * <ul>
+	 * <li>テーブルに主キー制約が必要です。無い場合は同じ主キーの行が重複して登録されます。</li>
+	 * <li>MySQLのON DUPLICATE KEY UPDATEは主キー以外の一意制約の重複でも更新するため、
+	 * 主キーが異なり他の一意なカラムが重複する行を上書きします。</li>
+	 * </ul>
+	 * @param nativeUpsert 1つのクエリで登録・更新する場合はtrue
+	 * @see #upsertAll(Collection)
+	 */
+	public void setNativeUpsert(boolean nativeUpsert) {
+		this.nativeUpsert = nativeUpsert;
+	}
+
+	/**
+	 * 主キーの採番方法を登録します。<br>
+	 * {@link jp.natsukishina.orm4j8.annotations.Column#generator()}に登録した名前を指定した主キーは、
+	 * 値の無いエンティティの登録時に最大値の検索の代わりにこの方法で採番します。
+	 * 採番方法は値の範囲の確保にこのデータベースのトランザクション外のコネクションを使用するため、
+	 * コネクションプールの最大数は1より大きくしてください。
+	 * @param name 採番方法の名前
+	 * @param generator 採番方法
+	 * @see BlockIdGenerator
+	 */
+	public void registerIdGenerator(String name, IdGenerator generator) {
+		if (name == null || name.isEmpty()) {
+			throw new IllegalArgumentException("name must not be empty");
+		}
+		if (generator == null) {
+			throw new IllegalArgumentException("generator must not be null");
+		}
+		idGenerators.put(name, generator);
+	}
+
+	/**
+	 * @param name 採番方法の名前
+	 * @return 採番した値
+	 * @throws DBException 採番方法が登録されていない場合
+	 */
+	private long nextId(String name) {
+		IdGenerator generator = idGenerators.get(name);
+		if (generator == null) {
+			throw new DBException("IdGenerator is not registered: " + name);
+		}
+		return generator.next(type, connectionProvider);
+	}
+
+	/**
+	 * レプリカ・採番方法・各種設定を別のインスタンスから引き継ぎます。
+	 * @param from 引き継ぎ元
+	 */
+	void takeOverSettings(Database from) {
+		this.replicaSet = from.replicaSet;
+		this.readYourWrites = from.readYourWrites;
+		this.identityMapInTransaction = from.identityMapInTransaction;
+		this.queryCache = from.queryCache;
+		this.batchSize = from.batchSize;
+		this.multiRowInsert = from.multiRowInsert;
+		this.nativeUpsert = from.nativeUpsert;
+		this.idGenerators.putAll(from.idGenerators);
+		from.replicaSet = null;
+	}
+
+	private Connection openConnection() {
+		try {
+			return connectionProvider.getConnection();
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * コネクションを取得します。<br>
+	 * 呼び出し元スレッドがトランザクション中であればそのコネクションを、それ以外は取得元から新たに取得したコネクションを返します。<br>
+	 * 取得したコネクションはcloseすると取得元に返却されます。
+	 * @return コネクション
+	 */
+	Connection getConnection() {
+		Transaction tx = getTransaction();
+		if (tx != null) {
+			return tx.getConnectionForWrite();
+		}
+		return openConnection();
+	}
+
+	/**
+	 * 読み込み用のコネクションを取得します。<br>
+	 * レプリカが設定されている場合はレプリカから取得します。
+	 * 但し、書き込み済みのトランザクション中で{@link #setReadYourWrites(boolean)}がtrueの場合はトランザクションのコネクションを返します。
+	 * @return コネクション
+	 */
+	Connection getReadConnection() {
+		Transaction tx = getTransaction();
+		ReplicaSet replicas = replicaSet;
+		if (replicas == null || (tx != null && readYourWrites && tx.isWritten())) {
+			return tx != null ? tx.getConnection() : openConnection();
+		}
+		Connection con = replicas.getConnection();
+		if (con != null) {
+			return con;
+		}
+		return tx != null ? tx.getConnection() : openConnection();
+	}
+
+	/**
+	 * 検索用クエリを発行します。
+	 * @param <E> データベースのテーブルを示す型
+	 * @param clazz 検索対象テーブルのクラス
+	 * @return 検索用クエリ
+	 */
+	public <E extends BaseEntity> Query<E> find(Class<E> clazz) {
+		if(clazz == null) {
+			throw new IllegalArgumentException("clazz must not be null");
+		}
+		return Query.Builder.createFindQuery(this::getReadConnection, this::getIdentityMap, this::getReadableQueryCache,
+				clazz);
+	}
+
+	/**
+	 * 主キーを元にエンティティを検索します<br>
+	 * {@link Cacheable}を指定したクラスはキャッシュから取得し、キャッシュに無い場合のみデータベースに問い合わせます。
+	 * @param <E> データベースのテーブルを示す型
+	 * @param clazz 検索対象テーブルのクラスオブジェクト
+	 * @param primaryKey 主キーの値
+	 * @return 検索結果エンティティ
+	 */
+	@ForSinglePrimaryKey
+	public <E extends BaseEntity> E findByPrimary(Class<E> clazz, Object primaryKey) {
+		if(clazz == null) {
+			throw new IllegalArgumentException("clazz must not be null");
+		}
+		if(primaryKey == null) {
+			throw new IllegalArgumentException("primaryKey must not be null");
+		}
+		ColumnMetadata primaryColumn = EntityMetadata.of(clazz).getPrimaryColumn();
+		if (primaryColumn == null) {
+			throw new DBException(clazz.getName() + " doesn't have primary column");
+		}
+		Object key = PrimaryKeyLoader.convert(primaryColumn, primaryKey);
+		IdentityMap identityMap = getIdentityMap();
+		if (identityMap != null && identityMap.get(clazz, key) != null) {
+			return clazz.cast(identityMap.get(clazz, key));
+		}
+		EntityCache cache = getReadableCache(clazz);
+		if (cache == null) {
+			return find(clazz).where(primaryColumn.name, "=", key).execute().get();
+		}
+		E element = clazz.cast(cache.get(key));
+		if (element != null) {
+			loadEagerHasOne(element);
+			if (identityMap != null) {
+				identityMap.putIfAbsent(clazz, key, element);
+			}
+			return element;
+		}
+		long stamp = cache.stamp();
+		element = find(clazz).where(primaryColumn.name, "=", key).execute().get();
+		if (element != null) {
+			cache.put(key, element, stamp);
+		}
+		return element;
+	}
+
+	/**
+	 * キャッシュから生成したエンティティに、検索時に取得するHasOneをロードします。
+	 */
+	private void loadEagerHasOne(BaseEntity element) {
+		FetchPlan.of(element.getClass()).getRoot().children.stream().filter(n -> n.fetchType != FetchType.LAZY)
+				.map(n -> n.relation.targetClass).distinct()
+				.forEach(target -> RelationLoader.loadHasOne(this, Collections.singletonList(element), target));
+	}
+
+	/**
+	 * 複数の主キーを元にエンティティをまとめて検索します<br>
+	 * 主キーは{@link Type#maxInListSize}件ずつIN句で指定し、カラムの型に変換して渡します。<br>
+	 * 複合主キーの場合は、主キーのカラムの宣言順に値を並べたListを1件の主キーとして指定してください。
+	 * <pre>(`E`.`key1`, `E`.`key2`) IN ((?, ?), (?, ?), ...)</pre>
+	 * というクエリを生成します。
+	 * @param <K> 主キーの型
+	 * @param <E> データベースのテーブルを示す型
+	 * @param clazz 検索対象テーブルのクラスオブジェクト
+	 * @param primaryKeys 主キーの値の一覧
+	 * @return 主キーの値と検索結果エンティティのマップ(primaryKeysの順)。存在しない主キーは含みません
+	 */
+	public <K, E extends BaseEntity> Map<K, E> findAllByPrimary(Class<E> clazz, Collection<K> primaryKeys) {
+		if (clazz == null) {
+			throw new IllegalArgumentException("clazz must not be null");
+		}
+		if (primaryKeys == null) {
+			throw new IllegalArgumentException("primaryKeys must not be null");
+		}
+		return PrimaryKeyLoader.load(this::getReadConnection, getIdentityMap(), type, clazz, primaryKeys);
+	}
+
+	/**
+	 * エンティティをデータベースに登録・更新します。<br>
+	 * 主キーの値がある場合は更新し、更新した行が無ければ登録します
+	 * ({@link #setNativeUpsert(boolean)}がtrueで主キーの値が全てある場合は、DBMSごとの構文の1つのクエリで登録・更新します)。
+	 * 主キーの値が無い場合は採番して登録します。
+	 * @param <E> データベースのテーブルを示す型
+	 * @param element 登録するエンティティ
+	 * @return 登録結果
+	 */
+	public <E extends BaseEntity> boolean save(E element) {
+		if (element == null) {
+			throw new IllegalArgumentException("element must not be null");
+		}
+		boolean result;
+		if (nativeUpsert && Upsert.isApplicable(element)) {
+			result = Query.Builder.createUpsertQuery(this::getConnection, type, element).execute().result();
+		} else if (DBUtil.getPrimaryValue(element) == null) {
+			result = Query.Builder.createInsertQuery(this::getConnection, this::nextId, element).execute().result();
+		} else {
+			switch (Query.Builder.createUpdateQuery(this::getConnection, element).execute().getUpdateCount()) {
+			case 0:
+				result = Query.Builder.createInsertQuery(this::getConnection, this::nextId, element).execute().result();
+				break;
+			case -1:
+				result = false;
+				break;
+			default:
+				result = true;
+				break;
+			}
+		}
+		IdentityMap identityMap = getIdentityMap();
+		if (result && identityMap != null) {
+			identityMap.put(element);
+		}
+		if (result) {
+			invalidateCaches(Collections.singletonList(element));
+		}
+		return result;
+	}
+
+	/**
+	 * エンティティをDBから削除します
+	 * @param <E> データベースのテーブルを示す型
+	 * @param element 削除するエンティティ
+	 * @return 削除結果
+	 */
+	public <E extends BaseEntity> boolean delete(E element) {
+		if (element == null) {
+			throw new IllegalArgumentException("element must not be null");
+		}
+		boolean result = Query.Builder.createDeleteQuery(this::getConnection, element).execute().result();
+		IdentityMap identityMap = getIdentityMap();
+		if (result && identityMap != null) {
+			identityMap.remove(element);
+		}
+		if (result) {
+			invalidateCaches(Collections.singletonList(element));
+		}
+		return result;
+	}
+
+	/**
+	 * 複数のエンティティをまとめて登録・更新します。<br>
+	 * 主キーの値が無いエンティティは{@link #insertAll(Collection)}と同じ方法で登録します。
+	 * それ以外は{@link #updateAll(Collection)}と同じ方法で更新し、更新した行が無かったものを登録します
+	 * ({@link #setNativeUpsert(boolean)}がtrueの場合は{@link #upsertAll(Collection)}と同じ方法で登録・更新します)。<br>
+	 * トランザクション中でなければ、全てのエンティティを1つのトランザクションで登録・更新します。
+	 * @param <E> データベースのテーブルを示す型
+	 * @param elements 登録・更新するエンティティ
+	 * @return 登録・更新した件数
+	 */
+	public <E extends BaseEntity> int saveAll(Collection<E> elements) {
+		List<E> list = requireElements(elements);
+		if (list.isEmpty()) {
+			return 0;
+		}
+		int count = transaction(() -> {
+			List<E> inserts = new ArrayList<>();
+			List<E> keyed = new ArrayList<>();
+			list.forEach(element -> (Upsert.isApplicable(element) ? keyed : inserts).add(element));
+			try (Connection con = getConnection()) {
+				BatchWriter writer = new BatchWriter(con, batchSize, type, multiRowInsert, this::nextId);
+				if (nativeUpsert) {
+					return BatchWriter.sum(writer.upsert(keyed)) + BatchWriter.sum(writer.insert(inserts));
+				}
+				// 更新した行が無かったものを登録する
+				int[] updateCounts = writer.update(keyed);
+				for (int i = 0; i < updateCounts.length; i++) {
+					if (updateCounts[i] == 0) {
+						inserts.add(keyed.get(i));
+					}
+				}
+				return BatchWriter.sum(updateCounts) + BatchWriter.sum(writer.insert(inserts));
+			} catch (SQLException e) {
+				throw new DBException(e);
+			}
+		});
+		afterWrite(list, false);
+		return count;
+	}
+
+	/**
+	 * 複数のエンティティをまとめて登録・更新します。<br>
+	 * 主キーが同じ行があれば更新し、無ければ登録するDBMSごとの構文のクエリをテーブルごとに1つ生成し、
+	 * {@link #setBatchSize(int)}件ずつJDBCのバッチ更新で実行します。
+	 * {@link #setNativeUpsert(boolean)}の設定に関わらずこの構文を使用するため、同じ注意事項
+	 * (主キー制約が必要、MySQLでは主キー以外の一意制約の重複でも更新する)があります。<br>
+	 * トランザクション中でなければ、全てのエンティティを1つのトランザクションで登録・更新します。
+	 * @param <E> データベースのテーブルを示す型
+	 * @param elements 登録・更新するエンティティ(主キーの値が全て必要)
+	 * @return 登録・更新した件数
+	 */
+	public <E extends BaseEntity> int upsertAll(Collection<E> elements) {
+		if (elements != null && !elements.stream().allMatch(e -> e == null || Upsert.isApplicable(e))) {
+			throw new IllegalArgumentException("elements must have all primary values");
+		}
+		return writeAll(elements, BatchWriter::upsert, false);
+	}
+
+	/**
+	 * 複数のエンティティをまとめて登録します。<br>
+	 * テーブルごとにINSERT文を1つ生成し、{@link #setBatchSize(int)}件ずつJDBCのバッチ更新で実行します。
+	 * 複数行のINSERTに対応したDBMSでは、{@link #setMultiRowInsert(boolean)}に従い複数行を1つのクエリで登録します。<br>
+	 * 主キーの値が無いエンティティは、テーブルごとに1回だけ最大値を検索して連番を採番します
+	 * ({@link #registerIdGenerator(String, IdGenerator)}で登録した採番方法を指定した主キーはその方法で採番します)。<br>
+	 * トランザクション中でなければ、全てのエンティティを1つのトランザクションで登録します。
+	 * @param <E> データベースのテーブルを示す型
+	 * @param elements 登録するエンティティ
+	 * @return 登録した件数
+	 */
+	public <E extends BaseEntity> int insertAll(Collection<E> elements) {
+		return writeAll(elements, BatchWriter::insert, false);
+	}
+
+	/**
+	 * 複数のエンティティをまとめて更新します。<br>
+	 * テーブルごとにUPDATE文を1つ生成し、{@link #setBatchSize(int)}件ずつJDBCのバッチ更新で実行します。<br>
+	 * トランザクション中でなければ、全てのエンティティを1つのトランザクションで更新します。
+	 * @param <E> データベースのテーブルを示す型
+	 * @param elements 更新するエンティティ
+	 * @return 更新した件数
+	 */
+	public <E extends BaseEntity> int updateAll(Collection<E> elements) {
+		return writeAll(elements, BatchWriter::update, false);
+	}
+
+	/**
+	 * 複数のエンティティをまとめて削除します。<br>
+	 * テーブルごとにDELETE文を1つ生成し、{@link #setBatchSize(int)}件ずつJDBCのバッチ更新で実行します。<br>
+	 * トランザクション中でなければ、全てのエンティティを1つのトランザクションで削除します。
+	 * @param <E> データベースのテーブルを示す型
+	 * @param elements 削除するエンティティ
+	 * @return 削除した件数
+	 */
+	public <E extends BaseEntity> int deleteAll(Collection<E> elements) {
+		return writeAll(elements, BatchWriter::delete, true);
+	}
+
+	private <E extends BaseEntity> int writeAll(Collection<E> elements,
+			BiFunction<BatchWriter, List<E>, int[]> work, boolean delete) {
+		List<E> list = requireElements(elements);
+		if (list.isEmpty()) {
+			return 0;
+		}
+		int count = transaction(() -> {
+			try (Connection con = getConnection()) {
+				BatchWriter writer = new BatchWriter(con, batchSize, type, multiRowInsert, this::nextId);
+				return BatchWriter.sum(work.apply(writer, list));
+			} catch (SQLException e) {
+				throw new DBException(e);
+			}
+		});
+		afterWrite(list, delete);
+		return count;
+	}
+
+	private static <E extends BaseEntity> List<E> requireElements(Collection<E> elements) {
+		if (elements == null) {
+			throw new IllegalArgumentException("elements must not be null");
+		}
+		List<E> list = new ArrayList<>(elements);
+		if (list.contains(null)) {
+			throw new IllegalArgumentException("elements must not contain null");
+		}
+		return list;
+	}
+
+	/**
+	 * まとめて書き込んだエンティティを同一性マップ・キャッシュに反映します。
+	 */
+	private void afterWrite(List<? extends BaseEntity> elements, boolean delete) {
+		IdentityMap identityMap = getIdentityMap();
+		if (identityMap != null) {
+			elements.forEach(delete ? identityMap::remove : identityMap::put);
+		}
+		invalidateCaches(elements);
+	}
+
+	/**
+	 * 複数のエンティティの1:nリレーションを持つリストフィールドをまとめてロードします。<br>
+	 * 外部キーをIN句で指定して{@value RelationLoader#CHUNK_SIZE}件ずつ検索するため、
+	 * エンティティごとに{@link BaseEntity#loadHasMany(Class)}を呼び出すよりクエリの発行回数が少なくなります。
+	 * @param entities ロードするエンティティ(全て同じクラス)
+	 * @param clazz 1:nの関係になるクラス
+	 */
+	public void loadHasMany(List<? extends BaseEntity> entities, Class<? extends BaseEntity> clazz) {
+		if (entities == null) {
+			throw new IllegalArgumentException("entities must not be null");
+		}
+		if (clazz == null) {
+			throw new IllegalArgumentException("clazz must not be null");
+		}
+		RelationLoader.loadHasMany(this, entities, clazz);
+	}
+
+	/**
+	 * 複数のエンティティの1:1リレーションを持つフィールドをまとめてロードします。<br>
+	 * 取得方法に{@link jp.natsukishina.orm4j8.annotations.FetchType#LAZY}を指定したHasOneを後からロードする場合に使用します。
+	 * @param entities ロードするエンティティ(全て同じクラス)
+	 * @param clazz 1:1の関係になるクラス
+	 * @see #loadHasMany(List, Class)
+	 */
+	public void loadHasOne(List<? extends BaseEntity> entities, Class<? extends BaseEntity> clazz) {
+		if (entities == null) {
+			throw new IllegalArgumentException("entities must not be null");
+		}
+		if (clazz == null) {
+			throw new IllegalArgumentException("clazz must not be null");
+		}
+		RelationLoader.loadHasOne(this, entities, clazz);
+	}
+
+	@Deprecated
+	<E extends BaseEntity> Query<E> rawQuery(Class<E> clazz, String query) {
+		if (clazz == null) {
+			throw new IllegalArgumentException("class must not be null");
+		}
+
+		if(query == null || query.isEmpty()) {
+			throw new IllegalArgumentException("query must not be empty");
+		}
+
+		// 任意の行を更新し得るため、実行後に読み込み済みのエンティティ・検索結果を破棄する
+		// (実行前に破棄すると、実行までの間に他のスレッドが古い行をキャッシュし得る)
+		return Query.Builder.createRawQuery(this::getConnection, clazz, query, () -> {
+			IdentityMap identityMap = getIdentityMap();
+			if (identityMap != null) {
+				identityMap.clear();
+			}
+			EntityCache cache = getCache(clazz);
+			if (cache != null) {
+				afterCommit(cache::invalidateAll);
+			}
+			QueryCache queryCache = this.queryCache;
+			afterCommit(queryCache::invalidateAll);
+		});
+	}
+
+	/**
+	 * 呼び出し元スレッドでトランザクションを開始します<br>
+	 * コネクションを1つ取得してautoCommitプロパティをfalseにし、<br>
+	 * コミットまたはロールバックされるまで同じスレッドからの全ての操作でそのコネクションを使用します。<br>
+	 * 既にトランザクション中の場合は継続中のトランザクションを返します。<br>
+	 * 実際にトランザクションが開始されるタイミングはJDBCドライバに依存します。
+	 * @return 開始したトランザクション
+	 */
+	public Transaction beginTransaction() {
+		Transaction tx = getTransaction();
+		if (tx != null) {
+			return tx;
+		}
+		tx = new Transaction(openConnection(), this::unbindTransaction);
+		currentTransaction.set(tx);
+		return tx;
+	}
+
+	/**
+	 * 呼び出し元スレッドのトランザクションをコミットします
+	 */
+	public void commit() {
+		Transaction tx = getTransaction();
+		if (tx != null) {
+			tx.commit();
+		}
+	}
+
+	/**
+	 * 呼び出し元スレッドのトランザクションをロールバックします
+	 */
+	public void rollback() {
+		Transaction tx = getTransaction();
+		if (tx != null) {
+			tx.rollback();
+		}
+	}
+
+	/**
+	 * 処理をトランザクション内で実行します。<br>
+	 * 正常に終了した場合はコミットし、例外が発生した場合はロールバックします。<br>
+	 * 既にトランザクション中の場合は継続中のトランザクションに参加し、コミット・ロールバックは呼び出し元に委ねます。
+	 * @param <T> 処理結果の型
+	 * @param work 実行する処理
+	 * @return 処理結果
+	 */
+	public <T> T transaction(Supplier<T> work) {
+		if (work == null) {
+			throw new IllegalArgumentException("work must not be null");
+		}
+		if (getTransaction() != null) {
+			return work.get();
+		}
+		try (Transaction tx = beginTransaction()) {
+			T result = work.get();
+			tx.commit();
+			return result;
+		}
+	}
+
+	/**
+	 * 呼び出し元スレッドで同一性マップのセッションを開始します。<br>
+	 * closeされるまでの間、同じスレッドから読み込んだエンティティはクラス・主キーごとに1つのインスタンスにまとめられ、
+	 * 読み込み済みのエンティティの主キー検索はデータベースに問い合わせません。<br>
+	 * 既にセッション中の場合は継続中のセッションを返します。
+	 * @return 開始したセッション
+	 */
+	public Session beginSession() {
+		Session session = currentSession.get();
+		if (session != null) {
+			return session;
+		}
+		session = new Session(this::unbindSession);
+		currentSession.set(session);
+		return session;
+	}
+
+	private void unbindSession(Session session) {
+		if (currentSession.get() == session) {
+			currentSession.remove();
+		}
+	}
+
+	/**
+	 * 呼び出し元スレッドで使用する同一性マップを取得します。<br>
+	 * セッション中はセッションの、{@link #setIdentityMapInTransaction(boolean)}がtrueでトランザクション中はトランザクションの同一性マップを返します。
+	 * @return 同一性マップ。使用しない場合はnull
+	 */
+	IdentityMap getIdentityMap() {
+		Session session = currentSession.get();
+		if (session != null) {
+			return session.getIdentityMap();
+		}
+		if (identityMapInTransaction) {
+			Transaction tx = getTransaction();
+			if (tx != null) {
+				return tx.getIdentityMap();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * {@link Cacheable}を指定したクラスのキャッシュの統計情報を取得します。
+	 * @param clazz {@link Cacheable}を指定したクラス
+	 * @return 統計情報
+	 */
+	public CacheStats getCacheStats(Class<? extends BaseEntity> clazz) {
+		EntityCache cache = getCache(clazz);
+		if (cache == null) {
+			throw new IllegalArgumentException(clazz + " isn't annotated with @Cacheable");
+		}
+		return cache.stats();
+	}
+
+	/**
+	 * {@link Cacheable}を指定したクラスのキャッシュを破棄します。<br>
+	 * 他のアプリケーションからテーブルを更新した場合に使用してください。
+	 * @param clazz {@link Cacheable}を指定したクラス
+	 */
+	public void clearCache(Class<? extends BaseEntity> clazz) {
+		EntityCache cache = getCache(clazz);
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * @return {@link Cacheable}を指定したクラスのキャッシュ。指定していない場合はnull
+	 */
+	private EntityCache getCache(Class<?> clazz) {
+		if (clazz == null || !clazz.isAnnotationPresent(Cacheable.class)) {
+			return null;
+		}
+		return caches.computeIfAbsent(clazz, EntityCache::new);
+	}
+
+	/**
+	 * 書き込み済みのトランザクション中はコミットされていない値を読み込むため、キャッシュを使用しません。
+	 * @return 検索に使用するキャッシュ。使用しない場合はnull
+	 */
+	private EntityCache getReadableCache(Class<?> clazz) {
+		Transaction tx = getTransaction();
+		return tx != null && tx.isWritten() ? null : getCache(clazz);
+	}
+
+	/**
+	 * 書き込み済みのトランザクション中はコミットされていない値を読み込むため、キャッシュを使用しません。
+	 * @return 検索結果のキャッシュ。使用しない場合はnull
+	 */
+	private QueryCache getReadableQueryCache() {
+		Transaction tx = getTransaction();
+		return tx != null && tx.isWritten() ? null : queryCache;
+	}
+
+	/**
+	 * 更新したエンティティと、そのテーブルを参照する検索結果をキャッシュから破棄します。
+	 * トランザクション中はコミットされるまで破棄しません。
+	 */
+	private void invalidateCaches(Collection<? extends BaseEntity> elements) {
+		QueryCache queryCache = this.queryCache;
+		// クラス → 主キーの値
+		Map<Class<?>, List<Object>> keys = new LinkedHashMap<>();
+		for (BaseEntity element : elements) {
+			keys.computeIfAbsent(element.getClass(), c -> new ArrayList<>())
+					.add(IdentityMap.keyOf(EntityMetadata.of(element.getClass()), element));
+		}
+		keys.forEach((clazz, list) -> {
+			String tableName = EntityMetadata.of(clazz).getTableName();
+			afterCommit(() -> queryCache.invalidate(tableName));
+			EntityCache cache = getCache(clazz);
+			if (cache != null) {
+				afterCommit(list.contains(null) ? cache::invalidateAll : () -> list.forEach(cache::invalidate));
+			}
+		});
+	}
+
+	/**
+	 * トランザクション中であればコミット後に、それ以外はすぐに実行します。
+	 */
+	private void afterCommit(Runnable action) {
+		Transaction tx = getTransaction();
+		if (tx != null) {
+			tx.afterCommit(action);
+		} else {
+			action.run();
+		}
+	}
+
+	/**
+	 * 呼び出し元スレッドで継続中のトランザクションを取得します。
+	 * @return トランザクション。トランザクション中でなければnull
+	 */
+	Transaction getTransaction() {
+		Transaction tx = currentTransaction.get();
+		if (tx != null && !tx.isActive()) {
+			currentTransaction.remove();
+			return null;
+		}
+		return tx;
+	}
+
+	private void unbindTransaction(Transaction tx) {
+		if (currentTransaction.get() == tx) {
+			currentTransaction.remove();
+		}
+	}
+
+	/**
+	 * コネクションの取得元を破棄します。<br>
+	 * 内蔵のコネクションプールを使用している場合は保持しているコネクションを全て閉じます。<br>
+	 * レプリカが設定されている場合はレプリカのコネクション取得元も破棄します。
+	 */
+	@Override
+	public void close() {
+		connectionProvider.close();
+		ReplicaSet replicas = replicaSet;
+		if (replicas != null) {
+			replicas.close();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package jp.natsukishina.orm4j8;
+
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+
+/**
+ * 操作対象のデータベースを振り分けるインターフェース<br>
+ * {@link DB#configRouter(DatabaseRouter)}で設定し、{@link DB#route(Class, Object)}で使用します。
+ * @author 417.72KI
+ *
+ */
+@FunctionalInterface
+public interface DatabaseRouter {
+
+	/**
+	 * テーブルとシャードキーから操作対象のデータベースを決定します。
+	 * @param clazz 操作対象テーブルのクラス
+	 * @param shardKey シャードキー
+	 * @return 操作対象のデータベース
+	 */
+	Database route(Class<? extends BaseEntity> clazz, Object shardKey);
+
+	/**
+	 * エンティティから操作対象のデータベースを決定します。<br>
+	 * デフォルトでは主キーの値をシャードキーとして使用します。
+	 * @param element 操作対象のエンティティ
+	 * @return 操作対象のデータベース
+	 */
+	default Database route(BaseEntity element) {
+		return route(element.getClass(), DBUtil.getPrimaryValue(element));
+	}
+
+	/**
+	 * 振り分け先のデータベースを破棄します。<br>
+	 * {@link DB#configRouter(DatabaseRouter)}で設定している場合はJVMのシャットダウン時に呼び出されます。デフォルトでは何もしません。
+	 */
+	default void close() {
+	}
+}
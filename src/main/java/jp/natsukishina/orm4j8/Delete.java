@@ -1,12 +1,12 @@
 package jp.natsukishina.orm4j8;
 
-import java.lang.reflect.Field;
 import java.sql.Connection;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
 import jp.natsukishina.orm4j8.entity.BaseEntity;
 
 class Delete<E extends BaseEntity> extends AbstractQuery<E> {
@@ -20,41 +20,48 @@ class Delete<E extends BaseEntity> extends AbstractQuery<E> {
 		this.element = element;
 	}
 
+	@SuppressWarnings("unchecked")
+	Delete(Supplier<Connection> connectionSupplier, E element) {
+		super(connectionSupplier, (Class<E>) element.getClass());
+		this.element = element;
+	}
+
 	@Override
 	protected String buildQuery() {
+		EntityMetadata metadata = EntityMetadata.of(clazz);
 		StringBuilder sql = new StringBuilder("DELETE FROM ");
-		sql.append(DBUtil.getTableName4Query(clazz));
+		sql.append(metadata.getQuotedTableName());
 
 		// where
-		if (DBUtil.hasPrimaryField(clazz)) {
-			List<Field> primaryFields = DBUtil.getPrimaryFields(clazz);
-			IntStream.range(0, primaryFields.size()).forEach(idx -> {
-				Field primaryField = primaryFields.get(idx);
+		if (metadata.hasPrimaryColumn()) {
+			List<ColumnMetadata> primaryColumns = metadata.getPrimaryColumns();
+			IntStream.range(0, primaryColumns.size()).forEach(idx -> {
+				ColumnMetadata primaryColumn = primaryColumns.get(idx);
 				if (idx == 0) {
 					sql.append(" WHERE ");
 				} else {
 					sql.append(" AND ");
 				}
-				sql.append(DBUtil.getColumn4Query(clazz, primaryField));
+				sql.append(primaryColumn.quotedName);
 				sql.append(" = ?");
-				valueList.add(DBUtil.getFieldValue(primaryField, element));
+				valueList.add(primaryColumn.accessor.get(element));
 			});
 		} else {
-			List<Field> fieldList = DBUtil.getFieldList(clazz);
-			IntStream.range(0, fieldList.size()).forEach(idx -> {
-				Field field = fieldList.get(idx);
+			List<ColumnMetadata> columns = metadata.getColumns();
+			IntStream.range(0, columns.size()).forEach(idx -> {
+				ColumnMetadata column = columns.get(idx);
 				if (idx == 0) {
 					sql.append(" WHERE ");
 				} else {
 					sql.append(" AND ");
 				}
-				sql.append(DBUtil.getColumn4Query(clazz, field));
-				if (DBUtil.getFieldValue(field, element) == null) {
+				sql.append(column.quotedName);
+				if (column.accessor.get(element) == null) {
 					sql.append(" is null");
 				} else {
 					sql.append(" = ?");
 				}
-				valueList.add(DBUtil.getFieldValue(field, element));
+				valueList.add(column.accessor.get(element));
 			});
 		}
 
@@ -68,12 +75,7 @@ class Delete<E extends BaseEntity> extends AbstractQuery<E> {
 
 	@Override
 	public boolean result() {
-		try {
-			return getStatement().getUpdateCount() == 1;
-		} catch (SQLException e) {
-			e.printStackTrace();
-			return false;
-		}
+		return getUpdateCount() == 1;
 	}
 
 }
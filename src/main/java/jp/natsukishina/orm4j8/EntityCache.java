@@ -0,0 +1,172 @@
+package jp.natsukishina.orm4j8;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+import jp.natsukishina.orm4j8.annotations.Cacheable;
+
+/**
+ * {@link Cacheable}を指定したクラスの主キー検索の結果を保持するクラス<br>
+ * エンティティは変更可能なため、インスタンスではなくカラムの値を保持し、取得のたびに新しいインスタンスを生成します。<br>
+ * 最大数を超えた場合は最後に参照されてから最も時間が経ったものから破棄します(LRU)。
+ * @author 417.72KI
+ *
+ */
+final class EntityCache {
+	private final EntityMetadata metadata;
+	private final int maxSize;
+	/** 有効期限(ナノ秒)。期限を設けない場合は0 */
+	private final long expireNanos;
+	/** 主キー → カラムの値。参照順 */
+	private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+	/** 破棄した回数 */
+	private long invalidationCount = 0;
+
+	/**
+	 * @param clazz {@link Cacheable}を指定したクラス
+	 */
+	EntityCache(Class<?> clazz) {
+		Cacheable cacheable = clazz.getAnnotation(Cacheable.class);
+		if (cacheable == null) {
+			throw new IllegalArgumentException(clazz.getName() + " isn't annotated with @Cacheable");
+		}
+		if (cacheable.maxSize() <= 0) {
+			throw new IllegalArgumentException("maxSize of @Cacheable must be positive: " + clazz.getName());
+		}
+		this.metadata = EntityMetadata.of(clazz);
+		this.maxSize = cacheable.maxSize();
+		this.expireNanos = cacheable.expireSeconds() > 0 ? TimeUnit.SECONDS.toNanos(cacheable.expireSeconds()) : 0;
+	}
+
+	/**
+	 * @param key 主キーの値
+	 * @return キャッシュから生成したエンティティ。無い場合はnull
+	 */
+	synchronized Object get(Object key) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.isExpired(System.nanoTime())) {
+			entries.remove(key);
+			evictionCount++;
+			entry = null;
+		}
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.toEntity();
+	}
+
+	/**
+	 * データベースから読み込む前に取得し、{@link #put(Object, Object, long)}に渡してください。
+	 * @return 現在までに破棄した回数
+	 */
+	synchronized long stamp() {
+		return invalidationCount;
+	}
+
+	/**
+	 * エンティティのカラムの値を保持します。<br>
+	 * 読み込みの間に破棄された場合は、読み込んだ値が古い可能性があるため保持しません。
+	 * @param key 主キーの値
+	 * @param entity エンティティ
+	 * @param stamp 読み込む前に{@link #stamp()}で取得した値
+	 */
+	synchronized void put(Object key, Object entity, long stamp) {
+		if (stamp != invalidationCount) {
+			return;
+		}
+		long now = System.nanoTime();
+		entries.put(key, new Entry(entity, expireNanos == 0 ? 0 : now + expireNanos));
+		if (entries.size() > maxSize) {
+			// 期限切れのものを優先して破棄する
+			for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+				if (it.next().isExpired(now)) {
+					it.remove();
+					evictionCount++;
+				}
+			}
+			for (Iterator<Entry> it = entries.values().iterator(); entries.size() > maxSize;) {
+				it.next();
+				it.remove();
+				evictionCount++;
+			}
+		}
+	}
+
+	/**
+	 * @param key 破棄するエンティティの主キーの値
+	 */
+	synchronized void invalidate(Object key) {
+		entries.remove(key);
+		invalidationCount++;
+	}
+
+	/**
+	 * 保持している全てのエンティティを破棄します。
+	 */
+	synchronized void invalidateAll() {
+		entries.clear();
+		invalidationCount++;
+	}
+
+	/**
+	 * @return 統計情報
+	 */
+	synchronized CacheStats stats() {
+		return new CacheStats(hitCount, missCount, evictionCount, entries.size());
+	}
+
+	/**
+	 * 1件のエンティティのカラムの値
+	 */
+	private final class Entry {
+		private final Object[] values;
+		/** 期限を設けない場合は0 */
+		private final long expiresAt;
+
+		private Entry(Object entity, long expiresAt) {
+			List<ColumnMetadata> columns = metadata.getColumns();
+			this.values = new Object[columns.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = copy(columns.get(i).accessor.get(entity));
+			}
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean isExpired(long now) {
+			return expiresAt != 0 && now - expiresAt >= 0;
+		}
+
+		private Object toEntity() {
+			Object entity = metadata.newInstance();
+			List<ColumnMetadata> columns = metadata.getColumns();
+			for (int i = 0; i < values.length; i++) {
+				columns.get(i).accessor.set(entity, copy(values[i]));
+			}
+			return entity;
+		}
+	}
+
+	/**
+	 * @return 変更可能な値の場合は複製したもの
+	 */
+	private static Object copy(Object value) {
+		return value instanceof Date ? ((Date) value).clone() : value;
+	}
+
+	/**
+	 * @param clazz エンティティのクラス
+	 * @return キャッシュの対象の場合はtrue
+	 */
+	static boolean isCacheable(Class<?> clazz) {
+		return clazz.isAnnotationPresent(Cacheable.class);
+	}
+}
@@ -0,0 +1,140 @@
+package jp.natsukishina.orm4j8;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * エンティティを生成するクラス<br>
+ * 使用するコンストラクタはクラスごとに1度だけ決定し、引数のデフォルト値も束縛済みのMethodHandleとして保持します。<br>
+ * コンストラクタは以下の優先順位で選択します。
+ * <ol>
+ * <li>引数無しのコンストラクタ</li>
+ * <li>カラムの宣言順と同じ型の引数を持つコンストラクタ</li>
+ * <li>最初に宣言されたコンストラクタ</li>
+ * </ol>
+ * @author 417.72KI
+ *
+ */
+final class EntityInstantiator {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private final Class<?> entityClass;
+	/** ()Object */
+	private final MethodHandle constructor;
+	private final DBException error;
+
+	private EntityInstantiator(Class<?> entityClass, MethodHandle constructor, DBException error) {
+		this.entityClass = entityClass;
+		this.constructor = constructor;
+		this.error = error;
+	}
+
+	/**
+	 * @param entityClass エンティティクラス
+	 * @param columns カラム一覧(宣言順)
+	 * @return エンティティを生成するインスタンス
+	 */
+	static EntityInstantiator of(Class<?> entityClass, List<ColumnMetadata> columns) {
+		if (Modifier.isAbstract(entityClass.getModifiers()) || entityClass.getDeclaredConstructors().length == 0) {
+			return new EntityInstantiator(entityClass, null,
+					new DBException(entityClass.getName() + " cannot be instantiated"));
+		}
+		try {
+			Constructor<?> c = selectConstructor(entityClass, columns);
+			c.setAccessible(true);
+			MethodHandle handle = LOOKUP.unreflectConstructor(c);
+			Class<?>[] parameterTypes = c.getParameterTypes();
+			if (parameterTypes.length > 0) {
+				Object[] defaults = Arrays.stream(parameterTypes).map(EntityInstantiator::defaultValue).toArray();
+				handle = MethodHandles.insertArguments(handle, 0, defaults);
+			}
+			return new EntityInstantiator(entityClass, handle.asType(MethodType.methodType(Object.class)), null);
+		} catch (IllegalAccessException | RuntimeException e) {
+			return new EntityInstantiator(entityClass, null, new DBException(e));
+		}
+	}
+
+	/**
+	 * @param mapper 生成されたマッパー
+	 * @return マッパーでエンティティを生成するインスタンス
+	 */
+	static EntityInstantiator of(EntityMapper<?> mapper) {
+		try {
+			MethodHandle handle = LOOKUP
+					.findVirtual(EntityMapper.class, "newInstance",
+							MethodType.methodType(BaseEntity.class))
+					.bindTo(mapper);
+			return new EntityInstantiator(mapper.entityClass(), handle.asType(MethodType.methodType(Object.class)),
+					null);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new DBException(e);
+		}
+	}
+
+	private static Constructor<?> selectConstructor(Class<?> entityClass, List<ColumnMetadata> columns) {
+		Constructor<?>[] constructors = entityClass.getDeclaredConstructors();
+		Class<?>[] columnTypes = columns.stream().map(c -> c.type).toArray(Class<?>[]::new);
+		Constructor<?> canonical = null;
+		for (Constructor<?> c : constructors) {
+			if (c.getParameterCount() == 0) {
+				return c;
+			}
+			if (canonical == null && Arrays.equals(c.getParameterTypes(), columnTypes)) {
+				canonical = c;
+			}
+		}
+		return canonical != null ? canonical : constructors[0];
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (!type.isPrimitive()) {
+			return null;
+		} else if (type == boolean.class) {
+			return false;
+		} else if (type == char.class) {
+			return '\0';
+		} else if (type == byte.class) {
+			return (byte) 0;
+		} else if (type == short.class) {
+			return (short) 0;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == float.class) {
+			return 0f;
+		} else {
+			return 0d;
+		}
+	}
+
+	/**
+	 * エンティティを生成します。<br>
+	 * 引数を持つコンストラクタの場合、引数にはnullまたはプリミティブ型のデフォルト値を渡します。
+	 * @return 生成したエンティティ
+	 */
+	Object newInstance() {
+		if (error != null) {
+			throw new DBException(error.getMessage(), error);
+		}
+		try {
+			return constructor.invokeExact();
+		} catch (DBException e) {
+			throw e;
+		} catch (Throwable e) {
+			if (e instanceof Error) {
+				throw (Error) e;
+			}
+			throw new DBException("failed to instantiate " + entityClass.getName(), e);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package jp.natsukishina.orm4j8;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+
+/**
+ * エンティティとテーブルの対応付けを行うインターフェース<br>
+ * {@link jp.natsukishina.orm4j8.processor.EntityMapperProcessor}がコンパイル時にエンティティごとに生成します。<br>
+ * 生成されたクラスが存在する場合、各クエリはリフレクションの代わりにこのインターフェースを使用してエンティティを読み書きします。
+ * @author 417.72KI
+ *
+ * @param <E> データベースのテーブルを示す型
+ */
+public interface EntityMapper<E extends BaseEntity> {
+	/** 生成されるクラス名の接尾辞 */
+	String SUFFIX = "_Mapper";
+
+	/**
+	 * @return 対応付けるエンティティのクラス
+	 */
+	Class<E> entityClass();
+
+	/**
+	 * @return Columnアノテーションの値(宣言順)
+	 */
+	String[] columnNames();
+
+	/**
+	 * エンティティを生成します。
+	 * @return 生成したエンティティ
+	 */
+	E newInstance();
+
+	/**
+	 * カラムの値を取得します。
+	 * @param entity 取得元のエンティティ
+	 * @param index {@link #columnNames()}のインデックス
+	 * @return カラムの値
+	 */
+	Object getValue(E entity, int index);
+
+	/**
+	 * カラムの値を設定します。
+	 * @param entity 設定先のエンティティ
+	 * @param index {@link #columnNames()}のインデックス
+	 * @param value 設定する値
+	 */
+	void setValue(E entity, int index, Object value);
+
+	/**
+	 * 検索結果の現在行の値を全てのカラムに設定します。<br>
+	 * カラムは{@link #columnNames()}の順に、offsetの次の列から並んでいるものとして列番号で読み込みます。<br>
+	 * HasOne・HasManyアノテーションの付いたフィールドは対象外です。
+	 * @param rs 検索結果
+	 * @param offset 先頭カラムの直前の列番号
+	 * @param entity 設定先のエンティティ
+	 * @throws SQLException 値の読み込みに失敗した場合
+	 */
+	void readRow(ResultSet rs, int offset, E entity) throws SQLException;
+}
@@ -0,0 +1,344 @@
+package jp.natsukishina.orm4j8;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.slf4j.LoggerFactory;
+
+import jp.natsukishina.orm4j8.annotations.Column;
+import jp.natsukishina.orm4j8.annotations.HasMany;
+import jp.natsukishina.orm4j8.annotations.HasOne;
+import jp.natsukishina.orm4j8.annotations.UseTable;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * エンティティクラスのテーブル定義<br>
+ * クラスごとに1度だけリフレクションで解析し、以降は解析結果を使い回します。
+ * @author 417.72KI
+ *
+ */
+final class EntityMetadata {
+	private static final ClassValue<EntityMetadata> CACHE = new ClassValue<EntityMetadata>() {
+		@Override
+		protected EntityMetadata computeValue(Class<?> type) {
+			return new EntityMetadata(type);
+		}
+	};
+
+	private final Class<?> entityClass;
+	private final boolean hasTableName;
+	private final String tableName;
+	private final String quotedTableName;
+	private final List<ColumnMetadata> columns;
+	private final List<ColumnMetadata> primaryColumns;
+	private final List<ColumnMetadata> nonPrimaryColumns;
+	private final ColumnMetadata generatedColumn;
+	private final Map<String, ColumnMetadata> columnsByName;
+	private final Map<String, ColumnMetadata> columnsByQuery;
+	private final String[] quotedColumns;
+	private final String selectList;
+	private final List<RelationMetadata<HasOne>> hasOneRelations;
+	private final List<RelationMetadata<HasMany>> hasManyRelations;
+	private final Map<Field, FieldAccessor> accessors;
+	private final EntityMapper<?> mapper;
+	private final EntityInstantiator instantiator;
+
+	private EntityMetadata(Class<?> entityClass) {
+		this.entityClass = entityClass;
+		UseTable table = entityClass.getDeclaredAnnotation(UseTable.class);
+		this.hasTableName = table == null || table.value() != null || !table.value().isEmpty();
+		this.tableName = table == null ? null : table.value();
+		this.quotedTableName = table == null ? null : "`" + tableName + "`";
+
+		this.mapper = findMapper(entityClass);
+		List<String> mapperColumns = mapper == null ? Collections.emptyList() : Arrays.asList(mapper.columnNames());
+
+		List<ColumnMetadata> columns = new ArrayList<>();
+		List<RelationMetadata<HasOne>> hasOneRelations = new ArrayList<>();
+		List<RelationMetadata<HasMany>> hasManyRelations = new ArrayList<>();
+		for (Field field : entityClass.getDeclaredFields()) {
+			Column column = field.getDeclaredAnnotation(Column.class);
+			if (column != null) {
+				FieldAccessor accessor = mapper == null ? FieldAccessor.of(field)
+						: FieldAccessor.of(field, mapper, mapperColumns.indexOf(column.value()));
+				columns.add(new ColumnMetadata(field, column, "`" + tableName + "`.`" + column.value() + "`", accessor));
+			}
+			HasOne hasOne = field.getDeclaredAnnotation(HasOne.class);
+			if (hasOne != null) {
+				hasOneRelations.add(new RelationMetadata<>(field, hasOne, hasOne.targetClass(), hasOne.foreignKey(),
+						hasOne.targetColumn()));
+			}
+			HasMany hasMany = field.getDeclaredAnnotation(HasMany.class);
+			if (hasMany != null) {
+				hasManyRelations.add(new RelationMetadata<>(field, hasMany, hasMany.targetClass(), hasMany.foreignKey(),
+						hasMany.targetColumn()));
+			}
+		}
+		if (mapper != null) {
+			// SELECT句の並びをマッパーが読み込む順序に合わせる
+			columns.sort(Comparator.comparingInt(c -> mapperColumns.indexOf(c.name)));
+		}
+		this.columns = Collections.unmodifiableList(columns);
+		this.primaryColumns = Collections
+				.unmodifiableList(columns.stream().filter(c -> c.primary).collect(Collectors.toList()));
+		this.nonPrimaryColumns = Collections
+				.unmodifiableList(columns.stream().filter(c -> !c.primary).collect(Collectors.toList()));
+		List<ColumnMetadata> generatedColumns = columns.stream().filter(c -> c.generated).collect(Collectors.toList());
+		if (generatedColumns.size() > 1) {
+			throw new DBException(entityClass.getName() + " has more than one generated column");
+		}
+		this.generatedColumn = generatedColumns.isEmpty() ? null : generatedColumns.get(0);
+		if (generatedColumn != null && !DBUtil.isInt(generatedColumn.type) && !DBUtil.isLong(generatedColumn.type)) {
+			throw new DBException("Generated Field [" + generatedColumn.field.getName() + "] must be int or long");
+		}
+		for (ColumnMetadata column : primaryColumns) {
+			if (column.generator != null && (column.generated
+					|| (!DBUtil.isInt(column.type) && !DBUtil.isLong(column.type)))) {
+				throw new DBException("Field [" + column.field.getName()
+						+ "] with generator must be int or long and must not be generated by the database");
+			}
+		}
+		Map<String, ColumnMetadata> columnsByName = new HashMap<>();
+		Map<String, ColumnMetadata> columnsByQuery = new HashMap<>();
+		columns.forEach(c -> {
+			columnsByName.putIfAbsent(c.name, c);
+			columnsByQuery.putIfAbsent(c.quotedName, c);
+		});
+		this.columnsByName = Collections.unmodifiableMap(columnsByName);
+		this.columnsByQuery = Collections.unmodifiableMap(columnsByQuery);
+		this.quotedColumns = columns.stream().map(c -> c.quotedName).toArray(String[]::new);
+		this.selectList = StringUtils.join(quotedColumns, ", ");
+		this.hasOneRelations = Collections.unmodifiableList(hasOneRelations);
+		this.hasManyRelations = Collections.unmodifiableList(hasManyRelations);
+		Map<Field, FieldAccessor> accessors = new HashMap<>();
+		columns.forEach(c -> accessors.put(c.field, c.accessor));
+		hasOneRelations.forEach(r -> accessors.put(r.field, r.accessor));
+		hasManyRelations.forEach(r -> accessors.put(r.field, r.accessor));
+		this.accessors = Collections.unmodifiableMap(accessors);
+		this.instantiator = mapper == null ? EntityInstantiator.of(entityClass, columns) : EntityInstantiator.of(mapper);
+	}
+
+	/**
+	 * コンパイル時に生成されたマッパーを探します。<br>
+	 * 生成後にエンティティのカラムが変更されている場合は使用しません。
+	 * @param entityClass エンティティクラス
+	 * @return マッパー。存在しない場合はnull
+	 */
+	private static EntityMapper<?> findMapper(Class<?> entityClass) {
+		String mapperName = entityClass.getName().replace('$', '_') + EntityMapper.SUFFIX;
+		EntityMapper<?> mapper;
+		try {
+			Class<?> mapperClass = Class.forName(mapperName, true, entityClass.getClassLoader());
+			if (!EntityMapper.class.isAssignableFrom(mapperClass)) {
+				return null;
+			}
+			mapper = (EntityMapper<?>) mapperClass.getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			LoggerFactory.getLogger(EntityMetadata.class).warn("failed to load " + mapperName, e);
+			return null;
+		}
+
+		List<String> expected = Arrays.stream(entityClass.getDeclaredFields())
+				.map(f -> f.getDeclaredAnnotation(Column.class)).filter(Objects::nonNull).map(Column::value)
+				.collect(Collectors.toList());
+		if (!mapper.entityClass().equals(entityClass)
+				|| !new HashSet<>(Arrays.asList(mapper.columnNames())).equals(new HashSet<>(expected))
+				|| mapper.columnNames().length != expected.size()) {
+			LoggerFactory.getLogger(EntityMetadata.class).warn(mapperName + " is out of date. Please recompile "
+					+ entityClass.getName());
+			return null;
+		}
+		return mapper;
+	}
+
+	/**
+	 * クラスのテーブル定義を取得します。
+	 * @param clazz エンティティクラス
+	 * @return テーブル定義
+	 */
+	static EntityMetadata of(Class<?> clazz) {
+		return CACHE.get(clazz);
+	}
+
+	Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	boolean hasTableName() {
+		return hasTableName;
+	}
+
+	/**
+	 * @return テーブル名。UseTableアノテーションが無い場合はnull
+	 */
+	String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * @return `table`形式のテーブル名。UseTableアノテーションが無い場合はnull
+	 */
+	String getQuotedTableName() {
+		return quotedTableName;
+	}
+
+	/**
+	 * @return 宣言順のカラム一覧
+	 */
+	List<ColumnMetadata> getColumns() {
+		return columns;
+	}
+
+	List<ColumnMetadata> getPrimaryColumns() {
+		return primaryColumns;
+	}
+
+	List<ColumnMetadata> getNonPrimaryColumns() {
+		return nonPrimaryColumns;
+	}
+
+	/**
+	 * @return 主キーが1つ以上あればtrue
+	 */
+	boolean hasPrimaryColumn() {
+		return !primaryColumns.isEmpty();
+	}
+
+	/**
+	 * @return 最初の主キー。主キーが無い場合はnull
+	 */
+	ColumnMetadata getPrimaryColumn() {
+		return primaryColumns.isEmpty() ? null : primaryColumns.get(0);
+	}
+
+	/**
+	 * @return データベースで採番される主キー。無い場合はnull
+	 */
+	ColumnMetadata getGeneratedColumn() {
+		return generatedColumn;
+	}
+
+	/**
+	 * @param name カラム名
+	 * @return カラム定義。存在しない場合はnull
+	 */
+	ColumnMetadata getColumn(String name) {
+		return columnsByName.get(name);
+	}
+
+	/**
+	 * @param quotedName `table`.`column`形式のカラム名
+	 * @return カラム定義。存在しない場合はnull
+	 */
+	ColumnMetadata getColumn4Query(String quotedName) {
+		return columnsByQuery.get(quotedName);
+	}
+
+	/**
+	 * @return `table`.`column`形式のカラム名の配列(宣言順)
+	 */
+	String[] getQuotedColumns() {
+		return quotedColumns.clone();
+	}
+
+	/**
+	 * @return SELECT句に使用する`table`.`column`をカンマで繋いだ文字列
+	 */
+	String getSelectList() {
+		return selectList;
+	}
+
+	List<RelationMetadata<HasOne>> getHasOneRelations() {
+		return hasOneRelations;
+	}
+
+	List<RelationMetadata<HasMany>> getHasManyRelations() {
+		return hasManyRelations;
+	}
+
+	/**
+	 * @return コンパイル時に生成されたマッパー。存在しない場合はnull
+	 */
+	EntityMapper<?> getMapper() {
+		return mapper;
+	}
+
+	/**
+	 * エンティティを生成します。
+	 * @return 生成したエンティティ
+	 */
+	Object newInstance() {
+		return instantiator.newInstance();
+	}
+
+	/**
+	 * Column・HasOne・HasManyアノテーションの付いたフィールドの読み書きを行うインスタンスを取得します。
+	 * @param field フィールド
+	 * @return フィールドの読み書きを行うインスタンス。アノテーションの無いフィールドの場合はnull
+	 */
+	FieldAccessor getAccessor(Field field) {
+		return accessors.get(field);
+	}
+
+	/**
+	 * Columnアノテーションの付いたフィールドの定義
+	 */
+	static final class ColumnMetadata {
+		final Field field;
+		final String name;
+		final String quotedName;
+		final boolean primary;
+		/** データベースで採番される主キーの場合はtrue */
+		final boolean generated;
+		/** 主キーの採番方法の名前。指定されていない場合はnull */
+		final String generator;
+		final Class<?> type;
+		final FieldAccessor accessor;
+
+		private ColumnMetadata(Field field, Column column, String quotedName, FieldAccessor accessor) {
+			this.field = field;
+			this.accessor = accessor;
+			this.name = column.value();
+			this.quotedName = quotedName;
+			this.primary = column.primary();
+			this.generated = column.primary() && column.generated();
+			this.generator = column.primary() && !column.generator().isEmpty() ? column.generator() : null;
+			this.type = field.getType();
+		}
+	}
+
+	/**
+	 * HasOne・HasManyアノテーションの付いたフィールドの定義
+	 * @param <A> リレーションのアノテーション
+	 */
+	static final class RelationMetadata<A> {
+		final Field field;
+		final A annotation;
+		final Class<? extends BaseEntity> targetClass;
+		final String foreignKey;
+		final String targetColumn;
+		final FieldAccessor accessor;
+
+		private RelationMetadata(Field field, A annotation, Class<? extends BaseEntity> targetClass,
+				String foreignKey, String targetColumn) {
+			this.field = field;
+			this.accessor = FieldAccessor.of(field);
+			this.annotation = annotation;
+			this.targetClass = targetClass;
+			this.foreignKey = foreignKey;
+			this.targetColumn = targetColumn;
+		}
+	}
+}
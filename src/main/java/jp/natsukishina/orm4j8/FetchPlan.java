@@ -0,0 +1,236 @@
+package jp.natsukishina.orm4j8;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import jp.natsukishina.orm4j8.EntityMetadata.RelationMetadata;
+import jp.natsukishina.orm4j8.annotations.FetchType;
+import jp.natsukishina.orm4j8.annotations.HasOne;
+
+/**
+ * 検索対象テーブルからHasOneを辿った結合先と、その取得方法をまとめたクラス<br>
+ * HasOneは検索対象テーブルから{@link #DEFAULT_MAX_DEPTH}段(クエリごとに変更可)まで辿り、
+ * 経路上に既にあるクラスへのHasOne(循環参照)は辿りません。<br>
+ * 結合先のテーブルは最初に現れたものはテーブル名のまま、2つ目以降は「テーブル名_連番」の別名で結合するため、
+ * 検索条件・ソートで結合先のカラムを指定した場合は最初に現れたテーブルを参照します。
+ * @author 417.72KI
+ *
+ */
+final class FetchPlan {
+	/** HasOneを辿る段数のデフォルト値 */
+	static final int DEFAULT_MAX_DEPTH = 3;
+
+	private static final ClassValue<FetchPlan> CACHE = new ClassValue<FetchPlan>() {
+		@Override
+		protected FetchPlan computeValue(Class<?> type) {
+			return new FetchPlan(type, Collections.emptyMap(), DEFAULT_MAX_DEPTH, Collections.emptySet(), false);
+		}
+	};
+
+	private final Map<Class<?>, FetchType> fetchTypes;
+	private final int maxDepth;
+	private final boolean joinSelects;
+	private final Map<String, Integer> tableCount = new HashMap<>();
+	private final Node root;
+	/** 全ての結合先(深さ優先) */
+	private final List<Node> nodes = new ArrayList<>();
+	private final String selectList;
+	private final RowReader rowReader;
+
+	private FetchPlan(Class<?> clazz, Map<Class<?>, FetchType> fetchTypes, int maxDepth, Set<Class<?>> ancestors,
+			boolean joinSelects) {
+		this.fetchTypes = fetchTypes;
+		this.maxDepth = maxDepth;
+		this.joinSelects = joinSelects;
+		EntityMetadata metadata = EntityMetadata.of(clazz);
+		tableCount.put(metadata.getTableName(), 1);
+		Set<Class<?>> path = new HashSet<>(ancestors);
+		path.add(clazz);
+		this.root = new Node(metadata, null, null, FetchType.JOIN, metadata.getQuotedTableName(), 0);
+		addChildren(root, path);
+		this.selectList = joinedNodes().stream().map(n -> n.selectList).collect(Collectors.joining(", "));
+		this.rowReader = RowReader.of(this);
+	}
+
+	/**
+	 * @param clazz 検索対象テーブルのクラス
+	 * @return アノテーションの設定に従った取得方法
+	 */
+	static FetchPlan of(Class<?> clazz) {
+		return CACHE.get(clazz);
+	}
+
+	/**
+	 * @param clazz 検索対象テーブルのクラス
+	 * @param fetchTypes 結合先のクラスごとの取得方法(アノテーションの設定より優先する)
+	 * @param maxDepth HasOneを辿る段数
+	 * @param ancestors 呼び出し元のクエリで既に辿ったクラス
+	 * @param joinSelects SELECTを指定した結合先もJOINで取得する場合はtrue
+	 * @return 取得方法
+	 */
+	static FetchPlan of(Class<?> clazz, Map<Class<?>, FetchType> fetchTypes, int maxDepth, Set<Class<?>> ancestors,
+			boolean joinSelects) {
+		if (fetchTypes.isEmpty() && maxDepth == DEFAULT_MAX_DEPTH && ancestors.isEmpty() && !joinSelects) {
+			return of(clazz);
+		}
+		return new FetchPlan(clazz, fetchTypes, maxDepth, ancestors, joinSelects);
+	}
+
+	private void addChildren(Node parent, Set<Class<?>> path) {
+		if (parent.depth >= maxDepth) {
+			return;
+		}
+		for (RelationMetadata<HasOne> relation : parent.metadata.getHasOneRelations()) {
+			if (path.contains(relation.targetClass)) {
+				continue;
+			}
+			FetchType fetchType = fetchTypes.getOrDefault(relation.targetClass, relation.annotation.fetch());
+			if (fetchType == FetchType.SELECT && joinSelects) {
+				fetchType = FetchType.JOIN;
+			}
+			EntityMetadata target = EntityMetadata.of(relation.targetClass);
+			int count = tableCount.merge(target.getTableName(), 1, Integer::sum);
+			String alias = count == 1 ? target.getQuotedTableName() : "`" + target.getTableName() + "_" + count + "`";
+			Node node = new Node(target, parent, relation, fetchType, alias, parent.depth + 1);
+			parent.children.add(node);
+			nodes.add(node);
+			path.add(relation.targetClass);
+			addChildren(node, path);
+			path.remove(relation.targetClass);
+		}
+	}
+
+	/**
+	 * @return 検索対象テーブル
+	 */
+	Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return JOINで取得するカラムのSELECT句
+	 */
+	String getSelectList() {
+		return selectList;
+	}
+
+	/**
+	 * @return 検索結果を読み込むインスタンス
+	 */
+	RowReader getRowReader() {
+		return rowReader;
+	}
+
+	/**
+	 * @return HasOneを辿る段数
+	 */
+	int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * 結合先をFROM句に追加します。
+	 * @param fromClause FROM句
+	 * @param all 検索条件・ソートのためにJOIN以外の結合先も結合する場合はtrue
+	 */
+	void appendJoins(StringBuilder fromClause, boolean all) {
+		for (Node node : all ? nodes : joinedNodes()) {
+			if (node == root) {
+				continue;
+			}
+			fromClause.append(" LEFT OUTER JOIN ");
+			fromClause.append(node.metadata.getQuotedTableName());
+			if (!node.alias.equals(node.metadata.getQuotedTableName())) {
+				fromClause.append(" AS ");
+				fromClause.append(node.alias);
+			}
+			fromClause.append(" ON ");
+			fromClause.append(node.parent.alias);
+			fromClause.append(".`");
+			fromClause.append(node.relation.targetColumn);
+			fromClause.append("`=");
+			fromClause.append(node.alias);
+			fromClause.append(".`");
+			fromClause.append(node.relation.foreignKey);
+			fromClause.append("`");
+		}
+	}
+
+	/**
+	 * @return 検索対象テーブルと、JOINのみで辿れる結合先
+	 */
+	private List<Node> joinedNodes() {
+		List<Node> joined = new ArrayList<>();
+		joined.add(root);
+		nodes.stream().filter(Node::isJoined).forEach(joined::add);
+		return joined;
+	}
+
+	/**
+	 * @return 検索後に別のクエリで取得する結合先
+	 */
+	List<Node> getSecondaryNodes() {
+		return nodes.stream().filter(n -> n.fetchType == FetchType.SELECT && n.parent.isJoined())
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * HasOneで辿った1つのテーブル
+	 */
+	static final class Node {
+		final EntityMetadata metadata;
+		/** 検索対象テーブルの場合はnull */
+		final Node parent;
+		/** 検索対象テーブルの場合はnull */
+		final RelationMetadata<HasOne> relation;
+		final FetchType fetchType;
+		/** `別名` */
+		final String alias;
+		/** 検索対象テーブルは0 */
+		final int depth;
+		final List<Node> children = new ArrayList<>();
+		final String selectList;
+
+		private Node(EntityMetadata metadata, Node parent, RelationMetadata<HasOne> relation, FetchType fetchType,
+				String alias, int depth) {
+			this.metadata = metadata;
+			this.parent = parent;
+			this.relation = relation;
+			this.fetchType = fetchType;
+			this.alias = alias;
+			this.depth = depth;
+			this.selectList = alias.equals(metadata.getQuotedTableName()) ? metadata.getSelectList()
+					: metadata.getColumns().stream().map(c -> alias + ".`" + c.name + "`")
+							.collect(Collectors.joining(", "));
+		}
+
+		/**
+		 * @return 検索対象テーブルからJOINのみで辿れる場合はtrue
+		 */
+		boolean isJoined() {
+			return parent == null || (fetchType == FetchType.JOIN && parent.isJoined());
+		}
+
+		/**
+		 * @return 検索対象テーブルからこのテーブルまでの経路上のクラス
+		 */
+		Set<Class<?>> path() {
+			Set<Class<?>> path = parent == null ? new HashSet<>() : parent.path();
+			path.add(metadata.getEntityClass());
+			return path;
+		}
+
+		/**
+		 * @return JOINで結合する子
+		 */
+		List<Node> joinedChildren() {
+			return children.stream().filter(n -> n.fetchType == FetchType.JOIN).collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package jp.natsukishina.orm4j8;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * フィールドの読み書きを行うクラス<br>
+ * フィールドごとに1度だけMethodHandleを生成し、以降は行ごとのsetAccessibleやField.get/setを行いません。<br>
+ * 生成されたマッパーが存在する場合はリフレクションを使用せず、マッパーを介して読み書きします。<br>
+ * プリミティブ型のフィールドはボクシングせずに読み書きできます。
+ * @author 417.72KI
+ *
+ */
+final class FieldAccessor {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodHandle MAPPER_GET_VALUE;
+	private static final MethodHandle MAPPER_SET_VALUE;
+
+	static {
+		try {
+			MAPPER_GET_VALUE = LOOKUP.findVirtual(EntityMapper.class, "getValue",
+					MethodType.methodType(Object.class, BaseEntity.class, int.class));
+			MAPPER_SET_VALUE = LOOKUP.findVirtual(EntityMapper.class, "setValue",
+					MethodType.methodType(void.class, BaseEntity.class, int.class, Object.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final Field field;
+	private final Class<?> type;
+	/** (Object)Object */
+	private final MethodHandle getter;
+	/** (Object, Object)void。finalフィールドの場合はnull */
+	private final MethodHandle setter;
+	/** (Object)type。プリミティブ型の読み込み用 */
+	private final MethodHandle exactGetter;
+	/** (Object, type)void。プリミティブ型の書き込み用 */
+	private final MethodHandle exactSetter;
+
+	private FieldAccessor(Field field, MethodHandle get, MethodHandle set) {
+		this.field = field;
+		this.type = field.getType();
+		this.exactGetter = get.asType(MethodType.methodType(type, Object.class));
+		this.getter = get.asType(MethodType.methodType(Object.class, Object.class));
+		this.exactSetter = set == null ? null : set.asType(MethodType.methodType(void.class, Object.class, type));
+		this.setter = set == null ? null : set.asType(MethodType.methodType(void.class, Object.class, Object.class));
+	}
+
+	/**
+	 * @param field 対象のフィールド
+	 * @return リフレクションでフィールドの読み書きを行うインスタンス
+	 */
+	static FieldAccessor of(Field field) {
+		field.setAccessible(true);
+		MethodHandle get;
+		try {
+			get = LOOKUP.unreflectGetter(field);
+		} catch (IllegalAccessException e) {
+			throw new DBException(e);
+		}
+		MethodHandle set = null;
+		try {
+			set = LOOKUP.unreflectSetter(field);
+		} catch (IllegalAccessException e) {
+			// finalフィールドは書き込めないので、書き込み時にエラーとする
+		}
+		return new FieldAccessor(field, get, set);
+	}
+
+	/**
+	 * @param field 対象のフィールド
+	 * @param mapper 生成されたマッパー
+	 * @param index マッパーでのカラムのインデックス
+	 * @return マッパーを介してフィールドの読み書きを行うインスタンス
+	 */
+	static FieldAccessor of(Field field, EntityMapper<?> mapper, int index) {
+		MethodHandle get = MethodHandles.insertArguments(MAPPER_GET_VALUE.bindTo(mapper), 1, index);
+		MethodHandle set = MethodHandles.insertArguments(MAPPER_SET_VALUE.bindTo(mapper), 1, index);
+		return new FieldAccessor(field, get, set);
+	}
+
+	Field getField() {
+		return field;
+	}
+
+	/**
+	 * @return フィールドの型がプリミティブ型であればtrue
+	 */
+	boolean isPrimitive() {
+		return type.isPrimitive();
+	}
+
+	/**
+	 * フィールドの値を取得します。プリミティブ型の場合はボクシングされます。
+	 * @param target 取得元のオブジェクト
+	 * @return フィールドの値
+	 */
+	Object get(Object target) {
+		try {
+			return getter.invokeExact(target);
+		} catch (Throwable e) {
+			throw wrap(e);
+		}
+	}
+
+	/**
+	 * フィールドに値を設定します。<br>
+	 * プリミティブ型のフィールドにnullを設定しようとした場合は何もしません。
+	 * @param target 設定先のオブジェクト
+	 * @param value 設定する値
+	 */
+	void set(Object target, Object value) {
+		if (value == null && type.isPrimitive()) {
+			return;
+		}
+		try {
+			writableSetter(setter).invokeExact(target, value);
+		} catch (Throwable e) {
+			throw wrap(e);
+		}
+	}
+
+	int getInt(Object target) {
+		try {
+			return (int) exactGetter(int.class).invokeExact(target);
+		} catch (Throwable e) {
+			throw wrap(e);
+		}
+	}
+
+	void setInt(Object target, int value) {
+		try {
+			writableSetter(exactSetter(int.class)).invokeExact(target, value);
+		} catch (Throwable e) {
+			throw wrap(e);
+		}
+	}
+
+	long getLong(Object target) {
+		try {
+			return (long) exactGetter(long.class).invokeExact(target);
+		} catch (Throwable e) {
+			throw wrap(e);
+		}
+	}
+
+	void setLong(Object target, long value) {
+		try {
+			writableSetter(exactSetter(long.class)).invokeExact(target, value);
+		} catch (Throwable e) {
+			throw wrap(e);
+		}
+	}
+
+	double getDouble(Object target) {
+		try {
+			return (double) exactGetter(double.class).invokeExact(target);
+		} catch (Throwable e) {
+			throw wrap(e);
+		}
+	}
+
+	void setDouble(Object target, double value) {
+		try {
+			writableSetter(exactSetter(double.class)).invokeExact(target, value);
+		} catch (Throwable e) {
+			throw wrap(e);
+		}
+	}
+
+	boolean getBoolean(Object target) {
+		try {
+			return (boolean) exactGetter(boolean.class).invokeExact(target);
+		} catch (Throwable e) {
+			throw wrap(e);
+		}
+	}
+
+	void setBoolean(Object target, boolean value) {
+		try {
+			writableSetter(exactSetter(boolean.class)).invokeExact(target, value);
+		} catch (Throwable e) {
+			throw wrap(e);
+		}
+	}
+
+	private MethodHandle exactGetter(Class<?> expected) {
+		checkType(expected);
+		return exactGetter;
+	}
+
+	private MethodHandle exactSetter(Class<?> expected) {
+		checkType(expected);
+		return exactSetter;
+	}
+
+	private void checkType(Class<?> expected) {
+		if (type != expected) {
+			throw new DBException("field [" + field.getName() + "] is not " + expected.getName());
+		}
+	}
+
+	private MethodHandle writableSetter(MethodHandle handle) {
+		if (handle == null) {
+			throw new DBException("field [" + field.getName() + "] is final");
+		}
+		return handle;
+	}
+
+	private static DBException wrap(Throwable e) {
+		if (e instanceof DBException) {
+			return (DBException) e;
+		}
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		return new DBException(e);
+	}
+}
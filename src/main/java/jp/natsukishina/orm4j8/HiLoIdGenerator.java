@@ -0,0 +1,28 @@
+package jp.natsukishina.orm4j8;
+
+import jp.natsukishina.orm4j8.DB.Type;
+
+/**
+ * Hi/Loアルゴリズムで採番するクラス<br>
+ * 1ずつ増えるシーケンスの値(hi)に{@link #getBlockSize()}を掛けた値から{@link #getBlockSize()}個を採番します。
+ * シーケンスを1回進めるごとに{@link #getBlockSize()}個の値を確保できるため、
+ * 既存の1ずつ増えるシーケンスをそのまま使用できます。<br>
+ * 同じシーケンスを使用する全てのアプリケーションで同じblockSizeを指定してください。
+ * @author 417.72KI
+ *
+ */
+public class HiLoIdGenerator extends SequenceIdGenerator {
+
+	/**
+	 * @param sequenceName 1ずつ増えるシーケンスの名前
+	 * @param blockSize 1回に確保する値の数
+	 */
+	public HiLoIdGenerator(String sequenceName, int blockSize) {
+		super(sequenceName, blockSize);
+	}
+
+	@Override
+	protected long reserve(Type type, ConnectionProvider connectionProvider) {
+		return nextValue(type, connectionProvider) * getBlockSize();
+	}
+}
@@ -0,0 +1,26 @@
+package jp.natsukishina.orm4j8;
+
+import jp.natsukishina.orm4j8.DB.Type;
+
+/**
+ * 主キーの採番方法を示すインターフェース<br>
+ * {@link Database#registerIdGenerator(String, IdGenerator)}で名前を付けて登録し、
+ * {@link jp.natsukishina.orm4j8.annotations.Column#generator()}でその名前を指定すると、
+ * 主キーの値が無いエンティティの登録時に最大値の検索の代わりにこのインターフェースで採番します。<br>
+ * 複数のスレッドから同時に呼び出されるため、スレッドセーフに実装してください。
+ * @author 417.72KI
+ * @see BlockIdGenerator
+ *
+ */
+@FunctionalInterface
+public interface IdGenerator {
+
+	/**
+	 * 主キーの値を1つ採番します。
+	 * @param type データベース種別
+	 * @param connectionProvider 採番に使用するコネクションの取得元。
+	 * 取得したコネクションは登録中のトランザクションとは別のもので、closeすると返却されます
+	 * @return 採番した値
+	 */
+	long next(Type type, ConnectionProvider connectionProvider);
+}
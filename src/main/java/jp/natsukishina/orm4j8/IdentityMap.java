@@ -0,0 +1,89 @@
+package jp.natsukishina.orm4j8;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+
+/**
+ * トランザクションまたはセッションの間、読み込んだエンティティをクラスと主キーごとに1つだけ保持するクラス(同一性マップ)<br>
+ * 同じ行を再度読み込んだ場合は保持しているインスタンスを返すため、行の内容はデータベースではなく最初に読み込んだ時点のものになります。<br>
+ * 主キーの無いエンティティは保持しません。スレッドごとに生成されるため同期は行いません。
+ * @author 417.72KI
+ *
+ */
+final class IdentityMap {
+	private final Map<Class<?>, Map<Object, Object>> entities = new HashMap<>();
+
+	/**
+	 * @param clazz エンティティのクラス
+	 * @param key 主キーの値。複合主キーの場合は宣言順のList
+	 * @return 保持しているエンティティ。無い場合はnull
+	 */
+	Object get(Class<?> clazz, Object key) {
+		Map<Object, Object> map = entities.get(clazz);
+		return map == null ? null : map.get(key);
+	}
+
+	/**
+	 * エンティティを保持します。既に同じ主キーのエンティティを保持している場合は置き換えます。
+	 * @param entity エンティティ
+	 */
+	void put(Object entity) {
+		Object key = keyOf(EntityMetadata.of(entity.getClass()), entity);
+		if (key != null) {
+			entities.computeIfAbsent(entity.getClass(), c -> new HashMap<>()).put(key, entity);
+		}
+	}
+
+	/**
+	 * エンティティを保持します。既に同じ主キーのエンティティを保持している場合はそちらを返します。
+	 * @param clazz エンティティのクラス
+	 * @param key 主キーの値
+	 * @param entity エンティティ
+	 * @return 保持しているエンティティ
+	 */
+	Object putIfAbsent(Class<?> clazz, Object key, Object entity) {
+		Object current = entities.computeIfAbsent(clazz, c -> new HashMap<>()).putIfAbsent(key, entity);
+		return current == null ? entity : current;
+	}
+
+	/**
+	 * エンティティと同じ主キーのエンティティを破棄します。<br>
+	 * 保持しているインスタンスと異なるインスタンスを指定した場合も破棄します。
+	 * @param entity エンティティ
+	 */
+	void remove(Object entity) {
+		Object key = keyOf(EntityMetadata.of(entity.getClass()), entity);
+		Map<Object, Object> map = entities.get(entity.getClass());
+		if (key != null && map != null) {
+			map.remove(key);
+		}
+	}
+
+	/**
+	 * 保持している全てのエンティティを破棄します。
+	 */
+	void clear() {
+		entities.clear();
+	}
+
+	/**
+	 * @param metadata エンティティのテーブル定義
+	 * @param entity エンティティ
+	 * @return 主キーの値。複合主キーの場合は宣言順のList。主キーが無いかnullを含む場合はnull
+	 */
+	static Object keyOf(EntityMetadata metadata, Object entity) {
+		List<ColumnMetadata> primaryColumns = metadata.getPrimaryColumns();
+		if (primaryColumns.isEmpty()) {
+			return null;
+		}
+		if (primaryColumns.size() == 1) {
+			return primaryColumns.get(0).accessor.get(entity);
+		}
+		List<Object> key = primaryColumns.stream().map(c -> c.accessor.get(entity)).collect(Collectors.toList());
+		return key.contains(null) ? null : key;
+	}
+}
@@ -1,122 +1,251 @@
 package jp.natsukishina.orm4j8;
 
-import java.lang.reflect.Field;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
 import jp.natsukishina.orm4j8.entity.BaseEntity;
 import jp.natsukishina.orm4j8.exception.DBException;
 
 class Insert<E extends BaseEntity> extends AbstractQuery<E> {
+	/** クラスごとの、行数 → 複数行を登録するクエリ(採番される主キーを除くものは行数を負の値で保持する) */
+	private static final ClassValue<Map<Integer, String>> MULTI_ROW_QUERIES = new ClassValue<Map<Integer, String>>() {
+		@Override
+		protected Map<Integer, String> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
 	private E element;
 	private final List<Object> valueList = new ArrayList<>(0);
+	/** データベースで採番させる主キー。採番させない場合はnull */
+	private ColumnMetadata generatedColumn = null;
+	/** 採番方法の名前 → 採番した値。使用しない場合はnull */
+	private ToLongFunction<String> idGenerator = null;
 
 	@SuppressWarnings("unchecked")
 	Insert(Connection con, E element) {
 		super(con, (Class<E>) element.getClass());
 		this.element = element;
-		fieldCompletion();
+	}
+
+	@SuppressWarnings("unchecked")
+	Insert(Supplier<Connection> connectionSupplier, E element) {
+		super(connectionSupplier, (Class<E>) element.getClass());
+		this.element = element;
+	}
+
+	/**
+	 * {@link jp.natsukishina.orm4j8.annotations.Column#generator()}を指定した主キーの採番に使用する関数を設定します。<br>
+	 * 設定しない場合は最大値+1で採番します。
+	 * @param idGenerator 採番方法の名前 → 採番した値
+	 * @return このクエリ
+	 */
+	Insert<E> idGenerator(ToLongFunction<String> idGenerator) {
+		this.idGenerator = idGenerator;
+		return this;
 	}
 
 	private void fieldCompletion() {
-		List<Field> primaryFields = DBUtil.getPrimaryFields(element);
-		if(primaryFields.size() == 0) {
+		ColumnMetadata primaryColumn = getColumnToComplete(EntityMetadata.of(clazz), element);
+		if (primaryColumn == null) {
 			return;
 		}
-		if(primaryFields.stream().allMatch(field -> DBUtil.getFieldValue(field, element) != null)){
+		if (primaryColumn.generator != null && idGenerator != null) {
+			// 確保済みの範囲から採番するため、ほとんどの場合クエリを実行しない
+			setPrimaryValue(primaryColumn, element, idGenerator.applyAsLong(primaryColumn.generator));
 			return;
 		}
+		// INSERTと同じコネクションで採番する
+		Long maxValue = new Select<>(con, clazz).max(primaryColumn.name, Long.class);
+		setPrimaryValue(primaryColumn, element, (maxValue == null ? 0 : maxValue) + 1);
+	}
 
-		Field field = DBUtil.getPrimaryField(element);
-		if (DBUtil.isInt(field.getType()) || DBUtil.isLong(field.getType())) {
-			try {
-				field.setAccessible(true);
-				final String MAX_PRIMARY_COL = "max_primary";
-				StringBuilder sql = new StringBuilder("SELECT MAX(");
-				sql.append(DBUtil.getColumn4Query(clazz, field));
-				sql.append(") AS ");
-				sql.append(DBUtil.getColumn4Query(MAX_PRIMARY_COL));
-				sql.append(" FROM ");
-				sql.append(DBUtil.getTableName4Query(clazz));
-				ResultSet rs = new RawQuery<>(con, clazz, sql.toString()).execute().getResultSet();
-				rs.next();
-				if (DBUtil.isInt(field.getType())) {
-					int maxValue = rs.getInt(MAX_PRIMARY_COL);
-					field.set(element, maxValue + 1);
-				} else {
-					long maxValue = rs.getLong(MAX_PRIMARY_COL);
-					field.set(element, maxValue + 1);
-				}
-			} catch (SQLException | IllegalArgumentException | IllegalAccessException e) {
-				throw new DBException(e);
-			} finally {
-				field.setAccessible(false);
+	/**
+	 * @param metadata エンティティのテーブル定義
+	 * @param element 登録するエンティティ
+	 * @return 採番が必要な主キーのカラム。主キーが無いか全て値がある場合はnull
+	 * @throws DBException 採番が必要な主キーが数値型ではない場合
+	 */
+	static ColumnMetadata getColumnToComplete(EntityMetadata metadata, Object element) {
+		List<ColumnMetadata> primaryColumns = metadata.getPrimaryColumns();
+		if (primaryColumns.size() == 0) {
+			return null;
+		}
+		if (primaryColumns.stream().allMatch(column -> column.accessor.get(element) != null)) {
+			return null;
+		}
+
+		ColumnMetadata primaryColumn = metadata.getPrimaryColumn();
+		if (primaryColumn.generated) {
+			// データベースで採番する
+			return null;
+		}
+		if (!DBUtil.isInt(primaryColumn.type) && !DBUtil.isLong(primaryColumn.type)) {
+			throw new DBException(
+					"Primary Field + [" + primaryColumn.field.getName() + "] must not be null when its type is not numeric");
+		}
+		return primaryColumn;
+	}
+
+	/**
+	 * 採番した値を主キーにセットします。
+	 * @param primaryColumn 主キーのカラム(int・long)
+	 * @param element 登録するエンティティ
+	 * @param value 採番した値
+	 */
+	static void setPrimaryValue(ColumnMetadata primaryColumn, Object element, long value) {
+		FieldAccessor accessor = primaryColumn.accessor;
+		if (DBUtil.isInt(primaryColumn.type)) {
+			if (accessor.isPrimitive()) {
+				accessor.setInt(element, (int) value);
+			} else {
+				accessor.set(element, (int) value);
 			}
+		} else if (accessor.isPrimitive()) {
+			accessor.setLong(element, value);
 		} else {
-			throw new DBException(
-					"Primary Field + [" + field.getName() + "] must not be null when its type is not numeric");
+			accessor.set(element, value);
+		}
+	}
+
+	/**
+	 * @param metadata エンティティのテーブル定義
+	 * @param element 登録するエンティティ
+	 * @return データベースで採番させる主キーのカラム。採番される主キーが無いか値がある場合はnull
+	 */
+	static ColumnMetadata getColumnToGenerate(EntityMetadata metadata, Object element) {
+		ColumnMetadata generatedColumn = metadata.getGeneratedColumn();
+		return generatedColumn == null || generatedColumn.accessor.get(element) != null ? null : generatedColumn;
+	}
+
+	/**
+	 * 採番された主キーの値をgetGeneratedKeysで取得し、登録した順にエンティティにセットします。
+	 * @param pstmt 実行したステートメント
+	 * @param generatedColumn 採番される主キーのカラム
+	 * @param elements 登録したエンティティ(登録した順)
+	 * @throws SQLException 取得に失敗した場合
+	 * @throws DBException 採番された値が登録した件数より少ない場合
+	 */
+	static void setGeneratedKeys(PreparedStatement pstmt, ColumnMetadata generatedColumn,
+			List<? extends BaseEntity> elements) throws SQLException {
+		try (ResultSet keys = pstmt.getGeneratedKeys()) {
+			for (BaseEntity element : elements) {
+				if (!keys.next()) {
+					throw new DBException("generated keys of " + generatedColumn.name + " are fewer than inserted rows");
+				}
+				setPrimaryValue(generatedColumn, element, keys.getLong(1));
+			}
 		}
 	}
 
+	/**
+	 * @return 登録するエンティティ
+	 */
+	E getElement() {
+		return element;
+	}
+
+	/**
+	 * @return データベースで採番させる主キー。{@link #buildQuery()}の前または採番させない場合はnull
+	 */
+	ColumnMetadata getGeneratedColumn() {
+		return generatedColumn;
+	}
+
 	@Override
 	public boolean result() {
-		try {
-			return getStatement().getUpdateCount() != -1;
-		} catch (SQLException e) {
-			e.printStackTrace();
-			return false;
-		}
+		return getUpdateCount() != -1;
 	}
 
 	@Override
 	protected String buildQuery() {
-		String tableName = DBUtil.getTableName(clazz);
-		Field[] fields = DBUtil.getFields(clazz);
-
-		StringBuilder sql = new StringBuilder("INSERT INTO ");
-		sql.append(tableName);
-
-		// columns
-		StringBuilder columns = new StringBuilder("(");
-		StringBuilder values = new StringBuilder("(");
-		{
-			int idx[] = { 0 };
-			DBUtil.getFieldList(clazz).forEach(field -> {
-				try {
-					field.setAccessible(true);
-					String column = DBUtil.getColumn(field);
-					Object value = field.get(element);
-					columns.append(column);
-					values.append("?");
-					idx[0]++;
-					if (idx[0] < fields.length) {
-						columns.append(", ");
-						values.append(", ");
-					}
-					if (value == null) {
-						valueList.add(field);
-					} else {
-						valueList.add(value);
-					}
-				} catch (Exception e) {
-					throw new DBException(e);
-				} finally {
-					field.setAccessible(false);
-				}
-			});
+		EntityMetadata metadata = EntityMetadata.of(clazz);
+		fieldCompletion();
+		generatedColumn = getColumnToGenerate(metadata, element);
+		valueList.addAll(valuesOf(metadata, element, generatedColumn != null));
+		return buildMultiRowQuery(clazz, 1, generatedColumn != null);
+	}
+
+	@Override
+	protected PreparedStatement prepareStatement(String sql) throws SQLException {
+		if (generatedColumn == null) {
+			return super.prepareStatement(sql);
+		}
+		// RETURN_GENERATED_KEYSはOracleではROWIDを返すため、カラム名で指定する
+		return con.prepareStatement(sql, new String[] { generatedColumn.name });
+	}
+
+	@Override
+	protected void afterExecute(PreparedStatement pstmt) throws SQLException {
+		if (generatedColumn != null) {
+			setGeneratedKeys(pstmt, generatedColumn, Collections.singletonList(element));
+		}
+	}
+
+	/**
+	 * 複数行を登録するクエリを生成します。<br>
+	 * 生成したクエリはクラス・行数ごとに保持して再利用します。
+	 * <pre>INSERT INTO table (column1, column2) VALUES (?, ?), (?, ?), ...;</pre>
+	 * @param clazz 登録するエンティティのクラス
+	 * @param rows 行数
+	 * @param omitGenerated データベースで採番させる主キーを除く場合はtrue
+	 * @return クエリ
+	 */
+	static String buildMultiRowQuery(Class<?> clazz, int rows, boolean omitGenerated) {
+		return MULTI_ROW_QUERIES.get(clazz).computeIfAbsent(omitGenerated ? -rows : rows, key -> {
+			int r = Math.abs(key);
+			EntityMetadata metadata = EntityMetadata.of(clazz);
+			List<ColumnMetadata> columnList = columnsOf(metadata, omitGenerated);
+			String values = columnList.stream().map(c -> "?").collect(Collectors.joining(", ", "(", ")"));
+
+			StringBuilder sql = new StringBuilder("INSERT INTO ");
+			sql.append(metadata.getTableName());
+			sql.append(" ");
+			sql.append(columnList.stream().map(c -> c.name).collect(Collectors.joining(", ", "(", ")")));
+			sql.append(" VALUES ");
+			sql.append(String.join(", ", Collections.nCopies(r, values)));
+			sql.append(";");
+			return sql.toString();
+		});
+	}
+
+	/**
+	 * @param metadata エンティティのテーブル定義
+	 * @param element 登録するエンティティ
+	 * @param omitGenerated データベースで採番させる主キーを除く場合はtrue
+	 * @return 1行分のパラメータ。値が無いカラムはそのフィールド
+	 */
+	static List<Object> valuesOf(EntityMetadata metadata, Object element, boolean omitGenerated) {
+		List<ColumnMetadata> columnList = columnsOf(metadata, omitGenerated);
+		List<Object> values = new ArrayList<>(columnList.size());
+		for (ColumnMetadata column : columnList) {
+			Object value = column.accessor.get(element);
+			values.add(value == null ? column.field : value);
+		}
+		return values;
+	}
+
+	/**
+	 * @param metadata エンティティのテーブル定義
+	 * @param omitGenerated データベースで採番させる主キーを除く場合はtrue
+	 * @return 登録するカラム
+	 */
+	private static List<ColumnMetadata> columnsOf(EntityMetadata metadata, boolean omitGenerated) {
+		if (!omitGenerated || metadata.getGeneratedColumn() == null) {
+			return metadata.getColumns();
 		}
-		columns.append(")");
-		values.append(")");
-
-		sql.append(" ");
-		sql.append(columns);
-		sql.append(" VALUES ");
-		sql.append(values);
-		sql.append(";");
-		return sql.toString();
+		return metadata.getColumns().stream().filter(c -> !c.generated).collect(Collectors.toList());
 	}
 
 	@Override
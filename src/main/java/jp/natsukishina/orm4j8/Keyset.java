@@ -0,0 +1,215 @@
+package jp.natsukishina.orm4j8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+import jp.natsukishina.orm4j8.Order.Sort;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * キーセット(シーク)方式のページングで使用するソートキーを扱うクラス<br>
+ * 指定されたソートの後ろに主キーを加えて並びを一意にし、前のページの最後の行より後ろの行を
+ * <pre>(k1 &gt; ?) OR (k1 = ? AND k2 &gt; ?) ...</pre>
+ * という検索条件で取得します。OFFSETと異なり、読み飛ばす行がないためページの位置に関わらず一定の速度で取得できます。<br>
+ * 継続トークンはソートキーのカラム名、ソート順、値をBase64でエンコードしたものです。
+ * @author 417.72KI
+ *
+ */
+final class Keyset {
+	private static final byte VERSION = 2;
+
+	private final List<ColumnMetadata> columns;
+	private final List<Sort> sorts;
+
+	private Keyset(List<ColumnMetadata> columns, List<Sort> sorts) {
+		this.columns = Collections.unmodifiableList(columns);
+		this.sorts = Collections.unmodifiableList(sorts);
+	}
+
+	/**
+	 * @param metadata 検索対象テーブルの定義
+	 * @param orders 指定されたソート
+	 * @return ソートキー
+	 */
+	static Keyset of(EntityMetadata metadata, List<? extends Order<?>> orders) {
+		List<ColumnMetadata> columns = new ArrayList<>();
+		List<Sort> sorts = new ArrayList<>();
+		for (Order<?> order : orders) {
+			ColumnMetadata column = metadata.getColumn4Query(order.by());
+			if (column == null) {
+				throw new DBException("keyset pagination cannot sort by " + order.by()
+						+ ", which is not a column of " + metadata.getTableName());
+			}
+			if (!columns.contains(column)) {
+				columns.add(column);
+				sorts.add(order.sort());
+			}
+		}
+		// 主キーを加えて並びを一意にする
+		for (ColumnMetadata column : metadata.getPrimaryColumns()) {
+			if (!columns.contains(column)) {
+				columns.add(column);
+				sorts.add(Sort.ASC);
+			}
+		}
+		if (columns.isEmpty()) {
+			throw new DBException(
+					"keyset pagination requires orderBy or a primary column: " + metadata.getEntityClass().getName());
+		}
+		return new Keyset(columns, sorts);
+	}
+
+	/**
+	 * @return ソートキーのカラム
+	 */
+	List<ColumnMetadata> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return ORDER BY句
+	 */
+	String orderBy() {
+		StringBuilder sql = new StringBuilder(" ORDER BY ");
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(columns.get(i).quotedName);
+			sql.append(" ");
+			sql.append(sorts.get(i));
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * @return 前のページの最後の行より後ろの行を取得する検索条件
+	 */
+	String predicate() {
+		StringBuilder sql = new StringBuilder("(");
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				sql.append(" OR ");
+			}
+			sql.append("(");
+			for (int j = 0; j < i; j++) {
+				sql.append(columns.get(j).quotedName);
+				sql.append(" = ? AND ");
+			}
+			sql.append(columns.get(i).quotedName);
+			sql.append(sorts.get(i) == Sort.DESC ? " < ?" : " > ?");
+			sql.append(")");
+		}
+		sql.append(")");
+		return sql.toString();
+	}
+
+	/**
+	 * @param values 前のページの最後の行のソートキー
+	 * @return {@link #predicate()}にセットするパラメータ
+	 */
+	List<Object> params(Object[] values) {
+		List<Object> params = new ArrayList<>();
+		for (int i = 0; i < columns.size(); i++) {
+			for (int j = 0; j <= i; j++) {
+				params.add(values[j]);
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * @param entity 取得したエンティティ
+	 * @return エンティティのソートキー
+	 */
+	Object[] valuesOf(Object entity) {
+		Object[] values = new Object[columns.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = columns.get(i).accessor.get(entity);
+			if (values[i] == null) {
+				throw new DBException("keyset column " + columns.get(i).name + " must not be null");
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @param values ソートキー
+	 * @return 継続トークン
+	 */
+	String encode(Object[] values) {
+		try (ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(VERSION);
+			out.writeInt(values.length);
+			for (int i = 0; i < values.length; i++) {
+				out.writeUTF(columns.get(i).name);
+				out.writeUTF(sorts.get(i).name());
+				Object value = values[i];
+				out.writeUTF(value instanceof Date ? String.valueOf(((Date) value).getTime()) : value.toString());
+			}
+			out.flush();
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+		} catch (IOException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * @param token 継続トークン
+	 * @return ソートキー
+	 */
+	Object[] decode(String token) {
+		try (DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(Base64.getUrlDecoder().decode(token.getBytes(StandardCharsets.US_ASCII))))) {
+			if (in.readByte() != VERSION || in.readInt() != columns.size()) {
+				throw new DBException("token doesn't match the sort of this query: " + token);
+			}
+			Object[] values = new Object[columns.size()];
+			for (int i = 0; i < values.length; i++) {
+				ColumnMetadata column = columns.get(i);
+				if (!column.name.equals(in.readUTF()) || !sorts.get(i).name().equals(in.readUTF())) {
+					throw new DBException("token doesn't match the sort of this query: " + token);
+				}
+				values[i] = parse(column.type, in.readUTF());
+			}
+			return values;
+		} catch (IOException | IllegalArgumentException | java.time.DateTimeException e) {
+			throw new DBException("invalid token: " + token, e);
+		}
+	}
+
+	private static Object parse(Class<?> type, String value) {
+		if (DBUtil.isInt(type)) {
+			return Integer.valueOf(value);
+		} else if (DBUtil.isLong(type)) {
+			return Long.valueOf(value);
+		} else if (DBUtil.isDouble(type)) {
+			return Double.valueOf(value);
+		} else if (DBUtil.isBoolean(type)) {
+			return Boolean.valueOf(value);
+		} else if (DBUtil.isDate(type)) {
+			return new Date(Long.parseLong(value));
+		} else if (DBUtil.isLocalDate(type)) {
+			return LocalDate.parse(value);
+		} else if (DBUtil.isLocalTime(type)) {
+			return LocalTime.parse(value);
+		} else if (DBUtil.isLocalDateTime(type)) {
+			return LocalDateTime.parse(value);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,45 @@
+package jp.natsukishina.orm4j8;
+
+import java.util.Collections;
+import java.util.List;
+
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+
+/**
+ * キーセット方式のページングで取得した1ページ分の検索結果
+ * @author 417.72KI
+ *
+ * @param <E> データベースのテーブルを示す型
+ */
+public final class Page<E extends BaseEntity> {
+	private final List<E> items;
+	private final String nextToken;
+
+	Page(List<E> items, String nextToken) {
+		this.items = Collections.unmodifiableList(items);
+		this.nextToken = nextToken;
+	}
+
+	/**
+	 * @return このページのエンティティ
+	 */
+	public List<E> getItems() {
+		return items;
+	}
+
+	/**
+	 * 次のページを取得するための継続トークンを返します。<br>
+	 * {@link Query#page(int, String)}に同じ検索条件・ソートとともに渡してください。
+	 * @return 継続トークン。最後のページの場合はnull
+	 */
+	public String getNextToken() {
+		return nextToken;
+	}
+
+	/**
+	 * @return 次のページがある場合はtrue
+	 */
+	public boolean hasNext() {
+		return nextToken != null;
+	}
+}
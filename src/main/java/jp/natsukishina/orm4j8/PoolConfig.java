@@ -0,0 +1,118 @@
+package jp.natsukishina.orm4j8;
+
+/**
+ * コネクションプールの設定を扱うクラス。<br>
+ * {@link DB#configPool(PoolConfig)}に渡して使用します。
+ * @author 417.72KI
+ *
+ */
+public class PoolConfig {
+	private int minSize = 1;
+	private int maxSize = 10;
+	private long borrowTimeout = 30000L;
+	private long idleTimeout = 600000L;
+	private long leakDetectionThreshold = 0L;
+
+	/**
+	 * プールが保持する最小コネクション数を取得します。
+	 * @return 最小コネクション数
+	 */
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * プールが保持する最小コネクション数を設定します。<br>
+	 * デフォルトは1です。
+	 * @param minSize 最小コネクション数
+	 */
+	public void setMinSize(int minSize) {
+		if (minSize < 0) {
+			throw new IllegalArgumentException("minSize must not be negative");
+		}
+		this.minSize = minSize;
+	}
+
+	/**
+	 * 同時に貸し出せる最大コネクション数を取得します。
+	 * @return 最大コネクション数
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * 同時に貸し出せる最大コネクション数を設定します。<br>
+	 * デフォルトは10です。
+	 * @param maxSize 最大コネクション数
+	 */
+	public void setMaxSize(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * コネクション取得の待機時間(ミリ秒)を取得します。
+	 * @return 待機時間(ミリ秒)
+	 */
+	public long getBorrowTimeout() {
+		return borrowTimeout;
+	}
+
+	/**
+	 * コネクション取得の待機時間(ミリ秒)を設定します。<br>
+	 * この時間内にコネクションが空かなかった場合は{@link jp.natsukishina.orm4j8.exception.DBException}が発生します。<br>
+	 * デフォルトは30秒です。
+	 * @param borrowTimeout 待機時間(ミリ秒)
+	 */
+	public void setBorrowTimeout(long borrowTimeout) {
+		if (borrowTimeout < 0) {
+			throw new IllegalArgumentException("borrowTimeout must not be negative");
+		}
+		this.borrowTimeout = borrowTimeout;
+	}
+
+	/**
+	 * アイドル状態のコネクションを破棄するまでの時間(ミリ秒)を取得します。
+	 * @return アイドル時間(ミリ秒)
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * アイドル状態のコネクションを破棄するまでの時間(ミリ秒)を設定します。<br>
+	 * 最小コネクション数を下回る破棄は行いません。0の場合は破棄しません。<br>
+	 * デフォルトは10分です。
+	 * @param idleTimeout アイドル時間(ミリ秒)
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		if (idleTimeout < 0) {
+			throw new IllegalArgumentException("idleTimeout must not be negative");
+		}
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * リーク検出の閾値(ミリ秒)を取得します。
+	 * @return リーク検出の閾値(ミリ秒)
+	 */
+	public long getLeakDetectionThreshold() {
+		return leakDetectionThreshold;
+	}
+
+	/**
+	 * リーク検出の閾値(ミリ秒)を設定します。<br>
+	 * この時間を超えて返却されないコネクションは取得箇所のスタックトレースと共に警告ログが出力されます。<br>
+	 * 0の場合はリーク検出を行いません。デフォルトは0です。
+	 * @param leakDetectionThreshold リーク検出の閾値(ミリ秒)
+	 */
+	public void setLeakDetectionThreshold(long leakDetectionThreshold) {
+		if (leakDetectionThreshold < 0) {
+			throw new IllegalArgumentException("leakDetectionThreshold must not be negative");
+		}
+		this.leakDetectionThreshold = leakDetectionThreshold;
+	}
+}
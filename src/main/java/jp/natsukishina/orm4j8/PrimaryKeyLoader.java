@@ -0,0 +1,151 @@
+package jp.natsukishina.orm4j8;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import jp.natsukishina.orm4j8.DB.Type;
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * 複数の主キーでエンティティをまとめて検索するクラス<br>
+ * 主キーはDBMSの上限({@link Type#maxInListSize})ごとに分割してIN句で指定し、
+ * 複合主キーの場合は
+ * <pre>(`E`.`key1`, `E`.`key2`) IN ((?, ?), (?, ?), ...)</pre>
+ * という行値式で検索します。
+ * @author 417.72KI
+ *
+ */
+final class PrimaryKeyLoader {
+	private PrimaryKeyLoader() {
+	}
+
+	/**
+	 * @param connectionSupplier コネクションの取得元
+	 * @param identityMap 同一性マップ。使用しない場合はnull
+	 * @param type データベース種別
+	 * @param clazz 検索対象テーブルのクラス
+	 * @param primaryKeys 主キーの値の一覧。複合主キーの場合は主キーのカラムの宣言順に値を並べたList
+	 * @return 主キーの値と検索結果エンティティのマップ(primaryKeysの順)
+	 */
+	static <K, E extends BaseEntity> Map<K, E> load(Supplier<Connection> connectionSupplier, IdentityMap identityMap,
+			Type type, Class<E> clazz, Collection<K> primaryKeys) {
+		List<ColumnMetadata> primaryColumns = EntityMetadata.of(clazz).getPrimaryColumns();
+		if (primaryColumns.isEmpty()) {
+			throw new DBException(clazz.getName() + " doesn't have primary column");
+		}
+		boolean composite = primaryColumns.size() > 1;
+
+		// カラムの型に変換した主キー → 指定された主キー
+		Map<Object, K> keys = new LinkedHashMap<>();
+		for (K primaryKey : primaryKeys) {
+			if (primaryKey == null) {
+				throw new IllegalArgumentException("primaryKeys must not contain null");
+			}
+			keys.putIfAbsent(convert(primaryColumns, primaryKey), primaryKey);
+		}
+
+		String column = composite
+				? primaryColumns.stream().map(c -> c.quotedName).collect(Collectors.joining(", ", "(", ")"))
+				: primaryColumns.get(0).quotedName;
+		int maxInListSize = type.maxInListSize;
+		int chunkSize = Math.max(1, composite ? maxInListSize / primaryColumns.size() : maxInListSize);
+		Map<Object, E> found = new HashMap<>();
+		List<Object> values = new ArrayList<>();
+		for (Object value : keys.keySet()) {
+			// 読み込み済みのエンティティは検索しない
+			Object cached = identityMap == null ? null : identityMap.get(clazz, value);
+			if (cached != null) {
+				found.put(value, clazz.cast(cached));
+			} else {
+				values.add(value);
+			}
+		}
+		for (int from = 0; from < values.size(); from += chunkSize) {
+			List<Object> chunk = values.subList(from, Math.min(from + chunkSize, values.size()));
+			Select<E> select = new Select<>(connectionSupplier, clazz).identityMap(() -> identityMap);
+			select.where(() -> new Object[] { column, "IN", chunk });
+			select.execute();
+			for (E element : select.getAll()) {
+				if (element != null) {
+					found.put(valueOf(primaryColumns, element), element);
+				}
+			}
+		}
+
+		Map<K, E> result = new LinkedHashMap<>();
+		keys.forEach((value, primaryKey) -> {
+			E element = found.get(value);
+			if (element != null) {
+				result.put(primaryKey, element);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @return 主キーの値を各カラムの型に変換したもの。複合主キーの場合はList
+	 */
+	private static Object convert(List<ColumnMetadata> primaryColumns, Object primaryKey) {
+		if (primaryColumns.size() == 1) {
+			return convert(primaryColumns.get(0), primaryKey);
+		}
+		if (!(primaryKey instanceof List) || ((List<?>) primaryKey).size() != primaryColumns.size()) {
+			throw new IllegalArgumentException("composite primary key must be a List of " + primaryColumns.size()
+					+ " values: " + primaryKey);
+		}
+		List<?> values = (List<?>) primaryKey;
+		Object[] converted = new Object[values.size()];
+		for (int i = 0; i < converted.length; i++) {
+			if (values.get(i) == null) {
+				throw new IllegalArgumentException("primary key must not contain null: " + primaryKey);
+			}
+			converted[i] = convert(primaryColumns.get(i), values.get(i));
+		}
+		return Arrays.asList(converted);
+	}
+
+	/**
+	 * @return エンティティの主キーの値。複合主キーの場合はList
+	 */
+	private static Object valueOf(List<ColumnMetadata> primaryColumns, BaseEntity element) {
+		if (primaryColumns.size() == 1) {
+			return primaryColumns.get(0).accessor.get(element);
+		}
+		return primaryColumns.stream().map(c -> c.accessor.get(element)).collect(Collectors.toList());
+	}
+
+	/**
+	 * 主キーの値をカラムの型に変換します。
+	 * @param column 主キーのカラム
+	 * @param value 主キーの値
+	 * @return 変換した値
+	 */
+	static Object convert(ColumnMetadata column, Object value) {
+		Class<?> type = column.type;
+		try {
+			if (DBUtil.isInt(type)) {
+				return value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(value.toString());
+			} else if (DBUtil.isLong(type)) {
+				return value instanceof Number ? ((Number) value).longValue() : Long.valueOf(value.toString());
+			} else if (DBUtil.isDouble(type)) {
+				return value instanceof Number ? ((Number) value).doubleValue() : Double.valueOf(value.toString());
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid primary key for " + column.name + ": " + value, e);
+		}
+		if (type == String.class) {
+			return value.toString();
+		}
+		return value;
+	}
+}
@@ -0,0 +1,172 @@
+package jp.natsukishina.orm4j8;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.ResultSetMetaData;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Date;
+
+import jp.natsukishina.orm4j8.RowReader.ValueReader;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * 検索結果の1行を任意のクラス(DTO)に変換するクラス<br>
+ * 変換先は以下の優先順位で決定し、各列は引数・フィールドの型に応じたgetterで読み込みます。
+ * <ol>
+ * <li>列が1つで、変換先がString・数値・日付等の値の型の場合はその値</li>
+ * <li>列数と同じ数の引数を持つコンストラクタ(列の順に引数へ渡す)</li>
+ * <li>引数無しのコンストラクタで生成し、列名(またはそのキャメルケース)と同名のフィールドへ設定</li>
+ * </ol>
+ * @author 417.72KI
+ *
+ * @param <T> 変換先の型
+ */
+final class ProjectionReader<T> {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private final Class<T> type;
+	private final ValueReader[] valueReaders;
+	/** (Object[])Object。値の型の場合はnull */
+	private final MethodHandle constructor;
+	/** フィールドに設定する場合のみ。それ以外はnull */
+	private final FieldAccessor[] accessors;
+
+	private ProjectionReader(Class<T> type, ValueReader[] valueReaders, MethodHandle constructor,
+			FieldAccessor[] accessors) {
+		this.type = type;
+		this.valueReaders = valueReaders;
+		this.constructor = constructor;
+		this.accessors = accessors;
+	}
+
+	/**
+	 * @param <T> 変換先の型
+	 * @param type 変換先のクラス
+	 * @param rs 変換元の検索結果
+	 * @return 検索結果を変換するインスタンス
+	 * @throws SQLException 検索結果のメタデータの取得に失敗した場合
+	 */
+	static <T> ProjectionReader<T> of(Class<T> type, ResultSet rs) throws SQLException {
+		if (type == null) {
+			throw new IllegalArgumentException("type must not be null");
+		}
+		ResultSetMetaData md = rs.getMetaData();
+		String[] labels = new String[md.getColumnCount()];
+		for (int i = 0; i < labels.length; i++) {
+			labels[i] = md.getColumnLabel(i + 1);
+		}
+
+		if (labels.length == 1 && isValueType(type)) {
+			return new ProjectionReader<>(type, new ValueReader[] { RowReader.valueReader(type) }, null, null);
+		}
+
+		try {
+			for (Constructor<?> c : type.getDeclaredConstructors()) {
+				if (c.getParameterCount() == labels.length && labels.length > 0) {
+					c.setAccessible(true);
+					MethodHandle handle = LOOKUP.unreflectConstructor(c).asSpreader(Object[].class, labels.length);
+					ValueReader[] readers = Arrays.stream(c.getParameterTypes()).map(RowReader::valueReader)
+							.toArray(ValueReader[]::new);
+					return new ProjectionReader<>(type, readers, handle, null);
+				}
+			}
+
+			Constructor<T> noArg = type.getDeclaredConstructor();
+			noArg.setAccessible(true);
+			ValueReader[] readers = new ValueReader[labels.length];
+			FieldAccessor[] accessors = new FieldAccessor[labels.length];
+			for (int i = 0; i < labels.length; i++) {
+				Field field = findField(type, labels[i]);
+				if (field == null) {
+					throw new DBException(type.getName() + " doesn't have field for column " + labels[i]);
+				}
+				readers[i] = RowReader.valueReader(field.getType());
+				accessors[i] = FieldAccessor.of(field);
+			}
+			return new ProjectionReader<>(type, readers, LOOKUP.unreflectConstructor(noArg), accessors);
+		} catch (NoSuchMethodException e) {
+			throw new DBException(type.getName() + " must have a constructor with " + labels.length
+					+ " parameters or a no-arg constructor", e);
+		} catch (IllegalAccessException e) {
+			throw new DBException(e);
+		}
+	}
+
+	private static boolean isValueType(Class<?> type) {
+		return type.isPrimitive() || Number.class.isAssignableFrom(type) || type == String.class
+				|| type == Boolean.class || type == LocalDate.class || type == LocalTime.class
+				|| type == LocalDateTime.class || Date.class.isAssignableFrom(type);
+	}
+
+	private static Field findField(Class<?> type, String label) {
+		String camel = toCamelCase(label);
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (field.getName().equals(label) || field.getName().equals(camel)) {
+					return field;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * snake_caseをcamelCaseに変換します。
+	 */
+	private static String toCamelCase(String label) {
+		StringBuilder builder = new StringBuilder(label.length());
+		boolean upper = false;
+		for (char ch : label.toCharArray()) {
+			if (ch == '_') {
+				upper = builder.length() > 0;
+			} else if (upper) {
+				builder.append(Character.toUpperCase(ch));
+				upper = false;
+			} else {
+				builder.append(Character.toLowerCase(ch));
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * 検索結果の現在行を変換します。
+	 * @param rs 検索結果
+	 * @return 変換したオブジェクト
+	 * @throws SQLException 値の読み込みに失敗した場合
+	 */
+	@SuppressWarnings("unchecked")
+	T read(ResultSet rs) throws SQLException {
+		if (constructor == null) {
+			return (T) valueReaders[0].read(rs, 1);
+		}
+		try {
+			if (accessors == null) {
+				Object[] args = new Object[valueReaders.length];
+				for (int i = 0; i < args.length; i++) {
+					args[i] = valueReaders[i].read(rs, i + 1);
+				}
+				return (T) constructor.invoke(args);
+			}
+			Object ret = constructor.invoke();
+			for (int i = 0; i < accessors.length; i++) {
+				accessors[i].set(ret, valueReaders[i].read(rs, i + 1));
+			}
+			return (T) ret;
+		} catch (SQLException | RuntimeException e) {
+			throw e;
+		} catch (Throwable e) {
+			if (e instanceof Error) {
+				throw (Error) e;
+			}
+			throw new DBException("failed to instantiate " + type.getName(), e);
+		}
+	}
+}
@@ -2,9 +2,20 @@ package jp.natsukishina.orm4j8;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
 
+import jp.natsukishina.orm4j8.DB.Type;
 import jp.natsukishina.orm4j8.Order.Sort;
+import jp.natsukishina.orm4j8.annotations.FetchType;
+import jp.natsukishina.orm4j8.annotations.HasOne;
 import jp.natsukishina.orm4j8.entity.BaseEntity;
 
 /**
@@ -64,6 +75,17 @@ public interface Query<E extends BaseEntity> {
 	 */
 	public abstract Query<E> where(Class<? extends BaseEntity> clazz, String column, String op, Object actual);
 
+	/**
+	 * 検索条件(AND)を追加します。<br>
+	 * 内部では
+	 * <pre>WHERE(AND) `E`.`column` IN (?, ?, ...)</pre>
+	 * というクエリを生成します。valuesが空の場合はどの行にも一致しません。
+	 * @param column カラム名
+	 * @param values 期待される値の一覧
+	 * @return クエリオブジェクト
+	 */
+	public abstract Query<E> whereIn(String column, Collection<?> values);
+
 	/**
 	 * 検索条件(OR)を追加します。<br>
 	 * 内部では
@@ -176,7 +198,71 @@ public interface Query<E extends BaseEntity> {
 	public abstract Query<E> limit(int limit);
 
 	/**
-	 * 生成したクエリを実行します。
+	 * 取得するカラムを限定します。<br>
+	 * 内部では
+	 * <pre>SELECT `E`.`column1`, `E`.`column2` ...</pre>
+	 * というクエリを生成し、HasOneの結合先は検索条件・ソートで参照している場合のみ結合します。<br>
+	 * {@link #getAll()}等で取得したエンティティには指定したカラムのみ設定されます。
+	 * {@link #getAll(Class)}を使用するとDTO等の任意のクラスに変換できます。
+	 * @param columns カラム名
+	 * @return クエリオブジェクト
+	 */
+	public abstract Query<E> select(String... columns);
+
+	/**
+	 * HasOneの結合先の取得方法を設定します。<br>
+	 * targetClassを対象とする全てのHasOneについて、アノテーションの{@link HasOne#fetch()}より優先します。
+	 * <ul>
+	 * <li>{@link FetchType#JOIN}: 検索クエリにLEFT OUTER JOINで結合して取得します。</li>
+	 * <li>{@link FetchType#SELECT}: 検索後に外部キーをIN句で指定した別のクエリでまとめて取得します。
+	 * {@link #stream()}では1行ずつ読み込むため、JOINで取得します。</li>
+	 * <li>{@link FetchType#LAZY}: 取得しません。{@link BaseEntity#loadHasOne(Class)}や
+	 * {@link DB#loadHasOne(List, Class)}で必要な時にロードしてください。</li>
+	 * </ul>
+	 * executeの前に設定してください。
+	 * @param targetClass 結合先のクラス
+	 * @param fetchType 取得方法
+	 * @return クエリオブジェクト
+	 */
+	public abstract Query<E> fetch(Class<? extends BaseEntity> targetClass, FetchType fetchType);
+
+	/**
+	 * HasOneを辿る段数を設定します。<br>
+	 * 検索対象テーブルのHasOneが1段目で、設定した段数より深い結合先は取得しません。
+	 * 経路上に既にあるクラスへのHasOne(循環参照)は段数に関わらず取得しません。<br>
+	 * executeの前に設定してください。デフォルトは3です。
+	 * @param depth HasOneを辿る段数
+	 * @return クエリオブジェクト
+	 */
+	public abstract Query<E> maxFetchDepth(int depth);
+
+	/**
+	 * 検索結果を読み込む際にデータベースから一度に取得する行数を設定します。<br>
+	 * 0より大きい値を設定すると、DBMSに応じたストリーミング(MySQLでは行単位の逐次取得、PostgreSQLではカーソル)で取得するため、
+	 * {@link #stream()}と併用すると件数に関わらず一定のメモリで読み込めます。<br>
+	 * executeの前に設定してください。デフォルトは0(JDBCドライバの設定に従う)です。
+	 * @param fetchSize 一度に取得する行数
+	 * @return クエリオブジェクト
+	 */
+	public abstract Query<E> fetchSize(int fetchSize);
+
+	/**
+	 * 検索結果をキャッシュします。<br>
+	 * 生成したクエリとパラメータが同じ検索の結果を指定した期間保持し、{@link #get()}・{@link #getAll()}で
+	 * データベースに問い合わせずに複製を返します。
+	 * 検索対象テーブルかHasOneで辿れるテーブルを{@link DB#save(BaseEntity)}・{@link DB#delete(BaseEntity)}で更新した場合は
+	 * (トランザクション中はコミット後に)破棄します。<br>
+	 * 全てのカラムを取得する検索のみが対象で、{@link #select(String...)}・集計・ページングでは使用しません。
+	 * 書き込み済みのトランザクション中もコミットされていない値を読み込むため使用しません。<br>
+	 * executeの前に設定してください。
+	 * @param ttl 保持する期間
+	 * @return クエリオブジェクト
+	 */
+	public abstract Query<E> cached(Duration ttl);
+
+	/**
+	 * 生成したクエリを実行します。<br>
+	 * 実行時にコネクションを取得したクエリは、結果を取得するメソッドを呼び出すまでコネクションを保持します。
 	 * @return クエリオブジェクト
 	 */
 	public abstract Query<E> execute();
@@ -197,7 +283,8 @@ public interface Query<E extends BaseEntity> {
 	abstract int getUpdateCount();
 
 	/**
-	 * ResultSetオブジェクトとして現在の結果を取得します。このメソッドは、1つの結果につき1回だけ呼び出す必要があります。
+	 * ResultSetオブジェクトとして現在の結果を取得します。このメソッドは、1つの結果につき1回だけ呼び出す必要があります。<br>
+	 * 実行時にコネクションを取得したクエリでは、結果を全て読み出したResultSetを返し、コネクションはその時点で返却します。
 	 * @return ResultSetオブジェクトとしての現在の結果。結果が更新カウントであるか、または結果がない場合はnull
 	 * @see java.sql.Statement#getResultSet()
 	 */
@@ -217,6 +304,193 @@ public interface Query<E extends BaseEntity> {
 	 */
 	public abstract List<E> getAll();
 
+	/**
+	 * 検索結果を指定したクラスに変換したリストを返します。<br>
+	 * 列が1つで値の型(String・数値・日付等)を指定した場合はその値を、
+	 * 列数と同じ数の引数を持つコンストラクタがあれば列の順に引数へ渡して生成したオブジェクトを、
+	 * それ以外は引数無しのコンストラクタで生成し、列名(またはそのキャメルケース)と同名のフィールドに値を設定したオブジェクトを返します。<br>
+	 * このメソッドは検索クエリ以外で使用することはできません。
+	 * @param <T> 変換先の型
+	 * @param type 変換先のクラス
+	 * @return 変換したオブジェクトのリスト
+	 * @see #select(String...)
+	 */
+	public abstract <T> List<T> getAll(Class<T> type);
+
+	/**
+	 * 指定したカラムのみを検索し、値を配列で返します。<br>
+	 * クエリは内部で実行するため、execute前に呼び出してください。NULLは0として扱います。
+	 * @param column カラム名
+	 * @return 検索結果の値
+	 */
+	public abstract int[] pluckInt(String column);
+
+	/**
+	 * 指定したカラムのみを検索し、値を配列で返します。<br>
+	 * クエリは内部で実行するため、execute前に呼び出してください。NULLは0として扱います。
+	 * @param column カラム名
+	 * @return 検索結果の値
+	 */
+	public abstract long[] pluckLong(String column);
+
+	/**
+	 * 指定したカラムのみを検索し、値を配列で返します。<br>
+	 * クエリは内部で実行するため、execute前に呼び出してください。NULLは0として扱います。
+	 * @param column カラム名
+	 * @return 検索結果の値
+	 */
+	public abstract double[] pluckDouble(String column);
+
+	/**
+	 * 指定したカラムのみを検索し、値をリストで返します。<br>
+	 * クエリは内部で実行するため、execute前に呼び出してください。
+	 * @param <T> 値の型
+	 * @param column カラム名
+	 * @param type 値のクラス
+	 * @return 検索結果の値
+	 */
+	public abstract <T> List<T> pluck(String column, Class<T> type);
+
+	/**
+	 * 検索条件に一致する件数を返します。<br>
+	 * 内部では
+	 * <pre>SELECT COUNT(*) FROM `E` WHERE ...</pre>
+	 * というクエリを実行します。ソート・開始位置・最大取得件数は使用しません。<br>
+	 * クエリは内部で実行するため、execute前に呼び出してください。
+	 * @return 件数
+	 */
+	public abstract long count();
+
+	/**
+	 * 検索条件に一致する行が存在するか確認します。<br>
+	 * 内部では
+	 * <pre>SELECT 1 FROM `E` WHERE ... LIMIT 1</pre>
+	 * というクエリを実行します。<br>
+	 * クエリは内部で実行するため、execute前に呼び出してください。
+	 * @return 存在する場合はtrue
+	 */
+	public abstract boolean exists();
+
+	/**
+	 * 検索条件に一致する行のカラムの合計を返します。<br>
+	 * クエリは内部で実行するため、execute前に呼び出してください。
+	 * @param <T> 集計結果の型
+	 * @param column カラム名
+	 * @param type 集計結果のクラス
+	 * @return 合計。一致する行が無い場合はnull(プリミティブ型の場合は0)
+	 */
+	public abstract <T> T sum(String column, Class<T> type);
+
+	/**
+	 * 検索条件に一致する行のカラムの最小値を返します。<br>
+	 * クエリは内部で実行するため、execute前に呼び出してください。
+	 * @param <T> 集計結果の型
+	 * @param column カラム名
+	 * @param type 集計結果のクラス
+	 * @return 最小値。一致する行が無い場合はnull(プリミティブ型の場合は0)
+	 */
+	public abstract <T> T min(String column, Class<T> type);
+
+	/**
+	 * 検索条件に一致する行のカラムの最大値を返します。<br>
+	 * クエリは内部で実行するため、execute前に呼び出してください。
+	 * @param <T> 集計結果の型
+	 * @param column カラム名
+	 * @param type 集計結果のクラス
+	 * @return 最大値。一致する行が無い場合はnull(プリミティブ型の場合は0)
+	 */
+	public abstract <T> T max(String column, Class<T> type);
+
+	/**
+	 * カラムの値ごとの件数を返します。<br>
+	 * クエリは内部で実行するため、execute前に呼び出してください。
+	 * @param <K> カラムの値の型
+	 * @param column グループ化するカラム名
+	 * @param keyType カラムの値のクラス
+	 * @return カラムの値と件数のマップ(検索結果の順)
+	 */
+	public abstract <K> Map<K, Long> countBy(String column, Class<K> keyType);
+
+	/**
+	 * カラムの値ごとに集計した結果を返します。<br>
+	 * 内部では
+	 * <pre>SELECT `E`.`column`, aggregate(`E`.`valueColumn`) FROM `E` WHERE ... GROUP BY `E`.`column` ORDER BY ...</pre>
+	 * というクエリを実行します。<br>
+	 * クエリは内部で実行するため、execute前に呼び出してください。
+	 * @param <K> カラムの値の型
+	 * @param <V> 集計結果の型
+	 * @param column グループ化するカラム名
+	 * @param keyType カラムの値のクラス
+	 * @param aggregate 集計関数
+	 * @param valueColumn 集計するカラム名。COUNTの場合はnullを指定すると全ての行を数えます
+	 * @param valueType 集計結果のクラス
+	 * @return カラムの値と集計結果のマップ(検索結果の順)
+	 */
+	public abstract <K, V> Map<K, V> groupBy(String column, Class<K> keyType, Aggregate aggregate, String valueColumn,
+			Class<V> valueType);
+
+	/**
+	 * キーセット(シーク)方式で先頭のページを取得します。<br>
+	 * orderByで指定したカラムの後ろに主キーを加えて並びを一意にし、
+	 * 次のページは前のページの最後の行より後ろの行を検索条件で絞り込んで取得するため、
+	 * OFFSETと異なりページの位置に関わらず一定の速度で取得できます。<br>
+	 * ソートには検索対象テーブルのNULLを含まないカラムのみ指定できます。offset, limitは使用しません。<br>
+	 * このメソッドは検索クエリ以外で使用することはできません。
+	 * @param size 1ページの件数
+	 * @return 先頭のページ
+	 */
+	public abstract Page<E> page(int size);
+
+	/**
+	 * キーセット(シーク)方式で継続トークンの次のページを取得します。<br>
+	 * 検索条件・ソートはトークンを取得したクエリと同じものを指定してください。
+	 * @param size 1ページの件数
+	 * @param token {@link Page#getNextToken()}で取得した継続トークン。nullの場合は先頭のページ
+	 * @return 次のページ
+	 * @see #page(int)
+	 */
+	public abstract Page<E> page(int size, String token);
+
+	/**
+	 * キーセット(シーク)方式で全てのページを先頭から順に取得するIteratorを返します。<br>
+	 * 各ページはnextを呼び出した時点で取得し、ページごとにコネクションを返却します。
+	 * 最後のページは{@link Page#hasNext()}がfalseになります。
+	 * <pre>
+	 * Iterator&lt;Page&lt;E&gt;&gt; pages = DB.find(clazz).orderBy("id").pages(1000);
+	 * while (pages.hasNext()) {
+	 *     pages.next().getItems().forEach(...);
+	 * }
+	 * </pre>
+	 * @param size 1ページの件数
+	 * @return ページのIterator
+	 * @see #page(int)
+	 */
+	public abstract Iterator<Page<E>> pages(int size);
+
+	/**
+	 * 検索結果のエンティティを1行ずつ生成するStreamを返します。<br>
+	 * 未実行の場合はクエリを実行します。<br>
+	 * 全ての要素を読み込むか、Streamをcloseするとステートメントを閉じるため、
+	 * 途中で読み込みを止める場合はtry-with-resources文で使用してください。<br>
+	 * 読み込んだエンティティは同一性マップに登録しないため、セッション内でも他の検索結果とは別のインスタンスになります。<br>
+	 * このメソッドは検索クエリ以外で使用することはできません。
+	 * <pre>
+	 * try (Stream&lt;E&gt; stream = DB.find(clazz).fetchSize(1000).stream()) {
+	 *     stream.forEach(...);
+	 * }
+	 * </pre>
+	 * @return 検索結果エンティティのStream
+	 */
+	public abstract Stream<E> stream();
+
+	/**
+	 * 検索結果のエンティティを1行ずつ生成し、処理を行います。<br>
+	 * 未実行の場合はクエリを実行します。処理の終了後にステートメントを閉じます。<br>
+	 * このメソッドは検索クエリ以外で使用することはできません。
+	 * @param action 各エンティティに対する処理
+	 */
+	public abstract void forEach(Consumer<? super E> action);
+
 
 	/**
 	 * クエリ用ビルダークラス
@@ -236,6 +510,36 @@ public interface Query<E extends BaseEntity> {
 			return new Select<>(con, clazz);
 		}
 
+		/**
+		 * 検索用クエリを生成します。<br>
+		 * コネクションは実行時に取得し、結果の読み出し後にcloseします。
+		 * @param <E> 検索対象テーブルのクラスオブジェクト
+		 * @param connectionSupplier コネクションの取得元
+		 * @param clazz 検索対象テーブルのクラス
+		 * @return 検索用クエリ
+		 */
+		static <E extends BaseEntity> Query<E> createFindQuery(Supplier<Connection> connectionSupplier, Class<E> clazz) {
+			return new Select<>(connectionSupplier, clazz);
+		}
+
+		/**
+		 * 検索用クエリを生成します。<br>
+		 * コネクションは実行時に取得し、結果の読み出し後にcloseします。
+		 * 読み込んだエンティティは実行時に取得した同一性マップのものを再利用します。<br>
+		 * {@link Query#cached(Duration)}を指定した場合は実行時に取得したキャッシュを使用します。
+		 * @param <E> 検索対象テーブルのクラスオブジェクト
+		 * @param connectionSupplier コネクションの取得元
+		 * @param identityMapSupplier 同一性マップの取得元
+		 * @param queryCacheSupplier 検索結果のキャッシュの取得元
+		 * @param clazz 検索対象テーブルのクラス
+		 * @return 検索用クエリ
+		 */
+		static <E extends BaseEntity> Query<E> createFindQuery(Supplier<Connection> connectionSupplier,
+				Supplier<IdentityMap> identityMapSupplier, Supplier<QueryCache> queryCacheSupplier, Class<E> clazz) {
+			return new Select<>(connectionSupplier, clazz).identityMap(identityMapSupplier)
+					.queryCache(queryCacheSupplier);
+		}
+
 		/**
 		 * 登録用クエリを生成します。
 		 * @param <E> 登録するエンティティのクラス
@@ -247,6 +551,20 @@ public interface Query<E extends BaseEntity> {
 			return new Insert<>(con, element);
 		}
 
+		/**
+		 * 登録用クエリを生成します。<br>
+		 * コネクションは実行時に取得し、結果の読み出し後にcloseします。
+		 * @param <E> 登録するエンティティのクラス
+		 * @param connectionSupplier コネクションの取得元
+		 * @param idGenerator 主キーの採番方法の名前 → 採番した値
+		 * @param element 登録するエンティティ
+		 * @return 登録用クエリ
+		 */
+		static <E extends BaseEntity> Query<E> createInsertQuery(Supplier<Connection> connectionSupplier,
+				ToLongFunction<String> idGenerator, E element) {
+			return new Insert<>(connectionSupplier, element).idGenerator(idGenerator);
+		}
+
 		/**
 		 * 更新用クエリを生成します。
 		 * @param <E> 更新するエンティティのクラス
@@ -258,6 +576,45 @@ public interface Query<E extends BaseEntity> {
 			return new Update<>(con, element);
 		}
 
+		/**
+		 * 更新用クエリを生成します。<br>
+		 * コネクションは実行時に取得し、結果の読み出し後にcloseします。
+		 * @param <E> 更新するエンティティのクラス
+		 * @param connectionSupplier コネクションの取得元
+		 * @param element 更新するエンティティ
+		 * @return 更新用クエリ
+		 */
+		static <E extends BaseEntity> Query<E> createUpdateQuery(Supplier<Connection> connectionSupplier, E element) {
+			return new Update<>(connectionSupplier, element);
+		}
+
+		/**
+		 * 登録・更新用クエリを生成します。<br>
+		 * 主キーが同じ行があれば更新し、無ければ登録する1つのクエリをDBMSごとの構文で生成します。
+		 * @param <E> 登録・更新するエンティティのクラス
+		 * @param con コネクション
+		 * @param type データベース種別
+		 * @param element 登録・更新するエンティティ(主キーの値が全て必要)
+		 * @return 登録・更新用クエリ
+		 */
+		public static <E extends BaseEntity> Query<E> createUpsertQuery(Connection con, Type type, E element) {
+			return new Upsert<>(con, type, element);
+		}
+
+		/**
+		 * 登録・更新用クエリを生成します。<br>
+		 * コネクションは実行時に取得し、結果の読み出し後にcloseします。
+		 * @param <E> 登録・更新するエンティティのクラス
+		 * @param connectionSupplier コネクションの取得元
+		 * @param type データベース種別
+		 * @param element 登録・更新するエンティティ(主キーの値が全て必要)
+		 * @return 登録・更新用クエリ
+		 */
+		static <E extends BaseEntity> Query<E> createUpsertQuery(Supplier<Connection> connectionSupplier, Type type,
+				E element) {
+			return new Upsert<>(connectionSupplier, type, element);
+		}
+
 		/**
 		 * 削除用クエリを生成します。
 		 * @param <E> 削除するエンティティのクラス
@@ -269,6 +626,18 @@ public interface Query<E extends BaseEntity> {
 			return new Delete<>(con, element);
 		}
 
+		/**
+		 * 削除用クエリを生成します。<br>
+		 * コネクションは実行時に取得し、結果の読み出し後にcloseします。
+		 * @param <E> 削除するエンティティのクラス
+		 * @param connectionSupplier コネクションの取得元
+		 * @param element 削除するエンティティ
+		 * @return 削除用クエリ
+		 */
+		static <E extends BaseEntity> Query<E> createDeleteQuery(Supplier<Connection> connectionSupplier, E element) {
+			return new Delete<>(connectionSupplier, element);
+		}
+
 		/**
 		 * 生クエリを生成します。
 		 * @param <E> 操作するデーブルのクラス
@@ -281,5 +650,21 @@ public interface Query<E extends BaseEntity> {
 		public static <E extends BaseEntity> Query<E> createRawQuery(Connection con, Class<E> clazz, String query) {
 			return new RawQuery<>(con, clazz, query);
 		}
+
+		/**
+		 * 生クエリを生成します。<br>
+		 * コネクションは実行時に取得し、結果の読み出し後にcloseします。
+		 * @param <E> 操作するデーブルのクラス
+		 * @param connectionSupplier コネクションの取得元
+		 * @param clazz 操作するデーブルのクラス
+		 * @param query 実行するクエリ
+		 * @param afterUpdate 更新系のクエリを実行した後に実行する処理
+		 * @return 生クエリ
+		 */
+		@Deprecated
+		static <E extends BaseEntity> Query<E> createRawQuery(Supplier<Connection> connectionSupplier, Class<E> clazz,
+				String query, Runnable afterUpdate) {
+			return new RawQuery<>(connectionSupplier, clazz, query).afterUpdate(afterUpdate);
+		}
 	}
 }
@@ -0,0 +1,190 @@
+package jp.natsukishina.orm4j8;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+import jp.natsukishina.orm4j8.EntityMetadata.RelationMetadata;
+import jp.natsukishina.orm4j8.annotations.HasOne;
+
+/**
+ * {@link Query#cached(Duration)}を指定した検索の結果を保持するクラス<br>
+ * 生成したクエリとパラメータをキーにし、検索対象テーブルとHasOneで辿れるテーブルのいずれかが更新された場合に破棄します。<br>
+ * 検索結果のエンティティは変更可能なため、保持する際と取得する際にそれぞれ複製します。
+ * 最大数を超えた場合は最後に参照されてから最も時間が経ったものから破棄します(LRU)。
+ * @author 417.72KI
+ *
+ */
+final class QueryCache {
+	/** 保持する検索結果の最大数のデフォルト値 */
+	static final int DEFAULT_MAX_SIZE = 1000;
+
+	private static final ClassValue<Set<String>> TABLES = new ClassValue<Set<String>>() {
+		@Override
+		protected Set<String> computeValue(Class<?> type) {
+			Set<String> tables = new HashSet<>();
+			collectTables(type, tables, new HashSet<>());
+			return Collections.unmodifiableSet(tables);
+		}
+	};
+
+	private final int maxSize;
+	/** キー → 検索結果。参照順 */
+	private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	/** 破棄した回数 */
+	private long invalidationCount = 0;
+
+	/**
+	 * @param maxSize 保持する検索結果の最大数
+	 */
+	QueryCache(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param key {@link #keyOf(Class, String, List)}で生成したキー
+	 * @return 検索結果を複製したもの。無い場合はnull
+	 */
+	synchronized List<Object> get(List<Object> key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (System.nanoTime() - entry.expiresAt >= 0) {
+			entries.remove(key);
+			return null;
+		}
+		return copy(entry.result);
+	}
+
+	/**
+	 * データベースから読み込む前に取得し、{@link #put(List, Class, List, Duration, long)}に渡してください。
+	 * @return 現在までに破棄した回数
+	 */
+	synchronized long stamp() {
+		return invalidationCount;
+	}
+
+	/**
+	 * 検索結果を複製して保持します。<br>
+	 * 読み込みの間に破棄された場合は、読み込んだ値が古い可能性があるため保持しません。
+	 * @param key {@link #keyOf(Class, String, List)}で生成したキー
+	 * @param clazz 検索対象テーブルのクラス
+	 * @param result 検索結果
+	 * @param ttl 保持する期間
+	 * @param stamp 読み込む前に{@link #stamp()}で取得した値
+	 */
+	synchronized void put(List<Object> key, Class<?> clazz, List<?> result, Duration ttl, long stamp) {
+		if (stamp != invalidationCount) {
+			return;
+		}
+		entries.put(key, new Entry(TABLES.get(clazz), copy(result), System.nanoTime() + ttl.toNanos()));
+		for (Iterator<Entry> it = entries.values().iterator(); entries.size() > maxSize;) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * テーブルを参照する検索結果を破棄します。
+	 * @param tableName 更新したテーブルの物理名
+	 */
+	synchronized void invalidate(String tableName) {
+		entries.values().removeIf(entry -> entry.tables.contains(tableName));
+		invalidationCount++;
+	}
+
+	/**
+	 * 保持している全ての検索結果を破棄します。
+	 */
+	synchronized void invalidateAll() {
+		entries.clear();
+		invalidationCount++;
+	}
+
+	/**
+	 * @param clazz 検索対象テーブルのクラス
+	 * @param sql 生成したクエリ
+	 * @param params クエリにセットするパラメータ
+	 * @return キャッシュのキー
+	 */
+	static List<Object> keyOf(Class<?> clazz, String sql, List<Object> params) {
+		List<Object> key = new ArrayList<>(params.size() + 2);
+		key.add(clazz);
+		key.add(sql);
+		key.addAll(params);
+		return key;
+	}
+
+	private static void collectTables(Class<?> clazz, Set<String> tables, Set<Class<?>> visited) {
+		if (!visited.add(clazz)) {
+			return;
+		}
+		EntityMetadata metadata = EntityMetadata.of(clazz);
+		tables.add(metadata.getTableName());
+		for (RelationMetadata<HasOne> relation : metadata.getHasOneRelations()) {
+			collectTables(relation.targetClass, tables, visited);
+		}
+	}
+
+	private static List<Object> copy(List<?> result) {
+		Map<Object, Object> copied = new IdentityHashMap<>();
+		List<Object> list = new ArrayList<>(result.size());
+		for (Object entity : result) {
+			list.add(copy(entity, copied));
+		}
+		return list;
+	}
+
+	/**
+	 * カラムとHasOneのフィールドを複製します。HasManyのフィールドは複製しません。
+	 */
+	private static Object copy(Object entity, Map<Object, Object> copied) {
+		if (entity == null) {
+			return null;
+		}
+		Object copy = copied.get(entity);
+		if (copy != null) {
+			return copy;
+		}
+		EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+		copy = metadata.newInstance();
+		copied.put(entity, copy);
+		for (ColumnMetadata column : metadata.getColumns()) {
+			Object value = column.accessor.get(entity);
+			column.accessor.set(copy, value instanceof Date ? ((Date) value).clone() : value);
+		}
+		for (RelationMetadata<HasOne> relation : metadata.getHasOneRelations()) {
+			relation.accessor.set(copy, copy(relation.accessor.get(entity), copied));
+		}
+		return copy;
+	}
+
+	/**
+	 * 1件の検索結果
+	 */
+	private static final class Entry {
+		/** 検索結果が参照するテーブル */
+		private final Set<String> tables;
+		private final List<Object> result;
+		private final long expiresAt;
+
+		private Entry(Set<String> tables, List<Object> result, long expiresAt) {
+			this.tables = tables;
+			this.result = result;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -1,36 +1,113 @@
 package jp.natsukishina.orm4j8;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import jp.natsukishina.orm4j8.entity.BaseEntity;
 
 class RawQuery<E extends BaseEntity> extends Select<E> {
 	private final String query;
+	/** 更新系のクエリを実行した後に実行する処理 */
+	private Runnable afterUpdate = () -> {
+	};
 
 	RawQuery(Connection con, Class<E> clazz, String query) {
 		super(con, clazz);
 		this.query = query;
 	}
 
+	RawQuery(Supplier<Connection> connectionSupplier, Class<E> clazz, String query) {
+		super(connectionSupplier, clazz);
+		this.query = query;
+	}
+
+	/**
+	 * 更新系のクエリを実行した後に実行する処理を設定します。<br>
+	 * 検索系のクエリや実行に失敗した場合は実行しません。
+	 * @param afterUpdate 実行する処理
+	 * @return このクエリ
+	 */
+	RawQuery<E> afterUpdate(Runnable afterUpdate) {
+		this.afterUpdate = afterUpdate;
+		return this;
+	}
+
+	@Override
+	protected void afterExecute(PreparedStatement pstmt) throws SQLException {
+		if (getUpdateCount() != -1) {
+			afterUpdate.run();
+		}
+	}
+
 	@Override
 	public Query<E> where(String column, String op, Object actual) {
 		throw new UnsupportedOperationException();
 	}
 
+	@Override
+	public Query<E> select(String... columns) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public long count() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean exists() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> T sum(String column, Class<T> type) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> T min(String column, Class<T> type) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> T max(String column, Class<T> type) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <K, V> Map<K, V> groupBy(String column, Class<K> keyType, Aggregate aggregate, String valueColumn,
+			Class<V> valueType) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Page<E> page(int size, String token) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<Page<E>> pages(int size) {
+		throw new UnsupportedOperationException();
+	}
+
 	@Override
 	public boolean result() {
+		if (getUpdateCount() != -1) {
+			return true;
+		}
 		try {
-			int updateCount = getStatement().getUpdateCount();
-			if (updateCount != -1) {
-				return true;
-			}
 			return getStatement().getResultSet() != null;
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			close();
 		}
 	}
 
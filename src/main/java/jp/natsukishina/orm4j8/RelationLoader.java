@@ -0,0 +1,143 @@
+package jp.natsukishina.orm4j8;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+import jp.natsukishina.orm4j8.EntityMetadata.RelationMetadata;
+import jp.natsukishina.orm4j8.annotations.HasMany;
+import jp.natsukishina.orm4j8.annotations.HasOne;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * 複数のエンティティのHasMany・HasOneフィールドをまとめてロードするクラス<br>
+ * 親エンティティの対象カラムの値を
+ * <pre>WHERE `target`.`foreign_key` IN (?, ?, ...)</pre>
+ * で{@value #CHUNK_SIZE}件ずつ検索し、外部キーをキーとしたマップで各親エンティティに振り分けます。
+ * @author 417.72KI
+ *
+ */
+final class RelationLoader {
+	/** 1回のクエリで指定する値の最大数 */
+	static final int CHUNK_SIZE = 1000;
+
+	private RelationLoader() {
+	}
+
+	/**
+	 * @param database ロード元のデータベース
+	 * @param entities 親エンティティ(全て同じクラス)
+	 * @param targetClass 1:nの関係になるクラス
+	 */
+	static void loadHasMany(Database database, List<? extends BaseEntity> entities,
+			Class<? extends BaseEntity> targetClass) {
+		Class<?> parentClass = parentClass(entities);
+		if (parentClass == null) {
+			return;
+		}
+		RelationMetadata<HasMany> relation = EntityMetadata.of(parentClass).getHasManyRelations().stream()
+				.filter(r -> r.targetClass.equals(targetClass)).findFirst()
+				.orElseThrow(() -> new DBException(parentClass + " doesn't have HasMany field"));
+		if (!relation.field.getType().equals(List.class)) {
+			throw new DBException("HasMany field must be List");
+		}
+		load(entities, relation, true,
+				chunk -> database.find(targetClass).whereIn(relation.foreignKey, chunk).execute().getAll());
+	}
+
+	/**
+	 * @param database ロード元のデータベース
+	 * @param entities 親エンティティ(全て同じクラス)
+	 * @param targetClass 1:1の関係になるクラス
+	 */
+	static void loadHasOne(Database database, List<? extends BaseEntity> entities,
+			Class<? extends BaseEntity> targetClass) {
+		Class<?> parentClass = parentClass(entities);
+		if (parentClass == null) {
+			return;
+		}
+		RelationMetadata<HasOne> relation = EntityMetadata.of(parentClass).getHasOneRelations().stream()
+				.filter(r -> r.targetClass.equals(targetClass)).findFirst()
+				.orElseThrow(() -> new DBException(parentClass + " doesn't have HasOne field"));
+		load(entities, relation, false,
+				chunk -> database.find(targetClass).whereIn(relation.foreignKey, chunk).execute().getAll());
+	}
+
+	/**
+	 * @return 親エンティティのクラス。空の場合はnull
+	 */
+	private static Class<?> parentClass(List<? extends BaseEntity> entities) {
+		if (entities.isEmpty()) {
+			return null;
+		}
+		Class<?> parentClass = entities.get(0).getClass();
+		if (entities.stream().anyMatch(e -> e.getClass() != parentClass)) {
+			throw new DBException("entities must be instances of the same class: " + parentClass.getName());
+		}
+		return parentClass;
+	}
+
+	/**
+	 * @param entities 親エンティティ(全て同じクラス)
+	 * @param relation ロードするリレーション
+	 * @param many HasManyの場合はtrue、HasOneの場合はfalse
+	 * @param finder 外部キーの値の一覧から子エンティティを検索する処理
+	 */
+	static void load(List<? extends BaseEntity> entities, RelationMetadata<?> relation, boolean many,
+			Function<List<Object>, List<? extends BaseEntity>> finder) {
+		if (entities.isEmpty()) {
+			return;
+		}
+		Class<?> parentClass = entities.get(0).getClass();
+		ColumnMetadata targetColumn = EntityMetadata.of(parentClass).getColumn(relation.targetColumn);
+		if (targetColumn == null) {
+			throw new DBException(parentClass + " doesn't have column " + relation.targetColumn);
+		}
+		ColumnMetadata foreignKey = EntityMetadata.of(relation.targetClass).getColumn(relation.foreignKey);
+		if (foreignKey == null) {
+			throw new DBException(relation.targetClass + " doesn't have column " + relation.foreignKey);
+		}
+
+		Map<Object, Object> keys = new LinkedHashMap<>();
+		for (BaseEntity entity : entities) {
+			Object value = targetColumn.accessor.get(entity);
+			if (value != null) {
+				keys.putIfAbsent(hashKey(value), value);
+			}
+		}
+
+		Map<Object, List<BaseEntity>> children = new HashMap<>();
+		List<Object> values = new ArrayList<>(keys.values());
+		for (int from = 0; from < values.size(); from += CHUNK_SIZE) {
+			List<Object> chunk = values.subList(from, Math.min(from + CHUNK_SIZE, values.size()));
+			finder.apply(chunk).stream().filter(Objects::nonNull).forEach(child -> children
+					.computeIfAbsent(hashKey(foreignKey.accessor.get(child)), k -> new ArrayList<>()).add(child));
+		}
+
+		for (BaseEntity entity : entities) {
+			Object value = targetColumn.accessor.get(entity);
+			List<BaseEntity> list = value == null ? null : children.get(hashKey(value));
+			if (many) {
+				relation.accessor.set(entity, list == null ? new ArrayList<>() : new ArrayList<>(list));
+			} else {
+				relation.accessor.set(entity, list == null ? null : list.get(0));
+			}
+		}
+	}
+
+	/**
+	 * 親と子でカラムの型が異なっても一致するよう、整数はlongに揃える
+	 */
+	private static Object hashKey(Object value) {
+		if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			return ((Number) value).longValue();
+		}
+		return value;
+	}
+}
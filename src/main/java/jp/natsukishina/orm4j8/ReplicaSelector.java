@@ -0,0 +1,14 @@
+package jp.natsukishina.orm4j8;
+
+/**
+ * 読み込み用レプリカの選択方法を定義するenum型
+ * @author 417.72KI
+ *
+ */
+public enum ReplicaSelector {
+	/** レプリカを順番に使用します */
+	ROUND_ROBIN,
+	/** 使用中のコネクションが最も少ないレプリカを使用します */
+	LEAST_LOADED,
+	;
+}
@@ -0,0 +1,123 @@
+package jp.natsukishina.orm4j8;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 読み込み用レプリカの集合<br>
+ * 選択方法に従ってレプリカを選び、取得に失敗した場合は次のレプリカを試します。
+ * @author 417.72KI
+ *
+ */
+class ReplicaSet {
+	private final Logger log = LoggerFactory.getLogger(getClass());
+	private final ReplicaSelector selector;
+	private final List<Replica> replicas = new ArrayList<>();
+	private final AtomicInteger next = new AtomicInteger();
+
+	ReplicaSet(ReplicaSelector selector, List<ConnectionProvider> providers) {
+		if (selector == null) {
+			throw new IllegalArgumentException("selector must not be null");
+		}
+		if (providers == null || providers.isEmpty()) {
+			throw new IllegalArgumentException("replicas must not be empty");
+		}
+		this.selector = selector;
+		providers.forEach(provider -> {
+			if (provider == null) {
+				throw new IllegalArgumentException("replica must not be null");
+			}
+			replicas.add(new Replica(provider));
+		});
+	}
+
+	/**
+	 * レプリカからコネクションを取得します。
+	 * @return コネクション。全てのレプリカで取得に失敗した場合はnull
+	 */
+	Connection getConnection() {
+		int size = replicas.size();
+		int start = selectIndex();
+		for (int i = 0; i < size; i++) {
+			Replica replica = replicas.get((start + i) % size);
+			try {
+				return replica.getConnection();
+			} catch (SQLException | RuntimeException e) {
+				log.warn("failed to get connection from replica", e);
+			}
+		}
+		return null;
+	}
+
+	private int selectIndex() {
+		switch (selector) {
+		case LEAST_LOADED:
+			int index = 0;
+			int min = Integer.MAX_VALUE;
+			for (int i = 0; i < replicas.size(); i++) {
+				int load = replicas.get(i).inFlight.get();
+				if (load < min) {
+					min = load;
+					index = i;
+				}
+			}
+			return index;
+		case ROUND_ROBIN:
+		default:
+			return Math.floorMod(next.getAndIncrement(), replicas.size());
+		}
+	}
+
+	void close() {
+		replicas.forEach(replica -> replica.provider.close());
+	}
+
+	/**
+	 * レプリカと使用中のコネクション数
+	 */
+	private static class Replica {
+		private final ConnectionProvider provider;
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		private Replica(ConnectionProvider provider) {
+			this.provider = provider;
+		}
+
+		private Connection getConnection() throws SQLException {
+			Connection con = provider.getConnection();
+			inFlight.incrementAndGet();
+			AtomicBoolean closed = new AtomicBoolean(false);
+			return (Connection) Proxy.newProxyInstance(ReplicaSet.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+						switch (method.getName()) {
+						case "close":
+							if (closed.compareAndSet(false, true)) {
+								inFlight.decrementAndGet();
+								con.close();
+							}
+							return null;
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						default:
+							break;
+						}
+						try {
+							return method.invoke(con, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					});
+		}
+	}
+}
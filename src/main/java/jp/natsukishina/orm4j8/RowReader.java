@@ -0,0 +1,301 @@
+package jp.natsukishina.orm4j8;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+import jp.natsukishina.orm4j8.EntityMetadata.RelationMetadata;
+import jp.natsukishina.orm4j8.annotations.HasOne;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+
+/**
+ * 検索結果の1行からエンティティを生成するクラス<br>
+ * SELECT句の並び(エンティティのカラム、続いてJOINで取得するHasOneの結合先のカラムを深さ優先で)から列番号を1度だけ計算し、
+ * 各カラムは列番号と型に応じたgetterで読み込みます。<br>
+ * 列名で読み込まないため、結合先に同名のカラムがあっても取り違えません。
+ * @author 417.72KI
+ *
+ */
+final class RowReader {
+	private final EntityMetadata metadata;
+	/** 先頭カラムの直前の列番号 */
+	private final int offset;
+	private final CellReader[] cellReaders;
+	private final List<RelationMetadata<HasOne>> relations;
+	private final List<RowReader> children;
+	/** このエンティティと結合先が使用する列数 */
+	private final int width;
+	/** 一部のカラムのみを読み込む場合はtrue */
+	private final boolean partial;
+	/** 主キーの列番号(offsetからの相対位置) */
+	private final int[] primaryIndexes;
+	/** 主キーの読み込み処理(NULLを判定するためプリミティブ型もラッパー型で読み込む) */
+	private final ValueReader[] primaryReaders;
+
+	/**
+	 * 指定したカラムのみを読み込むインスタンス(結合先は読み込まない)
+	 * @param metadata エンティティのテーブル定義
+	 * @param columns SELECT句に並べたカラム
+	 */
+	private RowReader(EntityMetadata metadata, List<ColumnMetadata> columns) {
+		this.metadata = metadata;
+		this.offset = 0;
+		this.cellReaders = columns.stream().map(RowReader::cellReader).toArray(CellReader[]::new);
+		this.relations = Collections.emptyList();
+		this.children = Collections.emptyList();
+		this.width = columns.size();
+		this.partial = true;
+		this.primaryIndexes = new int[0];
+		this.primaryReaders = new ValueReader[0];
+	}
+
+	private RowReader(FetchPlan.Node node, int offset) {
+		this.metadata = node.metadata;
+		this.offset = offset;
+		List<ColumnMetadata> columns = metadata.getColumns();
+		this.cellReaders = columns.stream().map(RowReader::cellReader).toArray(CellReader[]::new);
+		List<RelationMetadata<HasOne>> relations = new ArrayList<>();
+		List<RowReader> children = new ArrayList<>();
+		int position = offset + columns.size();
+		for (FetchPlan.Node childNode : node.joinedChildren()) {
+			RowReader child = new RowReader(childNode, position);
+			relations.add(childNode.relation);
+			children.add(child);
+			position += child.width;
+		}
+		this.relations = Collections.unmodifiableList(relations);
+		this.children = Collections.unmodifiableList(children);
+		this.width = position - offset;
+		this.partial = false;
+		List<ColumnMetadata> primaryColumns = metadata.getPrimaryColumns();
+		this.primaryIndexes = primaryColumns.stream().mapToInt(c -> columns.indexOf(c) + 1).toArray();
+		this.primaryReaders = primaryColumns.stream().map(c -> valueReader(wrap(c.type))).toArray(ValueReader[]::new);
+	}
+
+	/**
+	 * @param plan 結合先の取得方法
+	 * @return 検索結果を読み込むインスタンス
+	 */
+	static RowReader of(FetchPlan plan) {
+		return new RowReader(plan.getRoot(), 0);
+	}
+
+	/**
+	 * @param clazz 検索対象テーブルのクラス
+	 * @param columns SELECT句に並べたカラム
+	 * @return 指定したカラムのみを読み込むインスタンス
+	 */
+	static RowReader of(Class<?> clazz, List<ColumnMetadata> columns) {
+		return new RowReader(EntityMetadata.of(clazz), columns);
+	}
+
+	/**
+	 * 検索結果の現在行からエンティティを生成します。
+	 * @param rs 検索結果
+	 * @return 生成したエンティティ
+	 * @throws SQLException 値の読み込みに失敗した場合
+	 */
+	Object read(ResultSet rs) throws SQLException {
+		return read(rs, null);
+	}
+
+	/**
+	 * 検索結果の現在行からエンティティを生成します。<br>
+	 * 同一性マップに同じ主キーのエンティティがある場合は、生成せずにそのインスタンスを返します。
+	 * @param rs 検索結果
+	 * @param identityMap 同一性マップ。使用しない場合はnull
+	 * @return 生成したエンティティ
+	 * @throws SQLException 値の読み込みに失敗した場合
+	 */
+	@SuppressWarnings("unchecked")
+	Object read(ResultSet rs, IdentityMap identityMap) throws SQLException {
+		Object key = identityMap == null || partial ? null : readKey(rs);
+		if (key != null) {
+			Object cached = identityMap.get(metadata.getEntityClass(), key);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		Object entity = metadata.newInstance();
+		EntityMapper<BaseEntity> mapper = (EntityMapper<BaseEntity>) metadata.getMapper();
+		if (mapper != null && !partial) {
+			mapper.readRow(rs, offset, (BaseEntity) entity);
+		} else {
+			for (int i = 0; i < cellReaders.length; i++) {
+				cellReaders[i].read(rs, offset + i + 1, entity);
+			}
+		}
+		for (int i = 0; i < children.size(); i++) {
+			relations.get(i).accessor.set(entity, children.get(i).read(rs, identityMap));
+		}
+		if (key != null) {
+			identityMap.putIfAbsent(metadata.getEntityClass(), key, entity);
+		}
+		return entity;
+	}
+
+	/**
+	 * @return 現在行の主キーの値。複合主キーの場合はList。主キーが無いかNULLを含む場合はnull
+	 */
+	private Object readKey(ResultSet rs) throws SQLException {
+		if (primaryReaders.length == 0) {
+			return null;
+		}
+		Object[] values = new Object[primaryReaders.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = primaryReaders[i].read(rs, offset + primaryIndexes[i]);
+			if (values[i] == null) {
+				return null;
+			}
+		}
+		return values.length == 1 ? values[0] : Arrays.asList(values);
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		if (type == int.class) {
+			return Integer.class;
+		} else if (type == long.class) {
+			return Long.class;
+		} else if (type == double.class) {
+			return Double.class;
+		} else if (type == boolean.class) {
+			return Boolean.class;
+		}
+		return type;
+	}
+
+	/**
+	 * 1カラム分の読み込み処理
+	 */
+	@FunctionalInterface
+	private interface CellReader {
+		void read(ResultSet rs, int index, Object entity) throws SQLException;
+	}
+
+	/**
+	 * 1列分の値の読み込み処理
+	 */
+	@FunctionalInterface
+	interface ValueReader {
+		Object read(ResultSet rs, int index) throws SQLException;
+	}
+
+	/**
+	 * 型に応じたgetterで値を読み込む処理を取得します。<br>
+	 * プリミティブ型の場合、NULLは0またはfalseとして読み込みます。
+	 * @param type 読み込む値の型
+	 * @return 値の読み込み処理
+	 */
+	static ValueReader valueReader(Class<?> type) {
+		if (type == int.class) {
+			return (rs, index) -> rs.getInt(index);
+		} else if (type == long.class) {
+			return (rs, index) -> rs.getLong(index);
+		} else if (type == double.class) {
+			return (rs, index) -> rs.getDouble(index);
+		} else if (type == boolean.class) {
+			return (rs, index) -> rs.getBoolean(index);
+		} else if (type == Integer.class) {
+			return (rs, index) -> {
+				int value = rs.getInt(index);
+				return rs.wasNull() ? null : value;
+			};
+		} else if (type == Long.class) {
+			return (rs, index) -> {
+				long value = rs.getLong(index);
+				return rs.wasNull() ? null : value;
+			};
+		} else if (type == Double.class) {
+			return (rs, index) -> {
+				double value = rs.getDouble(index);
+				return rs.wasNull() ? null : value;
+			};
+		} else if (type == Boolean.class) {
+			return (rs, index) -> {
+				boolean value = rs.getBoolean(index);
+				return rs.wasNull() ? null : value;
+			};
+		} else if (type == String.class) {
+			return (rs, index) -> rs.getString(index);
+		} else if (type == LocalDate.class) {
+			return (rs, index) -> {
+				java.sql.Date value = rs.getDate(index);
+				return value == null ? null : DBUtil.toLocalDate(value);
+			};
+		} else if (type == LocalTime.class) {
+			return (rs, index) -> {
+				java.sql.Time value = rs.getTime(index);
+				return value == null ? null : DBUtil.toLocalTime(value);
+			};
+		} else if (type == LocalDateTime.class) {
+			return (rs, index) -> {
+				java.sql.Timestamp value = rs.getTimestamp(index);
+				return value == null ? null : DBUtil.toLocalDateTime(value);
+			};
+		}
+		return (rs, index) -> {
+			Object columnValue = rs.getObject(index);
+			if (columnValue instanceof java.sql.Date) {
+				columnValue = DBUtil.toLocalDate((java.sql.Date) columnValue);
+				if (type.equals(Date.class)) {
+					columnValue = DBUtil.toDate((LocalDate) columnValue);
+				}
+			} else if (columnValue instanceof java.sql.Time) {
+				columnValue = DBUtil.toLocalTime((java.sql.Time) columnValue);
+				if (type.equals(Date.class)) {
+					columnValue = DBUtil.toDate((LocalTime) columnValue);
+				}
+			} else if (columnValue instanceof java.sql.Timestamp) {
+				columnValue = DBUtil.toLocalDateTime((java.sql.Timestamp) columnValue);
+				if (type.equals(Date.class)) {
+					columnValue = DBUtil.toDate((LocalDateTime) columnValue);
+				}
+			}
+			return columnValue;
+		};
+	}
+
+	private static CellReader cellReader(ColumnMetadata column) {
+		FieldAccessor accessor = column.accessor;
+		Class<?> type = column.type;
+		if (type == int.class) {
+			return (rs, index, entity) -> {
+				int value = rs.getInt(index);
+				if (!rs.wasNull()) {
+					accessor.setInt(entity, value);
+				}
+			};
+		} else if (type == long.class) {
+			return (rs, index, entity) -> {
+				long value = rs.getLong(index);
+				if (!rs.wasNull()) {
+					accessor.setLong(entity, value);
+				}
+			};
+		} else if (type == double.class) {
+			return (rs, index, entity) -> {
+				double value = rs.getDouble(index);
+				if (!rs.wasNull()) {
+					accessor.setDouble(entity, value);
+				}
+			};
+		} else if (type == boolean.class) {
+			return (rs, index, entity) -> {
+				boolean value = rs.getBoolean(index);
+				if (!rs.wasNull()) {
+					accessor.setBoolean(entity, value);
+				}
+			};
+		}
+		ValueReader reader = valueReader(type);
+		return (rs, index, entity) -> accessor.set(entity, reader.read(rs, index));
+	}
+}
@@ -1,21 +1,36 @@
 package jp.natsukishina.orm4j8;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.Parameter;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import jp.natsukishina.orm4j8.annotations.HasOne;
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+import jp.natsukishina.orm4j8.annotations.FetchType;
 import jp.natsukishina.orm4j8.entity.BaseEntity;
+import jp.natsukishina.orm4j8.exception.DBException;
 
 class Select<E extends BaseEntity> extends AbstractQuery<E> {
 
@@ -23,11 +38,128 @@ class Select<E extends BaseEntity> extends AbstractQuery<E> {
 	private final List<Order<E>> orderList = new ArrayList<>(0);
 	private int offset = 0;
 	private int limit = -1;
+	private int fetchSize = 0;
+	/** 取得するカラム。nullの場合は全てのカラムと結合先を取得する */
+	private List<ColumnMetadata> projection = null;
+	private RowReader rowReader = null;
+	/** 集計する場合のSELECT句 */
+	private String aggregateSelect = null;
+	/** GROUP BYするカラム */
+	private String groupByColumn = null;
+	/** 存在確認の場合はtrue */
+	private boolean existsQuery = false;
+	/** キーセット方式のページングのソートキー。nullの場合はページングしない */
+	private Keyset keyset = null;
+	/** 前のページの最後の行のソートキー。nullの場合は先頭のページ */
+	private Object[] keysetValues = null;
+	/** 結合先のクラスごとの取得方法 */
+	private final Map<Class<?>, FetchType> fetchTypes = new HashMap<>(0);
+	private int maxFetchDepth = FetchPlan.DEFAULT_MAX_DEPTH;
+	/** 呼び出し元のクエリで既に辿ったクラス */
+	private Set<Class<?>> fetchAncestors = Collections.emptySet();
+	/** 1行ずつ読み込む場合はtrue(SELECTを指定した結合先もJOINで取得する) */
+	private boolean streaming = false;
+	private FetchPlan fetchPlan = null;
+	/** 同一性マップの取得元 */
+	private Supplier<IdentityMap> identityMapSupplier = () -> null;
+	/** 検索結果のキャッシュの取得元 */
+	private Supplier<QueryCache> queryCacheSupplier = () -> null;
+	/** 検索結果をキャッシュする期間。nullの場合はキャッシュしない */
+	private Duration cacheTtl = null;
+	/** 実行時に取得したキャッシュ。キャッシュしない場合はnull */
+	private QueryCache queryCache = null;
+	private List<Object> cacheKey = null;
+	private long cacheStamp = 0;
+	/** キャッシュから取得した検索結果。データベースに問い合わせた場合はnull */
+	private List<E> cachedResult = null;
+	/** カーソル取得のためにautoCommitを無効にした場合はtrue */
+	private boolean restoreAutoCommit = false;
 
 	Select(Connection con, Class<E> clazz) {
 		super(con, clazz);
 	}
 
+	Select(Supplier<Connection> connectionSupplier, Class<E> clazz) {
+		super(connectionSupplier, clazz);
+	}
+
+	/**
+	 * 読み込んだエンティティを同一性マップのものと共有する
+	 * @param identityMapSupplier 同一性マップの取得元
+	 * @return このクエリ
+	 */
+	Select<E> identityMap(Supplier<IdentityMap> identityMapSupplier) {
+		this.identityMapSupplier = identityMapSupplier;
+		return this;
+	}
+
+	/**
+	 * {@link #cached(Duration)}で使用するキャッシュを設定する
+	 * @param queryCacheSupplier 検索結果のキャッシュの取得元
+	 * @return このクエリ
+	 */
+	Select<E> queryCache(Supplier<QueryCache> queryCacheSupplier) {
+		this.queryCacheSupplier = queryCacheSupplier;
+		return this;
+	}
+
+	@Override
+	public Query<E> cached(Duration ttl) {
+		if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+			throw new IllegalArgumentException("ttl must be positive");
+		}
+		this.cacheTtl = ttl;
+		return this;
+	}
+
+	@Override
+	public Query<E> execute() {
+		queryCache = null;
+		cachedResult = null;
+		if (cacheTtl != null && projection == null && aggregateSelect == null && groupByColumn == null
+				&& !existsQuery && keyset == null && !streaming) {
+			queryCache = queryCacheSupplier.get();
+		}
+		if (queryCache != null) {
+			cacheKey = QueryCache.keyOf(clazz, buildQuery(), buildParamsListForPreparedStatement());
+			cachedResult = fromCache(queryCache.get(cacheKey));
+			if (cachedResult != null) {
+				return this;
+			}
+			cacheStamp = queryCache.stamp();
+		}
+		return super.execute();
+	}
+
+	/**
+	 * @return キャッシュから取得した検索結果。同一性マップに同じ主キーのエンティティがあればそれに置き換える
+	 */
+	@SuppressWarnings("unchecked")
+	private List<E> fromCache(List<Object> result) {
+		if (result == null) {
+			return null;
+		}
+		IdentityMap identityMap = identityMapSupplier.get();
+		if (identityMap != null) {
+			EntityMetadata metadata = EntityMetadata.of(clazz);
+			result.replaceAll(entity -> {
+				Object key = IdentityMap.keyOf(metadata, entity);
+				return key == null ? entity : identityMap.putIfAbsent(clazz, key, entity);
+			});
+		}
+		return (List<E>) (List<?>) result;
+	}
+
+	/**
+	 * キャッシュから取得した場合は、データベースに問い合わせ直す
+	 */
+	private void executeIfCached() {
+		if (cachedResult != null) {
+			cacheTtl = null;
+			execute();
+		}
+	}
+
 	@Override
 	public Query<E> where(Where<E> where) {
 		if (where == null) {
@@ -86,37 +218,169 @@ class Select<E extends BaseEntity> extends AbstractQuery<E> {
 		return this;
 	}
 
+	@Override
+	public Query<E> select(String... columns) {
+		if (columns == null || columns.length == 0) {
+			throw new IllegalArgumentException("columns must not be empty");
+		}
+		checkNotExecuted();
+		List<ColumnMetadata> projection = new ArrayList<>(columns.length);
+		for (String column : columns) {
+			projection.add(getColumn(column));
+		}
+		this.projection = projection;
+		this.rowReader = null;
+		return this;
+	}
+
+	@Override
+	public Query<E> fetch(Class<? extends BaseEntity> targetClass, FetchType fetchType) {
+		if (targetClass == null) {
+			throw new IllegalArgumentException("targetClass must not be null");
+		}
+		if (fetchType == null) {
+			throw new IllegalArgumentException("fetchType must not be null");
+		}
+		checkNotExecuted();
+		fetchTypes.put(targetClass, fetchType);
+		resetFetchPlan();
+		return this;
+	}
+
+	@Override
+	public Query<E> maxFetchDepth(int depth) {
+		if (depth < 0) {
+			throw new IllegalArgumentException("depth must not be negative");
+		}
+		checkNotExecuted();
+		maxFetchDepth = depth;
+		resetFetchPlan();
+		return this;
+	}
+
+	private void resetFetchPlan() {
+		fetchPlan = null;
+		if (projection == null) {
+			rowReader = null;
+		}
+	}
+
+	private FetchPlan getFetchPlan() {
+		if (fetchPlan == null) {
+			fetchPlan = FetchPlan.of(clazz, fetchTypes, maxFetchDepth, fetchAncestors, streaming);
+		}
+		return fetchPlan;
+	}
+
+	@Override
+	public Query<E> fetchSize(int fetchSize) {
+		if (fetchSize < 0) {
+			throw new IllegalArgumentException("fetchSize must not be negative");
+		}
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	@Override
+	protected PreparedStatement prepareStatement(String sql) throws SQLException {
+		if (fetchSize <= 0) {
+			return super.prepareStatement(sql);
+		}
+		PreparedStatement pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		String product = con.getMetaData().getDatabaseProductName();
+		if ("MySQL".equalsIgnoreCase(product)) {
+			// Connector/Jは最小値を指定した場合のみ1行ずつ逐次取得する
+			pstmt.setFetchSize(Integer.MIN_VALUE);
+		} else {
+			if ("PostgreSQL".equalsIgnoreCase(product) && con.getAutoCommit()) {
+				// PostgreSQLはトランザクション内でのみカーソルで取得する
+				con.setAutoCommit(false);
+				restoreAutoCommit = true;
+			}
+			pstmt.setFetchSize(fetchSize);
+		}
+		return pstmt;
+	}
+
+	@Override
+	protected boolean close() {
+		if (restoreAutoCommit && con != null) {
+			restoreAutoCommit = false;
+			try {
+				con.setAutoCommit(true);
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		return super.close();
+	}
+
 	@Override
 	protected String buildQuery() {
 		// select column, from
 		StringBuilder selectClause = new StringBuilder("SELECT ");
 		StringBuilder fromClause = new StringBuilder(" FROM ");
-		selectClause.append(StringUtils.join(DBUtil.getColumns4Query(clazz), ", "));
-		fromClause.append(DBUtil.getTableName4Query(clazz));
+		EntityMetadata metadata = EntityMetadata.of(clazz);
+		FetchPlan plan = getFetchPlan();
+		if (aggregateSelect != null) {
+			selectClause.append(aggregateSelect);
+		} else if (projection == null) {
+			selectClause.append(plan.getSelectList());
+		} else {
+			selectClause.append(projection.stream().map(c -> c.quotedName).collect(Collectors.joining(", ")));
+		}
+		fromClause.append(metadata.getQuotedTableName());
 
 		// join
-		appendHasOneQuery(clazz, selectClause, fromClause);
+		if (referencesOtherTable(metadata)) {
+			plan.appendJoins(fromClause, true);
+		} else if (aggregateSelect == null && projection == null) {
+			plan.appendJoins(fromClause, false);
+		}
 
 		// where
+		boolean seek = keyset != null && keysetValues != null;
 		StringBuilder whereClause = new StringBuilder();
 		IntStream.range(0, whereList.size()).forEach(idx -> {
 			Where<E> where = whereList.get(idx);
 			if (idx == 0) {
-				whereClause.append(" WHERE ");
+				// ページングの条件とANDで繋ぐため、ORを含む条件を括弧で囲む
+				whereClause.append(seek ? " WHERE (" : " WHERE ");
 			} else if (where.or()) {
 				whereClause.append(" OR ");
 			} else {
 				whereClause.append(" AND ");
 			}
-			whereClause.append(where.test()[0]);
+			Object[] test = where.test();
+			whereClause.append(test[0]);
 			whereClause.append(" ");
-			whereClause.append(where.test()[1]);
-			whereClause.append(" ?");
+			whereClause.append(test[1]);
+			if (test[2] instanceof List) {
+				List<?> values = (List<?>) test[2];
+				// 空の場合はどの行にも一致しない
+				whereClause.append(values.isEmpty() ? " (NULL)"
+						: values.stream().map(Select::placeholder).collect(Collectors.joining(", ", " (", ")")));
+			} else {
+				whereClause.append(" ?");
+			}
 		});
+		if (seek) {
+			whereClause.append(whereList.isEmpty() ? " WHERE " : ") AND ");
+			whereClause.append(keyset.predicate());
+		}
+
+		// group by
+		if (groupByColumn != null) {
+			whereClause.append(" GROUP BY ");
+			whereClause.append(groupByColumn);
+		}
+
+		// 件数等の集計結果は1行のため、ソート・件数の指定は使用しない
+		boolean scalar = aggregateSelect != null && groupByColumn == null;
 
 		// orderby
-		StringBuilder orderByClause = new StringBuilder();
-		IntStream.range(0, orderList.size()).forEach(idx -> {
+		StringBuilder orderByClause = new StringBuilder(keyset == null ? "" : keyset.orderBy());
+		IntStream.range(0, scalar || keyset != null ? 0 : orderList.size()).forEach(idx -> {
 			Order<E> order = orderList.get(idx);
 			if(idx == 0) {
 				orderByClause.append(" ORDER BY ");
@@ -133,11 +397,15 @@ class Select<E extends BaseEntity> extends AbstractQuery<E> {
 		sql.append(whereClause);
 		sql.append(orderByClause);
 		// limit, offset
-		if (limit != -1) {
+		if (existsQuery) {
+			sql.append(" LIMIT 1");
+		} else if (scalar) {
+			// 何もしない
+		} else if (limit != -1) {
 			sql.append(" LIMIT ");
 			sql.append(limit);
 		}
-		if (offset != 0) {
+		if (offset != 0 && !scalar) {
 			sql.append(" OFFSET ");
 			sql.append(offset);
 		}
@@ -146,18 +414,25 @@ class Select<E extends BaseEntity> extends AbstractQuery<E> {
 		return sql.toString();
 	}
 
-	private void appendHasOneQuery(Class<? extends BaseEntity> clazz, StringBuilder selectClause, StringBuilder fromClause) {
-		DBUtil.getHasOneList(clazz).stream().forEach(hm -> {
-			selectClause.append(", ");
-			selectClause.append(StringUtils.join(DBUtil.getColumns4Query(hm.targetClass()), ", "));
-			fromClause.append(" LEFT OUTER JOIN ");
-			fromClause.append(DBUtil.getTableName4Query(hm.targetClass()));
-			fromClause.append(" ON ");
-			fromClause.append(DBUtil.getColumn4Query(clazz, hm.targetColumn()));
-			fromClause.append("=");
-			fromClause.append(DBUtil.getColumn4Query(hm.targetClass(), hm.foreignKey()));
-			appendHasOneQuery(hm.targetClass(), selectClause, fromClause);
-		});
+	/**
+	 * 検索条件・ソートで検索対象以外のテーブルのカラムを参照しているか確認する
+	 */
+	private boolean referencesOtherTable(EntityMetadata metadata) {
+		String prefix = metadata.getQuotedTableName() + ".";
+		// 行値式の場合は(`table`.`column1`, ...)
+		return whereList.stream().map(w -> String.valueOf(w.test()[0]))
+				.anyMatch(c -> !c.startsWith(prefix) && !c.startsWith("(" + prefix))
+				|| orderList.stream().anyMatch(o -> !o.by().startsWith(prefix));
+	}
+
+	/**
+	 * @return IN句の1要素分のプレースホルダ。行値式の場合は(?, ?, ...)
+	 */
+	private static String placeholder(Object value) {
+		if (value instanceof List) {
+			return ((List<?>) value).stream().map(v -> "?").collect(Collectors.joining(", ", "(", ")"));
+		}
+		return "?";
 	}
 
 	@Override
@@ -168,7 +443,15 @@ class Select<E extends BaseEntity> extends AbstractQuery<E> {
 			try {
 				Field field = DBUtil.getField4Query(clazz, (String) where.test()[0]);
 				Object fieldValue = where.test()[2];
-				if (fieldValue == null) {
+				if (fieldValue instanceof List) {
+					((List<?>) fieldValue).forEach(value -> {
+						if (value instanceof List) {
+							paramsList.addAll((List<?>) value);
+						} else {
+							paramsList.add(value);
+						}
+					});
+				} else if (fieldValue == null) {
 					paramsList.add(field);
 				} else {
 					paramsList.add(fieldValue);
@@ -177,22 +460,38 @@ class Select<E extends BaseEntity> extends AbstractQuery<E> {
 				e.printStackTrace();
 			}
 		});
+		if (keyset != null && keysetValues != null) {
+			paramsList.addAll(keyset.params(keysetValues));
+		}
 
 		return paramsList;
 	}
 
 	@Override
 	public boolean result() {
+		if (cachedResult != null) {
+			return !cachedResult.isEmpty();
+		}
 		try {
 			return getStatement().getResultSet().next();
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			close();
 		}
 	}
 
 	@Override
 	public E get() {
+		if (cachedResult != null) {
+			return cachedResult.isEmpty() ? null : cachedResult.get(0);
+		}
+		if (queryCache != null) {
+			// キャッシュする場合は全ての行を読み込んでgetAllと同じ結果を保持する
+			List<E> resultList = getAll();
+			return resultList == null || resultList.isEmpty() ? null : resultList.get(0);
+		}
 		try {
 			ResultSet rs = getStatement().getResultSet();
 			if (rs == null) {
@@ -201,15 +500,25 @@ class Select<E extends BaseEntity> extends AbstractQuery<E> {
 			if (!rs.next()) {
 				return null;
 			}
-			return createObject(rs);
+			E element = createObject(rs);
+			rs.close();
+			if (element != null) {
+				loadSecondary(Collections.singletonList(element));
+			}
+			return element;
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return null;
+		} finally {
+			close();
 		}
 	}
 
 	@Override
 	public List<E> getAll() {
+		if (cachedResult != null) {
+			return cachedResult;
+		}
 		try {
 			ResultSet rs = getStatement().getResultSet();
 			if (rs == null) {
@@ -220,94 +529,419 @@ class Select<E extends BaseEntity> extends AbstractQuery<E> {
 			while (rs.next()) {
 				resultList.add(createObject(rs));
 			}
+			rs.close();
+			loadSecondary(resultList);
+			if (queryCache != null) {
+				queryCache.put(cacheKey, clazz, resultList, cacheTtl, cacheStamp);
+			}
 			return resultList;
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return new ArrayList<>();
+		} finally {
+			close();
 		}
 	}
 
-	/**
-	 * オブジェクト生成
-	 *
-	 * @param rs
-	 * @return
-	 */
-	private E createObject(ResultSet rs) {
-		return createObject(rs, clazz);
+	@Override
+	public ResultSet getResultSet() {
+		executeIfCached();
+		return super.getResultSet();
+	}
+
+	@Override
+	public <T> List<T> getAll(Class<T> type) {
+		executeIfCached();
+		try {
+			ResultSet rs = getStatement().getResultSet();
+			if (rs == null) {
+				return null;
+			}
+
+			ProjectionReader<T> reader = ProjectionReader.of(type, rs);
+			List<T> resultList = new ArrayList<>();
+			while (rs.next()) {
+				resultList.add(reader.read(rs));
+			}
+			return resultList;
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			close();
+		}
+	}
+
+	@Override
+	public int[] pluckInt(String column) {
+		int[] values = new int[16];
+		int size = 0;
+		try {
+			ResultSet rs = executePluck(column);
+			while (rs.next()) {
+				if (size == values.length) {
+					values = Arrays.copyOf(values, size * 2);
+				}
+				values[size++] = rs.getInt(1);
+			}
+			return Arrays.copyOf(values, size);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			close();
+		}
+	}
+
+	@Override
+	public long[] pluckLong(String column) {
+		long[] values = new long[16];
+		int size = 0;
+		try {
+			ResultSet rs = executePluck(column);
+			while (rs.next()) {
+				if (size == values.length) {
+					values = Arrays.copyOf(values, size * 2);
+				}
+				values[size++] = rs.getLong(1);
+			}
+			return Arrays.copyOf(values, size);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			close();
+		}
+	}
+
+	@Override
+	public double[] pluckDouble(String column) {
+		double[] values = new double[16];
+		int size = 0;
+		try {
+			ResultSet rs = executePluck(column);
+			while (rs.next()) {
+				if (size == values.length) {
+					values = Arrays.copyOf(values, size * 2);
+				}
+				values[size++] = rs.getDouble(1);
+			}
+			return Arrays.copyOf(values, size);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			close();
+		}
+	}
+
+	@Override
+	public <T> List<T> pluck(String column, Class<T> type) {
+		select(column);
+		execute();
+		return getAll(type);
+	}
+
+	private ResultSet executePluck(String column) throws SQLException {
+		select(column);
+		execute();
+		return getStatement().getResultSet();
+	}
+
+	@Override
+	public long count() {
+		Long count = aggregate(Aggregate.COUNT.toSql(null), Long.class);
+		return count == null ? 0 : count;
+	}
+
+	@Override
+	public boolean exists() {
+		checkNotExecuted();
+		aggregateSelect = "1";
+		existsQuery = true;
+		execute();
+		try {
+			return getStatement().getResultSet().next();
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			close();
+		}
+	}
+
+	@Override
+	public <T> T sum(String column, Class<T> type) {
+		return aggregate(Aggregate.SUM.toSql(getColumn(column).quotedName), type);
+	}
+
+	@Override
+	public <T> T min(String column, Class<T> type) {
+		return aggregate(Aggregate.MIN.toSql(getColumn(column).quotedName), type);
+	}
+
+	@Override
+	public <T> T max(String column, Class<T> type) {
+		return aggregate(Aggregate.MAX.toSql(getColumn(column).quotedName), type);
+	}
+
+	@Override
+	public <K> Map<K, Long> countBy(String column, Class<K> keyType) {
+		return groupBy(column, keyType, Aggregate.COUNT, null, Long.class);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <K, V> Map<K, V> groupBy(String column, Class<K> keyType, Aggregate aggregate, String valueColumn,
+			Class<V> valueType) {
+		if (aggregate == null) {
+			throw new IllegalArgumentException("aggregate must not be null");
+		}
+		if (valueColumn == null && aggregate != Aggregate.COUNT) {
+			throw new IllegalArgumentException("valueColumn must not be null except for COUNT");
+		}
+		checkNotExecuted();
+		String key = getColumn(column).quotedName;
+		String value = aggregate.toSql(valueColumn == null ? null : getColumn(valueColumn).quotedName);
+		aggregateSelect = key + ", " + value;
+		groupByColumn = key;
+		execute();
+		try {
+			ResultSet rs = getStatement().getResultSet();
+			RowReader.ValueReader keyReader = RowReader.valueReader(keyType);
+			RowReader.ValueReader valueReader = RowReader.valueReader(valueType);
+			Map<K, V> result = new LinkedHashMap<>();
+			while (rs.next()) {
+				result.put((K) keyReader.read(rs, 1), (V) valueReader.read(rs, 2));
+			}
+			return result;
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			close();
+		}
 	}
 
 	/**
-	 * オブジェクト生成
-	 *
-	 * @param rs
-	 * @return
+	 * 集計結果を1つ取得する
+	 * @param select 集計関数
+	 * @param type 集計結果の型
+	 * @return 集計結果
 	 */
 	@SuppressWarnings("unchecked")
-	private E createObject(ResultSet rs, Class<? extends BaseEntity> clazz) {
-		Constructor<E> constructor = (Constructor<E>) clazz.getDeclaredConstructors()[0];
-		Parameter[] parameters = constructor.getParameters();
-		Object[] paramValues = new Object[parameters.length];
-		IntStream.range(0, parameters.length).forEach(idx -> {
-			Class<?> paramClass = parameters[idx].getType();
-			if (DBUtil.isInt(paramClass)) {
-				paramValues[idx] = 0;
-			} else if (DBUtil.isLong(paramClass)) {
-				paramValues[idx] = 0L;
-			} else if (DBUtil.isDouble(paramClass)) {
-				paramValues[idx] = 0;
-			} else if (DBUtil.isBoolean(paramClass)) {
-				paramValues[idx] = false;
-			} else {
-				paramValues[idx] = null;
+	private <T> T aggregate(String select, Class<T> type) {
+		checkNotExecuted();
+		aggregateSelect = select;
+		execute();
+		try {
+			ResultSet rs = getStatement().getResultSet();
+			if (!rs.next()) {
+				return null;
 			}
-		});
+			return (T) RowReader.valueReader(type).read(rs, 1);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			close();
+		}
+	}
+
+	@Override
+	public Page<E> page(int size) {
+		return page(size, null);
+	}
+
+	@Override
+	public Page<E> page(int size, String token) {
+		startPaging(size);
+		keysetValues = token == null ? null : keyset.decode(token);
+		return fetchPage(size);
+	}
+
+	@Override
+	public Iterator<Page<E>> pages(int size) {
+		startPaging(size);
+		return new Iterator<Page<E>>() {
+			private boolean hasNext = true;
+
+			@Override
+			public boolean hasNext() {
+				return hasNext;
+			}
+
+			@Override
+			public Page<E> next() {
+				if (!hasNext) {
+					throw new NoSuchElementException();
+				}
+				if (isExecuted()) {
+					reset();
+				}
+				Page<E> page = fetchPage(size);
+				hasNext = page.hasNext();
+				return page;
+			}
+		};
+	}
+
+	private void startPaging(int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("size must be positive");
+		}
+		checkNotExecuted();
+		keyset = Keyset.of(EntityMetadata.of(clazz), orderList);
+		if (projection != null && !projection.containsAll(keyset.getColumns())) {
+			throw new IllegalStateException("select must include the sort columns and primary columns");
+		}
+		keysetValues = null;
+	}
+
+	/**
+	 * 前のページの続きを1件多く取得し、次のページの有無を判定する
+	 */
+	private Page<E> fetchPage(int size) {
+		limit = size + 1;
+		offset = 0;
+		execute();
+		List<E> items = getAll();
+		if (items.size() <= size) {
+			return new Page<>(items, null);
+		}
+		items = new ArrayList<>(items.subList(0, size));
+		keysetValues = keyset.valuesOf(items.get(size - 1));
+		return new Page<>(items, keyset.encode(keysetValues));
+	}
+
+	private ColumnMetadata getColumn(String column) {
+		ColumnMetadata c = EntityMetadata.of(clazz).getColumn(column);
+		if (c == null) {
+			throw new DBException(clazz.getName() + " doesn't have column " + column);
+		}
+		return c;
+	}
+
+	private void checkNotExecuted() {
+		if (isExecuted()) {
+			throw new IllegalStateException("query has already been executed");
+		}
+	}
+
+	@Override
+	public Stream<E> stream() {
+		if (cachedResult != null) {
+			return cachedResult.stream();
+		}
+		if (!isExecuted()) {
+			// 1行ずつ読み込むため、別のクエリで取得する結合先も結合する
+			streaming = true;
+			resetFetchPlan();
+			execute();
+		}
+		ResultSet rs;
 		try {
-			E ret = constructor.newInstance(paramValues);
-			DBUtil.getFieldList(clazz).forEach(f -> {
-				f.setAccessible(true);
+			rs = getStatement().getResultSet();
+		} catch (SQLException | RuntimeException e) {
+			close();
+			throw e instanceof DBException ? (DBException) e : new DBException(e);
+		}
+		if (rs == null) {
+			close();
+			return Stream.empty();
+		}
+
+		Spliterator<E> spliterator = new Spliterators.AbstractSpliterator<E>(Long.MAX_VALUE,
+				Spliterator.ORDERED) {
+			private boolean finished = false;
+
+			@Override
+			public boolean tryAdvance(Consumer<? super E> action) {
+				if (finished) {
+					return false;
+				}
 				try {
-					String columnName = DBUtil.getColumn(f);
-					Object columnValue = rs.getObject(columnName);
-					if (columnValue instanceof java.sql.Date) {
-						columnValue = DBUtil.toLocalDate((java.sql.Date) columnValue);
-						if (f.getType().equals(Date.class)) {
-							columnValue = DBUtil.toDate((LocalDate) columnValue);
-						}
-					} else if (columnValue instanceof java.sql.Time) {
-						columnValue = DBUtil.toLocalTime((java.sql.Time) columnValue);
-						if (f.getType().equals(Date.class)) {
-							columnValue = DBUtil.toDate((LocalTime) columnValue);
-						}
-					} else if (columnValue instanceof java.sql.Timestamp) {
-						columnValue = DBUtil.toLocalDateTime((java.sql.Timestamp) columnValue);
-						if (f.getType().equals(Date.class)) {
-							columnValue = DBUtil.toDate((LocalDateTime) columnValue);
-						}
+					if (!rs.next()) {
+						finished = true;
+						close();
+						return false;
 					}
-					f.set(ret, columnValue);
-				} catch (SQLException | IllegalAccessException e) {
-					e.printStackTrace();
+					action.accept(createObject(rs));
+					return true;
+				} catch (SQLException e) {
+					finished = true;
+					close();
+					throw new DBException(e);
 				}
-			});
+			}
+		};
+		return StreamSupport.stream(spliterator, false).onClose(this::close);
+	}
 
-			DBUtil.getHasOneFieldList(clazz).forEach(f -> {
-				f.setAccessible(true);
-				try {
-					HasOne ho = DBUtil.getHasOne(f);
-					BaseEntity hoObj = createObject(rs, ho.targetClass());
-					f.set(ret, hoObj);
-				} catch (IllegalAccessException e) {
-					e.printStackTrace();
-				} finally {
-					f.setAccessible(false);
-				}
-			});
+	@Override
+	public void forEach(Consumer<? super E> action) {
+		try (Stream<E> stream = stream()) {
+			stream.forEach(action);
+		}
+	}
+
+	/**
+	 * 取得方法にSELECTを指定した結合先を、実行中のコネクションでまとめてロードする
+	 * @param entities 検索結果
+	 */
+	private void loadSecondary(List<E> entities) {
+		if (projection != null || entities.isEmpty()) {
+			return;
+		}
+		FetchPlan plan = getFetchPlan();
+		for (FetchPlan.Node node : plan.getSecondaryNodes()) {
+			Set<Class<?>> ancestors = new HashSet<>(fetchAncestors);
+			ancestors.addAll(node.parent.path());
+			int depth = plan.getMaxDepth() - node.depth;
+			RelationLoader.load(entitiesAt(entities, node.parent), node.relation, false,
+					chunk -> findSecondary(node.relation.targetClass, node.relation.foreignKey, chunk, depth, ancestors));
+		}
+	}
+
+	private <T extends BaseEntity> List<T> findSecondary(Class<T> targetClass, String foreignKey, List<Object> values,
+			int depth, Set<Class<?>> ancestors) {
+		Select<T> select = new Select<>(con, targetClass);
+		select.identityMapSupplier = identityMapSupplier;
+		select.fetchTypes.putAll(fetchTypes);
+		select.maxFetchDepth = depth;
+		select.fetchAncestors = ancestors;
+		select.whereIn(foreignKey, values);
+		select.execute();
+		return select.getAll();
+	}
 
-			return ret;
+	/**
+	 * @return 検索結果からHasOneを辿ったnodeのエンティティ
+	 */
+	private static List<BaseEntity> entitiesAt(List<? extends BaseEntity> roots, FetchPlan.Node node) {
+		if (node.parent == null) {
+			return roots.stream().filter(Objects::nonNull).collect(Collectors.toList());
+		}
+		List<BaseEntity> entities = new ArrayList<>();
+		for (BaseEntity parent : entitiesAt(roots, node.parent)) {
+			Object entity = node.relation.accessor.get(parent);
+			if (entity != null) {
+				entities.add((BaseEntity) entity);
+			}
+		}
+		return entities;
+	}
+
+	/**
+	 * オブジェクト生成
+	 *
+	 * @param rs
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private E createObject(ResultSet rs) {
+		try {
+			if (rowReader == null) {
+				rowReader = projection == null ? getFetchPlan().getRowReader() : RowReader.of(clazz, projection);
+			}
+			// 1行ずつ読み込む場合は読み込んだ行を保持しないよう、同一性マップに登録しない
+			return (E) rowReader.read(rs, projection == null && !streaming ? identityMapSupplier.get() : null);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
 		}
 	}
-}
\ No newline at end of file
+}
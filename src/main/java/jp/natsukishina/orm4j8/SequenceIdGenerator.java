@@ -0,0 +1,76 @@
+package jp.natsukishina.orm4j8;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.regex.Pattern;
+
+import jp.natsukishina.orm4j8.DB.Type;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * シーケンスから値の範囲を確保するクラス<br>
+ * シーケンスの値を範囲の最初の値とするため、シーケンスは
+ * <pre>CREATE SEQUENCE seq INCREMENT BY {blockSize}</pre>
+ * のように{@link #getBlockSize()}ずつ増えるように作成してください。
+ * 1ずつ増えるシーケンスを使用する場合は{@link HiLoIdGenerator}を使用してください。<br>
+ * シーケンスに対応していないMySQLでは{@link TableIdGenerator}を使用してください。
+ * @author 417.72KI
+ *
+ */
+public class SequenceIdGenerator extends BlockIdGenerator {
+	private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_$.]+");
+
+	private final String sequenceName;
+
+	/**
+	 * @param sequenceName シーケンス名
+	 * @param blockSize 1回に確保する値の数(シーケンスの増分)
+	 */
+	public SequenceIdGenerator(String sequenceName, int blockSize) {
+		super(blockSize);
+		if (sequenceName == null || !NAME.matcher(sequenceName).matches()) {
+			throw new IllegalArgumentException("invalid sequence name: " + sequenceName);
+		}
+		this.sequenceName = sequenceName;
+	}
+
+	/**
+	 * @return シーケンス名
+	 */
+	public String getSequenceName() {
+		return sequenceName;
+	}
+
+	@Override
+	protected long reserve(Type type, ConnectionProvider connectionProvider) {
+		return nextValue(type, connectionProvider);
+	}
+
+	/**
+	 * @param type データベース種別
+	 * @param connectionProvider コネクションの取得元
+	 * @return シーケンスの次の値
+	 */
+	protected final long nextValue(Type type, ConnectionProvider connectionProvider) {
+		String sql;
+		if (type == Type.POSTGRES) {
+			sql = "SELECT nextval('" + sequenceName + "')";
+		} else if (type == Type.ORACLE) {
+			sql = "SELECT " + sequenceName + ".NEXTVAL FROM DUAL";
+		} else {
+			throw new DBException(type + " doesn't support sequences");
+		}
+		try (Connection con = connectionProvider.getConnection();
+				Statement stmt = con.createStatement();
+				ResultSet rs = stmt.executeQuery(sql)) {
+			if (!rs.next()) {
+				throw new DBException("failed to get the next value of " + sequenceName);
+			}
+			return rs.getLong(1);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package jp.natsukishina.orm4j8;
+
+import java.util.function.Consumer;
+
+/**
+ * 同一性マップの有効範囲を明示するクラス。<br>
+ * {@link DB#beginSession()}で開始したスレッドに紐付き、closeされるまでの間、
+ * 同じクラス・主キーのエンティティは最初に読み込んだインスタンスを返します。
+ * 主キー検索は読み込み済みであればデータベースに問い合わせません。
+ * <pre>
+ * try (Session session = DB.beginSession()) {
+ *     User user = DB.findByPrimary(User.class, 1);
+ *     user == DB.findByPrimary(User.class, 1); // true
+ * }
+ * </pre>
+ * @author 417.72KI
+ *
+ */
+public class Session implements AutoCloseable {
+	private final IdentityMap identityMap = new IdentityMap();
+	private final Consumer<Session> onClose;
+
+	/**
+	 * @param onClose 終了時に呼び出す処理
+	 */
+	Session(Consumer<Session> onClose) {
+		this.onClose = onClose;
+	}
+
+	IdentityMap getIdentityMap() {
+		return identityMap;
+	}
+
+	/**
+	 * 読み込み済みのエンティティを全て破棄します。<br>
+	 * セッション中にロールバックした場合や、データベースの値を読み込み直す場合に使用してください。
+	 */
+	public void clear() {
+		identityMap.clear();
+	}
+
+	/**
+	 * セッションを終了し、読み込み済みのエンティティを破棄します。
+	 */
+	@Override
+	public void close() {
+		identityMap.clear();
+		onClose.accept(this);
+	}
+}
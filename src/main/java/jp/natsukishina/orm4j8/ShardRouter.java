@@ -0,0 +1,87 @@
+package jp.natsukishina.orm4j8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * シャードキーのハッシュ値でデータベースを振り分けるクラス<br>
+ * {@link #pin(Class, Database)}で固定したテーブルは、シャードキーに関わらず指定したデータベースに振り分けます。<br>
+ * 振り分け先はシャードキーの{@link Object#hashCode()}で決まるため、Integer、Long、String等JVMを跨いで値が変わらないキーを使用してください。
+ * @author 417.72KI
+ *
+ */
+public class ShardRouter implements DatabaseRouter {
+	private final List<Database> shards;
+	private final Map<Class<? extends BaseEntity>, Database> pinned = new ConcurrentHashMap<>();
+
+	/**
+	 * @param shards 振り分け先のデータベース。順序を変えると振り分け先も変わります
+	 */
+	public ShardRouter(Database... shards) {
+		this(Arrays.asList(shards));
+	}
+
+	/**
+	 * @param shards 振り分け先のデータベース。順序を変えると振り分け先も変わります
+	 */
+	public ShardRouter(List<Database> shards) {
+		if (shards == null || shards.isEmpty()) {
+			throw new IllegalArgumentException("shards must not be empty");
+		}
+		this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+	}
+
+	/**
+	 * テーブルの振り分け先を固定します。<br>
+	 * シャーディングしないマスタテーブル等に使用します。
+	 * @param clazz 固定するテーブルのクラス
+	 * @param database 振り分け先のデータベース
+	 * @return このオブジェクト
+	 */
+	public ShardRouter pin(Class<? extends BaseEntity> clazz, Database database) {
+		if (clazz == null) {
+			throw new IllegalArgumentException("clazz must not be null");
+		}
+		if (database == null) {
+			throw new IllegalArgumentException("database must not be null");
+		}
+		pinned.put(clazz, database);
+		return this;
+	}
+
+	/**
+	 * 振り分け先のデータベース一覧を取得します。
+	 * @return 振り分け先のデータベース一覧
+	 */
+	public List<Database> getShards() {
+		return shards;
+	}
+
+	@Override
+	public Database route(Class<? extends BaseEntity> clazz, Object shardKey) {
+		Database database = pinned.get(clazz);
+		if (database != null) {
+			return database;
+		}
+		if (shardKey == null) {
+			throw new DBException("shardKey is required to route " + clazz.getName());
+		}
+		return shards.get(Math.floorMod(shardKey.hashCode(), shards.size()));
+	}
+
+	/**
+	 * 振り分け先と固定先のデータベースを全て破棄します。
+	 */
+	@Override
+	public void close() {
+		Stream.concat(shards.stream(), pinned.values().stream()).distinct().forEach(Database::close);
+	}
+}
@@ -0,0 +1,112 @@
+package jp.natsukishina.orm4j8;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+import jp.natsukishina.orm4j8.DB.Type;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * 採番テーブルから値の範囲を確保するクラス<br>
+ * 採番テーブルは
+ * <pre>CREATE TABLE id_allocation (name varchar(64) PRIMARY KEY, next_value bigint NOT NULL)</pre>
+ * のように採番の名前(name)と次に確保する値(next_value)のカラムを持つテーブルです。
+ * 範囲の確保は採番テーブルの行を{@link #getBlockSize()}だけ進める短いトランザクションで行うため、
+ * 登録中のトランザクションがロールバックされても確保した範囲は戻りません。<br>
+ * 名前の行が無い場合は1から確保します。既存のデータがある場合は最大値より大きいnext_valueの行を予め登録してください。
+ * @author 417.72KI
+ *
+ */
+public class TableIdGenerator extends BlockIdGenerator {
+	private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_$.]+");
+
+	private final String tableName;
+	private final String name;
+
+	/**
+	 * @param tableName 採番テーブル名
+	 * @param name 採番の名前(採番テーブルのnameカラムの値)
+	 * @param blockSize 1回に確保する値の数
+	 */
+	public TableIdGenerator(String tableName, String name, int blockSize) {
+		super(blockSize);
+		if (tableName == null || !NAME.matcher(tableName).matches()) {
+			throw new IllegalArgumentException("invalid table name: " + tableName);
+		}
+		if (name == null || name.isEmpty()) {
+			throw new IllegalArgumentException("name must not be empty");
+		}
+		this.tableName = tableName;
+		this.name = name;
+	}
+
+	@Override
+	protected long reserve(Type type, ConnectionProvider connectionProvider) {
+		try (Connection con = connectionProvider.getConnection()) {
+			boolean autoCommit = con.getAutoCommit();
+			con.setAutoCommit(false);
+			try {
+				Long start = allocate(con);
+				if (start == null) {
+					// 他のアプリケーションが同時に行を登録した場合は1回だけやり直す
+					con.rollback();
+					start = allocate(con);
+				}
+				if (start == null) {
+					throw new DBException("failed to allocate ids from " + tableName + ": " + name);
+				}
+				con.commit();
+				return start;
+			} catch (SQLException | RuntimeException e) {
+				con.rollback();
+				throw e;
+			} finally {
+				con.setAutoCommit(autoCommit);
+			}
+		} catch (SQLException e) {
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * @return 確保した範囲の最初の値。行の登録が競合した場合はnull
+	 */
+	private Long allocate(Connection con) throws SQLException {
+		try (PreparedStatement pstmt = con
+				.prepareStatement("UPDATE " + tableName + " SET next_value = next_value + ? WHERE name = ?")) {
+			pstmt.setLong(1, getBlockSize());
+			pstmt.setString(2, name);
+			if (pstmt.executeUpdate() == 0) {
+				return insert(con);
+			}
+		}
+		try (PreparedStatement pstmt = con.prepareStatement("SELECT next_value FROM " + tableName + " WHERE name = ?")) {
+			pstmt.setString(1, name);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				if (!rs.next()) {
+					throw new DBException("failed to allocate ids from " + tableName + ": " + name);
+				}
+				return rs.getLong(1) - getBlockSize();
+			}
+		}
+	}
+
+	/**
+	 * 名前の行を登録して最初の範囲を確保します。
+	 * @return 1。行の登録が競合した場合はnull
+	 */
+	private Long insert(Connection con) {
+		try (PreparedStatement pstmt = con
+				.prepareStatement("INSERT INTO " + tableName + " (name, next_value) VALUES (?, ?)")) {
+			pstmt.setString(1, name);
+			pstmt.setLong(2, 1L + getBlockSize());
+			pstmt.executeUpdate();
+			return 1L;
+		} catch (SQLException e) {
+			return null;
+		}
+	}
+}
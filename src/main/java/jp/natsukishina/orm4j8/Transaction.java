@@ -0,0 +1,162 @@
+package jp.natsukishina.orm4j8;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * トランザクションを扱うクラス。<br>
+ * {@link DB#beginTransaction()}で開始したスレッドに紐付き、そのスレッドからの操作は全て同じコネクションで実行されます。<br>
+ * コミットもロールバックもされずにcloseされた場合はロールバックします。
+ * <pre>
+ * try (Transaction tx = DB.beginTransaction()) {
+ *     DB.save(entity);
+ *     tx.commit();
+ * }
+ * </pre>
+ * @author 417.72KI
+ *
+ */
+public class Transaction implements AutoCloseable {
+	private final Connection con;
+	private final Consumer<Transaction> onFinish;
+	private final IdentityMap identityMap = new IdentityMap();
+	/** コミット後に実行する処理 */
+	private final List<Runnable> afterCommit = new ArrayList<>();
+	private volatile boolean active = true;
+	private volatile boolean written = false;
+
+	/**
+	 * @param con 取得元から取得したコネクション
+	 * @param onFinish 終了時に呼び出す処理
+	 */
+	Transaction(Connection con, Consumer<Transaction> onFinish) {
+		this.con = con;
+		this.onFinish = onFinish;
+		try {
+			con.setAutoCommit(false);
+		} catch (SQLException e) {
+			finish();
+			throw new DBException(e);
+		}
+	}
+
+	/**
+	 * トランザクション中の操作に使用するコネクションを取得します。<br>
+	 * 返却されるコネクションはcloseしても閉じられません。
+	 * @return コネクション
+	 */
+	Connection getConnection() {
+		if (!active) {
+			throw new DBException("transaction has already been finished");
+		}
+		return ConnectionPool.share(con);
+	}
+
+	/**
+	 * 更新系の操作に使用するコネクションを取得します。<br>
+	 * 以降は書き込み済みのトランザクションとして扱います。
+	 * @return コネクション
+	 */
+	Connection getConnectionForWrite() {
+		Connection con = getConnection();
+		written = true;
+		return con;
+	}
+
+	/**
+	 * @return トランザクション中に読み込んだエンティティの同一性マップ
+	 */
+	IdentityMap getIdentityMap() {
+		return identityMap;
+	}
+
+	/**
+	 * コミットした後に実行する処理を登録します。ロールバックした場合は実行しません。
+	 * @param action 実行する処理
+	 */
+	void afterCommit(Runnable action) {
+		afterCommit.add(action);
+	}
+
+	/**
+	 * トランザクション中に更新系の操作を行ったか確認します。
+	 * @return 更新系の操作を行っていればtrue
+	 */
+	boolean isWritten() {
+		return written;
+	}
+
+	/**
+	 * トランザクションが継続中か確認します。
+	 * @return コミット・ロールバックされていなければtrue
+	 */
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * トランザクションをコミットします
+	 */
+	public void commit() {
+		if (!active) {
+			return;
+		}
+		List<Runnable> actions = new ArrayList<>(afterCommit);
+		boolean committed = false;
+		try {
+			con.commit();
+			committed = true;
+			con.setAutoCommit(true);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			finish();
+			if (committed) {
+				actions.forEach(Runnable::run);
+			}
+		}
+	}
+
+	/**
+	 * トランザクションをロールバックします
+	 */
+	public void rollback() {
+		if (!active) {
+			return;
+		}
+		try {
+			con.rollback();
+			con.setAutoCommit(true);
+		} catch (SQLException e) {
+			throw new DBException(e);
+		} finally {
+			finish();
+		}
+	}
+
+	/**
+	 * 継続中であればロールバックします
+	 */
+	@Override
+	public void close() {
+		rollback();
+	}
+
+	private void finish() {
+		active = false;
+		identityMap.clear();
+		afterCommit.clear();
+		try {
+			con.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} finally {
+			onFinish.accept(this);
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package jp.natsukishina.orm4j8;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import jp.natsukishina.orm4j8.DB.Type;
+import jp.natsukishina.orm4j8.EntityMetadata.ColumnMetadata;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+import jp.natsukishina.orm4j8.exception.DBException;
+
+/**
+ * 主キーが同じ行があれば更新し、無ければ登録するクエリ<br>
+ * DBMSごとの構文で1つのクエリにまとめます。
+ * <ul>
+ * <li>MySQL: INSERT ... ON DUPLICATE KEY UPDATE</li>
+ * <li>PostgreSQL: INSERT ... ON CONFLICT (主キー) DO UPDATE</li>
+ * <li>Oracle: MERGE INTO ... USING (SELECT ... FROM DUAL)</li>
+ * </ul>
+ * @author 417.72KI
+ *
+ * @param <E> データベースのテーブルを示す型
+ */
+class Upsert<E extends BaseEntity> extends AbstractQuery<E> {
+	/** クラスごとの、データベース種別 → クエリ */
+	private static final ClassValue<Map<Type, String>> QUERIES = new ClassValue<Map<Type, String>>() {
+		@Override
+		protected Map<Type, String> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private final E element;
+	private final Type type;
+	private final List<Object> valueList = new ArrayList<>(0);
+
+	@SuppressWarnings("unchecked")
+	Upsert(Connection con, Type type, E element) {
+		super(con, (Class<E>) element.getClass());
+		this.type = type;
+		this.element = element;
+	}
+
+	@SuppressWarnings("unchecked")
+	Upsert(Supplier<Connection> connectionSupplier, Type type, E element) {
+		super(connectionSupplier, (Class<E>) element.getClass());
+		this.type = type;
+		this.element = element;
+	}
+
+	/**
+	 * @param element エンティティ
+	 * @return 主キーの値が全てあり、1つのクエリで登録・更新できる場合はtrue
+	 */
+	static boolean isApplicable(BaseEntity element) {
+		EntityMetadata metadata = EntityMetadata.of(element.getClass());
+		return metadata.hasPrimaryColumn()
+				&& metadata.getPrimaryColumns().stream().allMatch(c -> c.accessor.get(element) != null);
+	}
+
+	@Override
+	public boolean result() {
+		return getUpdateCount() != -1;
+	}
+
+	@Override
+	protected String buildQuery() {
+		if (!isApplicable(element)) {
+			throw new DBException("upsert requires all primary values: " + clazz.getName());
+		}
+		valueList.addAll(Insert.valuesOf(EntityMetadata.of(clazz), element, false));
+		return QUERIES.get(clazz).computeIfAbsent(type, t -> buildQuery(EntityMetadata.of(clazz), t));
+	}
+
+	private static String buildQuery(EntityMetadata metadata, Type type) {
+		List<ColumnMetadata> columns = metadata.getColumns();
+		List<ColumnMetadata> primaryColumns = metadata.getPrimaryColumns();
+		List<ColumnMetadata> nonPrimaryColumns = columns.stream().filter(c -> !c.primary)
+				.collect(Collectors.toList());
+		String columnList = columns.stream().map(c -> c.name).collect(Collectors.joining(", ", "(", ")"));
+		String values = columns.stream().map(c -> "?").collect(Collectors.joining(", ", "(", ")"));
+
+		StringBuilder sql = new StringBuilder();
+		switch (type) {
+		case MYSQL:
+			sql.append("INSERT INTO ").append(metadata.getTableName()).append(" ").append(columnList);
+			sql.append(" VALUES ").append(values);
+			sql.append(" ON DUPLICATE KEY UPDATE ");
+			if (nonPrimaryColumns.isEmpty()) {
+				// 更新するカラムが無い場合も構文上1つ必要
+				String name = primaryColumns.get(0).name;
+				sql.append(name).append(" = ").append(name);
+			} else {
+				sql.append(nonPrimaryColumns.stream().map(c -> c.name + " = VALUES(" + c.name + ")")
+						.collect(Collectors.joining(", ")));
+			}
+			break;
+		case POSTGRES:
+			sql.append("INSERT INTO ").append(metadata.getTableName()).append(" ").append(columnList);
+			sql.append(" VALUES ").append(values);
+			sql.append(" ON CONFLICT ");
+			sql.append(primaryColumns.stream().map(c -> c.name).collect(Collectors.joining(", ", "(", ")")));
+			if (nonPrimaryColumns.isEmpty()) {
+				sql.append(" DO NOTHING");
+			} else {
+				sql.append(" DO UPDATE SET ");
+				sql.append(nonPrimaryColumns.stream().map(c -> c.name + " = EXCLUDED." + c.name)
+						.collect(Collectors.joining(", ")));
+			}
+			break;
+		case ORACLE:
+			sql.append("MERGE INTO ").append(metadata.getTableName()).append(" t USING (SELECT ");
+			sql.append(columns.stream().map(c -> "? AS " + c.name).collect(Collectors.joining(", ")));
+			sql.append(" FROM DUAL) s ON (");
+			sql.append(primaryColumns.stream().map(c -> "t." + c.name + " = s." + c.name)
+					.collect(Collectors.joining(" AND ")));
+			sql.append(")");
+			if (!nonPrimaryColumns.isEmpty()) {
+				sql.append(" WHEN MATCHED THEN UPDATE SET ");
+				sql.append(nonPrimaryColumns.stream().map(c -> "t." + c.name + " = s." + c.name)
+						.collect(Collectors.joining(", ")));
+			}
+			sql.append(" WHEN NOT MATCHED THEN INSERT ").append(columnList).append(" VALUES ");
+			sql.append(columns.stream().map(c -> "s." + c.name).collect(Collectors.joining(", ", "(", ")")));
+			break;
+		default:
+			throw new DBException("upsert is not supported: " + type);
+		}
+		return sql.toString();
+	}
+
+	@Override
+	protected List<Object> buildParamsListForPreparedStatement() {
+		return valueList;
+	}
+}
@@ -1,11 +0,0 @@
-package jp.natsukishina.orm4j8;
-
-import jp.natsukishina.orm4j8.entity.BaseEntity;
-
-class UtilQuery<E extends BaseEntity> {
-
-	String getMax(Class<E> clazz) {
-		return null;
-	}
-
-}
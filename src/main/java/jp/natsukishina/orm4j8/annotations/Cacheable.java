@@ -0,0 +1,30 @@
+package jp.natsukishina.orm4j8.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 主キー検索の結果をキャッシュすることを示すアノテーション<br>
+ * {@link UseTable}と併せて指定したクラスは、{@link jp.natsukishina.orm4j8.DB#findByPrimary(Class, Object)}の結果を
+ * データベースのインスタンスごとに保持します。
+ * 更新頻度の低いマスタテーブル向けの機能のため、他のアプリケーションからの更新は有効期限まで反映されません。
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cacheable {
+	/**
+	 * 保持するエンティティの最大数<br>
+	 * 超えた場合は最後に参照されてから最も時間が経ったものを破棄します。
+	 * @return 最大数
+	 */
+	int maxSize() default 1000;
+
+	/**
+	 * キャッシュの有効期限(秒)<br>
+	 * 0以下の場合は期限を設けません。
+	 * @return 有効期限
+	 */
+	long expireSeconds() default 600;
+}
@@ -24,4 +24,21 @@ public @interface Column {
 	 */
 	boolean primary() default false;
 
+	/**
+	 * データベースで採番される(AUTO_INCREMENT・IDENTITY等)主キーか否か<br>
+	 * trueの場合、値の無いエンティティの登録時はこのカラムを指定せずにINSERTし、
+	 * 採番された値をエンティティにセットします。int・longの主キーにのみ指定できます。
+	 * @return データベースで採番される場合はtrue
+	 */
+	boolean generated() default false;
+
+	/**
+	 * 主キーの採番方法の名前<br>
+	 * {@link jp.natsukishina.orm4j8.Database#registerIdGenerator(String, jp.natsukishina.orm4j8.IdGenerator)}で
+	 * 登録した名前を指定すると、値の無いエンティティの登録時に最大値の検索の代わりにその方法で採番します。
+	 * 登録前に採番できるため、同時に登録する子のエンティティに値をセットできます。int・longの主キーにのみ指定できます。
+	 * @return 採番方法の名前。空文字の場合は最大値+1で採番します
+	 */
+	String generator() default "";
+
 }
@@ -0,0 +1,15 @@
+package jp.natsukishina.orm4j8.annotations;
+
+/**
+ * HasOneの結合先の取得方法を示すenum型
+ * @author 417.72KI
+ *
+ */
+public enum FetchType {
+	/** 検索クエリにLEFT OUTER JOINで結合して取得する */
+	JOIN,
+	/** 検索結果の外部キーをIN句で指定した別のクエリでまとめて取得する */
+	SELECT,
+	/** 検索時には取得せず、{@link jp.natsukishina.orm4j8.entity.BaseEntity#loadHasOne(Class)}等で必要な時に取得する */
+	LAZY,
+}
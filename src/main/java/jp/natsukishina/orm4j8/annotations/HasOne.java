@@ -31,6 +31,13 @@ public @interface HasOne {
 	 */
 	String targetColumn() default "id";
 
+	/**
+	 * 結合先の取得方法<br>
+	 * クエリごとに{@link jp.natsukishina.orm4j8.Query#fetch(Class, FetchType)}で変更できます。
+	 * @return 取得方法
+	 */
+	FetchType fetch() default FetchType.JOIN;
+
 	//TODO CASCADEの調査
 	// boolean cascade() default false;
 }
@@ -1,12 +1,12 @@
 package jp.natsukishina.orm4j8.entity;
 
 import java.lang.reflect.Field;
-import java.util.List;
+import java.util.Collections;
 import java.util.stream.IntStream;
 
 import jp.natsukishina.orm4j8.DB;
 import jp.natsukishina.orm4j8.DBUtil;
-import jp.natsukishina.orm4j8.annotations.HasMany;
+import jp.natsukishina.orm4j8.Database;
 import jp.natsukishina.orm4j8.exception.DBException;
 
 /**
@@ -32,34 +32,34 @@ public abstract class BaseEntity {
 	 * @param clazz 1:nの関係になるクラス
 	 */
 	public void loadHasMany(Class<? extends BaseEntity> clazz) {
-		Field hmField = DBUtil.getHasManyField(getClass(), clazz);
-		if(hmField == null) {
-			throw new DBException(getClass() + " doesn't have HasMany field");
-		}
-		if(!hmField.getType().equals(List.class)) {
-			throw new DBException("HasMany field must be List");
-		}
+		loadHasMany(DB.getDatabase(), clazz);
+	}
 
-		hmField.setAccessible(true);
-		HasMany hm = DBUtil.getHasMany(hmField);
-		Field targetField = null;
-		try {
-			targetField = DBUtil.getField(getClass(), hm.targetColumn());
-			targetField.setAccessible(true);
-			Object targetValue = targetField.get(this);
-			List<? extends BaseEntity> hmList = DB.find(hm.targetClass()).where(hm.foreignKey(), "=", targetValue)
-					.execute().getAll();
-			hmField.set(this, hmList);
-		} catch (Exception e) {
-			throw new DBException(e);
-		} finally {
-			if (targetField != null) {
-				targetField.setAccessible(false);
-			}
-			if (hmField != null) {
-				hmField.setAccessible(false);
-			}
-		}
+	/**
+	 * 1:nリレーションを持つリストフィールドを指定したデータベースからロードします
+	 * @param database ロード元のデータベース
+	 * @param clazz 1:nの関係になるクラス
+	 */
+	public void loadHasMany(Database database, Class<? extends BaseEntity> clazz) {
+		database.loadHasMany(Collections.singletonList(this), clazz);
+	}
+
+	/**
+	 * 1:1リレーションを持つフィールドをDBからロードします<br>
+	 * 取得方法にLAZYを指定したHasOneは検索時にロードされないため、このメソッドでロードしてください。
+	 * @param clazz 1:1の関係になるクラス
+	 */
+	public void loadHasOne(Class<? extends BaseEntity> clazz) {
+		loadHasOne(DB.getDatabase(), clazz);
+	}
+
+	/**
+	 * 1:1リレーションを持つフィールドを指定したデータベースからロードします
+	 * @param database ロード元のデータベース
+	 * @param clazz 1:1の関係になるクラス
+	 */
+	public void loadHasOne(Database database, Class<? extends BaseEntity> clazz) {
+		database.loadHasOne(Collections.singletonList(this), clazz);
 	}
 
 	@Override
@@ -0,0 +1,350 @@
+package jp.natsukishina.orm4j8.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+import jp.natsukishina.orm4j8.EntityMapper;
+import jp.natsukishina.orm4j8.annotations.Column;
+import jp.natsukishina.orm4j8.annotations.UseTable;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+
+/**
+ * UseTableアノテーションの付いたエンティティごとに{@link EntityMapper}の実装クラスを生成するアノテーションプロセッサ<br>
+ * 生成されたクラスが存在する場合、実行時にリフレクションを使用せずにエンティティの生成・検索結果の読み込みを行います。
+ * 登録・更新時のカラムの値の取得もマッパーを経由しますが、値はObjectとして受け渡します。<br>
+ * 本体のjarには登録していないため、processor分類子のjarをアノテーションプロセッサのパスに加えるか、以下のように指定してください。
+ * <pre>
+ * javac -processor jp.natsukishina.orm4j8.processor.EntityMapperProcessor ...
+ * </pre>
+ * 以下の条件を満たさないエンティティは生成対象外となり、実行時はリフレクションで読み書きします。
+ * <ul>
+ * <li>BaseEntityを継承している</li>
+ * <li>privateでない引数無しのコンストラクタを持つ</li>
+ * <li>Columnアノテーションの付いたフィールドがprivateでないか、privateでないgetter・setterを持つ</li>
+ * </ul>
+ * @author 417.72KI
+ *
+ */
+@SupportedAnnotationTypes("jp.natsukishina.orm4j8.annotations.UseTable")
+public class EntityMapperProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(UseTable.class)) {
+			if (element.getKind() != ElementKind.CLASS) {
+				continue;
+			}
+			TypeElement type = (TypeElement) element;
+			try {
+				List<ColumnSource> columns = collectColumns(type);
+				if (columns != null) {
+					write(type, columns);
+				}
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Kind.ERROR, e.toString(), type);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 生成に必要なカラムの情報を集めます。
+	 * @param type エンティティ
+	 * @return カラムの情報。生成対象外の場合はnull
+	 */
+	private List<ColumnSource> collectColumns(TypeElement type) {
+		if (type.getModifiers().contains(Modifier.ABSTRACT) || !isAccessible(type)) {
+			return skip(type, "it is abstract or not accessible from its package");
+		}
+		if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+			return skip(type, "it is an inner class");
+		}
+		TypeElement baseEntity = processingEnv.getElementUtils().getTypeElement(BaseEntity.class.getName());
+		if (baseEntity == null || !processingEnv.getTypeUtils().isSubtype(type.asType(), baseEntity.asType())) {
+			return skip(type, "it does not extend " + BaseEntity.class.getName());
+		}
+		boolean hasNoArgConstructor = ElementFilter.constructorsIn(type.getEnclosedElements()).stream()
+				.anyMatch(c -> c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE));
+		if (!hasNoArgConstructor) {
+			return skip(type, "it has no non-private no-arg constructor");
+		}
+
+		List<ColumnSource> columns = new ArrayList<>();
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			Column column = field.getAnnotation(Column.class);
+			if (column == null) {
+				continue;
+			}
+			String name = field.getSimpleName().toString();
+			String typeName = field.asType().toString();
+			String read;
+			String write;
+			if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+				read = "entity." + name;
+				write = "entity." + name + " = %s;";
+			} else {
+				ExecutableElement getter = findGetter(type, field);
+				ExecutableElement setter = findSetter(type, field);
+				if (getter == null || setter == null) {
+					return skip(type, "field " + name + " is private and has no getter/setter");
+				}
+				read = "entity." + getter.getSimpleName() + "()";
+				write = "entity." + setter.getSimpleName() + "(%s);";
+			}
+			if (field.getModifiers().contains(Modifier.FINAL)) {
+				return skip(type, "field " + name + " is final");
+			}
+			columns.add(new ColumnSource(column.value(), typeName, field.asType(), read, write));
+		}
+		return columns;
+	}
+
+	private List<ColumnSource> skip(TypeElement type, String reason) {
+		processingEnv.getMessager().printMessage(Kind.NOTE,
+				"mapper for " + type.getQualifiedName() + " is not generated because " + reason, type);
+		return null;
+	}
+
+	private boolean isAccessible(TypeElement type) {
+		for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+			if (e.getModifiers().contains(Modifier.PRIVATE)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private ExecutableElement findGetter(TypeElement type, VariableElement field) {
+		String capitalized = capitalize(field.getSimpleName().toString());
+		for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			String name = method.getSimpleName().toString();
+			boolean nameMatches = name.equals("get" + capitalized)
+					|| (field.asType().getKind() == TypeKind.BOOLEAN && name.equals("is" + capitalized));
+			if (nameMatches && method.getParameters().isEmpty() && !method.getModifiers().contains(Modifier.PRIVATE)
+					&& processingEnv.getTypeUtils().isSameType(method.getReturnType(), field.asType())) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	private ExecutableElement findSetter(TypeElement type, VariableElement field) {
+		String name = "set" + capitalize(field.getSimpleName().toString());
+		for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == 1
+					&& !method.getModifiers().contains(Modifier.PRIVATE)
+					&& processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(),
+							field.asType())) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	private static String capitalize(String name) {
+		return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+	}
+
+	private void write(TypeElement type, List<ColumnSource> columns) throws IOException {
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		String simpleBinaryName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+		String mapperName = simpleBinaryName.replace('$', '_') + EntityMapper.SUFFIX;
+		String entityName = type.getQualifiedName().toString();
+
+		try (PrintWriter out = new PrintWriter(
+				processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? mapperName
+						: packageName + "." + mapperName, type).openWriter())) {
+			if (!packageName.isEmpty()) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			// 生成するソースのエンコーディングはコンパイラの設定に依存するため、ASCIIのみで出力する
+			out.println("/**");
+			out.println(" * Mapper for {@link " + entityName + "}.<br>");
+			out.println(" * Generated by " + EntityMapperProcessor.class.getName() + ". Do not edit.");
+			out.println(" */");
+			out.println("public final class " + mapperName + " implements " + EntityMapper.class.getName() + "<"
+					+ entityName + "> {");
+			out.println("\tprivate static final String[] COLUMN_NAMES = {");
+			for (ColumnSource column : columns) {
+				out.println("\t\t\t" + literal(column.name) + ",");
+			}
+			out.println("\t};");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic Class<" + entityName + "> entityClass() {");
+			out.println("\t\treturn " + entityName + ".class;");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic String[] columnNames() {");
+			out.println("\t\treturn COLUMN_NAMES.clone();");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic " + entityName + " newInstance() {");
+			out.println("\t\treturn new " + entityName + "();");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic Object getValue(" + entityName + " entity, int index) {");
+			out.println("\t\tswitch (index) {");
+			for (int i = 0; i < columns.size(); i++) {
+				out.println("\t\tcase " + i + ":");
+				out.println("\t\t\treturn " + columns.get(i).read + ";");
+			}
+			out.println("\t\tdefault:");
+			out.println("\t\t\tthrow new IndexOutOfBoundsException(String.valueOf(index));");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic void setValue(" + entityName + " entity, int index, Object value) {");
+			out.println("\t\tswitch (index) {");
+			for (int i = 0; i < columns.size(); i++) {
+				ColumnSource column = columns.get(i);
+				out.println("\t\tcase " + i + ":");
+				out.println("\t\t\t" + String.format(column.write, "(" + column.boxedTypeName() + ") value"));
+				out.println("\t\t\treturn;");
+			}
+			out.println("\t\tdefault:");
+			out.println("\t\t\tthrow new IndexOutOfBoundsException(String.valueOf(index));");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic void readRow(java.sql.ResultSet rs, int offset, " + entityName
+					+ " entity) throws java.sql.SQLException {");
+			for (int i = 0; i < columns.size(); i++) {
+				columns.get(i).printRead(out, i + 1);
+			}
+			out.println("\t}");
+			out.println("}");
+		}
+	}
+
+	private static String literal(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/**
+	 * 生成するカラムの情報
+	 */
+	private final class ColumnSource {
+		final String name;
+		final String typeName;
+		final TypeMirror type;
+		final String read;
+		final String write;
+
+		ColumnSource(String name, String typeName, TypeMirror type, String read, String write) {
+			this.name = name;
+			this.typeName = typeName;
+			this.type = type;
+			this.read = read;
+			this.write = write;
+		}
+
+		String boxedTypeName() {
+			if (type.getKind().isPrimitive()) {
+				return processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(
+						type.getKind())).getQualifiedName().toString();
+			}
+			return typeName;
+		}
+
+		/**
+		 * 型に応じたgetterで検索結果を読み込み、フィールドに設定するコードを出力します。
+		 * @param position 先頭カラムからの位置(1始まり)
+		 */
+		void printRead(PrintWriter out, int position) {
+			String label = "offset + " + position;
+			String boxed = boxedTypeName();
+			switch (boxed) {
+			case "java.lang.Integer":
+				printNullable(out, "int", "rs.getInt(" + label + ")");
+				break;
+			case "java.lang.Long":
+				printNullable(out, "long", "rs.getLong(" + label + ")");
+				break;
+			case "java.lang.Double":
+				printNullable(out, "double", "rs.getDouble(" + label + ")");
+				break;
+			case "java.lang.Boolean":
+				printNullable(out, "boolean", "rs.getBoolean(" + label + ")");
+				break;
+			case "java.lang.String":
+				out.println("\t\t" + String.format(write, "rs.getString(" + label + ")"));
+				break;
+			case "java.time.LocalDate":
+				printConverted(out, "java.sql.Date", "rs.getDate(" + label + ")", "%s.toLocalDate()");
+				break;
+			case "java.time.LocalTime":
+				printConverted(out, "java.sql.Time", "rs.getTime(" + label + ")", "%s.toLocalTime()");
+				break;
+			case "java.time.LocalDateTime":
+				printConverted(out, "java.sql.Timestamp", "rs.getTimestamp(" + label + ")",
+						"%s.toLocalDateTime()");
+				break;
+			case "java.util.Date":
+				printConverted(out, "java.sql.Timestamp", "rs.getTimestamp(" + label + ")",
+						"new java.util.Date(%s.getTime())");
+				break;
+			default:
+				out.println("\t\t" + String.format(write, "(" + boxed + ") rs.getObject(" + label + ")"));
+				break;
+			}
+		}
+
+		private void printNullable(PrintWriter out, String primitive, String getter) {
+			String variable = "_" + name.replaceAll("\\W", "_");
+			out.println("\t\t{");
+			out.println("\t\t\t" + primitive + " " + variable + " = " + getter + ";");
+			if (type.getKind().isPrimitive()) {
+				out.println("\t\t\tif (!rs.wasNull()) {");
+				out.println("\t\t\t\t" + String.format(write, variable));
+				out.println("\t\t\t}");
+			} else {
+				out.println("\t\t\t" + String.format(write, "rs.wasNull() ? null : " + boxedTypeName()
+						+ ".valueOf(" + variable + ")"));
+			}
+			out.println("\t\t}");
+		}
+
+		private void printConverted(PrintWriter out, String jdbcType, String getter, String conversion) {
+			String variable = "_" + name.replaceAll("\\W", "_");
+			out.println("\t\t{");
+			out.println("\t\t\t" + jdbcType + " " + variable + " = " + getter + ";");
+			out.println("\t\t\t" + String.format(write, variable + " == null ? null : "
+					+ String.format(conversion, variable)));
+			out.println("\t\t}");
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package jp.natsukishina.orm4j8;
+
+import jp.natsukishina.orm4j8.annotations.Column;
+import jp.natsukishina.orm4j8.annotations.UseTable;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+
+@UseTable("test_data")
+public class AllocatedIdTestData extends BaseEntity {
+	@Column(value = "id", primary = true, generator = "test_data")
+	private Integer id;
+
+	@Column("name")
+	private String name;
+
+	@Column("options")
+	private String options;
+
+	public AllocatedIdTestData() {
+	}
+
+	public AllocatedIdTestData(String name, String options) {
+		this.name = name;
+		this.options = options;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getOptions() {
+		return options;
+	}
+
+	public void setOptions(String options) {
+		this.options = options;
+	}
+
+}
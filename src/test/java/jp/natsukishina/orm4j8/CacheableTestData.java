@@ -0,0 +1,36 @@
+package jp.natsukishina.orm4j8;
+
+import jp.natsukishina.orm4j8.annotations.Cacheable;
+import jp.natsukishina.orm4j8.annotations.Column;
+import jp.natsukishina.orm4j8.annotations.UseTable;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+
+@UseTable("cacheable_test_data")
+@Cacheable(maxSize = 2)
+public class CacheableTestData extends BaseEntity {
+	@Column(value = "id", primary = true)
+	private Integer id;
+
+	@Column("name")
+	private String name;
+
+	public CacheableTestData() {
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+}
@@ -4,9 +4,30 @@ import static jp.natsukishina.orm4j8.Setup4DBTest.*;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -14,6 +35,11 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import jp.natsukishina.orm4j8.HasOneTestData.HasOneHasOneTestData;
+import jp.natsukishina.orm4j8.Order.Sort;
+import jp.natsukishina.orm4j8.annotations.FetchType;
+import jp.natsukishina.orm4j8.exception.DBException;
+
 public class DBTest {
 	@BeforeClass
 	public static void setUpBeforeClass() {
@@ -110,6 +136,408 @@ public class DBTest {
 		});
 	}
 
+	@Test
+	public void find_hasOne_SELECT_正常() {
+		List<TestData> dataList = DB.find(TestData.class).fetch(HasOneTestData.class, FetchType.SELECT)
+				.where("id", "<=", 6).orderBy("id").execute().getAll();
+		TestData data = dataList.get(5);
+		assertThat(data.getHasOneTestData().getId(), is(100));
+		assertThat(data.getHasOneTestData().getName(), is("has_one_100"));
+		assertThat(data.getHasOneTestData().getHasOneHasOneTestData(), notNullValue());
+	}
+
+	@Test
+	public void find_hasOne_LAZY_正常() {
+		TestData data = DB.find(TestData.class).fetch(HasOneTestData.class, FetchType.LAZY).where("id", "=", 6)
+				.execute().get();
+		assertThat(data.getHasOneTestData(), nullValue());
+		data.loadHasOne(HasOneTestData.class);
+		assertThat(data.getHasOneTestData().getId(), is(100));
+	}
+
+	@Test
+	public void find_hasOne_段数指定_正常() {
+		TestData data = DB.find(TestData.class).maxFetchDepth(1).where("id", "=", 6).execute().get();
+		assertThat(data.getHasOneTestData().getId(), is(100));
+		assertThat(data.getHasOneTestData().getHasOneHasOneTestData(), nullValue());
+	}
+
+	@Test
+	public void findList_loadHasManyまとめて_正常() {
+		List<TestData> dataList = DB.find(TestData.class).execute().getAll();
+		DB.loadHasMany(dataList, HasManyTestData.class);
+		dataList.forEach(d -> {
+			assertThat(d.getHasManyTestDataList().size(), is(manyRow));
+			d.getHasManyTestDataList().forEach(hmtd -> assertThat(hmtd.getTestDataId(), is(d.getId())));
+		});
+	}
+
+	@Test
+	public void findAllByPrimary_正常() {
+		Map<Integer, TestData> dataMap = DB.findAllByPrimary(TestData.class, Arrays.asList(3, 1, insertRow + 1, 2));
+		assertThat(new ArrayList<>(dataMap.keySet()), is(Arrays.asList(3, 1, 2)));
+		dataMap.forEach((id, data) -> assertThat(data.getId(), is(id)));
+	}
+
+	@Test
+	public void findByPrimary_型変換_正常() {
+		assertThat(DB.findByPrimary(TestData.class, 3L).getId(), is(3));
+		assertThat(DB.findByPrimary(TestData.class, "4").getId(), is(4));
+	}
+
+	@Test
+	public void identityMap_セッション_正常() {
+		TestData data;
+		try (Session session = DB.beginSession()) {
+			data = DB.findByPrimary(TestData.class, 3);
+			assertSame(data, DB.find(TestData.class).where("id", "=", 3).execute().get());
+			assertSame(data, DB.findAllByPrimary(TestData.class, Arrays.asList(2, 3)).get(3));
+		}
+		assertThat(DB.findByPrimary(TestData.class, 3), is(not(sameInstance(data))));
+	}
+
+	@Test
+	public void identityMap_stream_登録しない_正常() {
+		try (Session session = DB.beginSession()) {
+			List<TestData> streamed;
+			try (Stream<TestData> stream = DB.find(TestData.class).orderBy("id").fetchSize(2).stream()) {
+				streamed = stream.collect(Collectors.toList());
+			}
+			assertThat(streamed.size(), is(insertRow));
+			TestData data = DB.findByPrimary(TestData.class, 3);
+			assertThat(data, is(not(sameInstance(streamed.get(2)))));
+			assertSame(data, DB.findByPrimary(TestData.class, 3));
+		}
+	}
+
+	@Test
+	public void identityMap_別インスタンスで削除_正常() {
+		try (Session session = DB.beginSession()) {
+			assertThat(DB.findByPrimary(TestData.class, 3), notNullValue());
+			assertThat(DB.delete(new TestData(3, "name3", "hoge")), is(true));
+			assertThat(DB.findByPrimary(TestData.class, 3), nullValue());
+		}
+	}
+
+	@Test
+	public void findByPrimary_キャッシュ_正常() throws Exception {
+		CacheStats before = DB.getCacheStats(CacheableTestData.class);
+		CacheableTestData data = DB.findByPrimary(CacheableTestData.class, 1);
+		CacheableTestData cached = DB.findByPrimary(CacheableTestData.class, 1);
+		assertThat(cached, is(not(sameInstance(data))));
+		assertThat(cached.getName(), is("name1"));
+		CacheStats after = DB.getCacheStats(CacheableTestData.class);
+		assertThat(after.getHitCount() - before.getHitCount(), is(1L));
+		assertThat(after.getMissCount() - before.getMissCount(), is(1L));
+
+		cached.setName("updated");
+		try (Transaction tx = DB.beginTransaction()) {
+			DB.save(cached);
+			assertThat(DB.findByPrimary(CacheableTestData.class, 1).getName(), is("updated"));
+			// コミットまでは他のスレッドからキャッシュの値が見える
+			assertThat(CompletableFuture.supplyAsync(() -> DB.findByPrimary(CacheableTestData.class, 1).getName())
+					.get(), is("name1"));
+			tx.commit();
+		}
+		assertThat(DB.findByPrimary(CacheableTestData.class, 1).getName(), is("updated"));
+	}
+
+	@Test
+	public void findByPrimary_キャッシュ_LRU_正常() {
+		DB.clearCache(CacheableTestData.class);
+		Arrays.asList(1, 2, 1, 3).forEach(id -> DB.findByPrimary(CacheableTestData.class, id));
+		CacheStats before = DB.getCacheStats(CacheableTestData.class);
+		assertThat(before.getSize(), is(2));
+		DB.findByPrimary(CacheableTestData.class, 1);
+		DB.findByPrimary(CacheableTestData.class, 2);
+		CacheStats after = DB.getCacheStats(CacheableTestData.class);
+		assertThat(after.getHitCount() - before.getHitCount(), is(1L));
+		assertThat(after.getMissCount() - before.getMissCount(), is(1L));
+		assertThat(after.getEvictionCount() - before.getEvictionCount(), is(1L));
+	}
+
+	@Test
+	public void cached_正常() throws Exception {
+		List<TestData> first = DB.find(TestData.class).where("id", "<=", 3).orderBy("id").cached(Duration.ofMinutes(1))
+				.execute().getAll();
+		assertThat(first.size(), is(3));
+
+		// キャッシュを経由しない更新は反映されない
+		try (Connection con = DB.getDatabase().getConnection()) {
+			Query.Builder.createUpdateQuery(con, new TestData(1, "updated", "hoge")).execute();
+		}
+		List<TestData> cached = DB.find(TestData.class).where("id", "<=", 3).orderBy("id").cached(Duration.ofMinutes(1))
+				.execute().getAll();
+		assertThat(cached.size(), is(3));
+		assertThat(cached.get(0), is(not(sameInstance(first.get(0)))));
+		assertThat(cached.get(0).getName(), is(first.get(0).getName()));
+
+		// saveしたテーブルを参照する検索結果は破棄される
+		DB.save(new TestData(2, "saved", "hoge"));
+		List<TestData> reloaded = DB.find(TestData.class).where("id", "<=", 3).orderBy("id")
+				.cached(Duration.ofMinutes(1)).execute().getAll();
+		assertThat(reloaded.get(0).getName(), is("updated"));
+		assertThat(reloaded.get(1).getName(), is("saved"));
+	}
+
+	@Test
+	public void cached_getResultSet_正常() throws Exception {
+		List<TestData> first = DB.find(TestData.class).where("id", "<=", 3).orderBy("id").cached(Duration.ofMinutes(1))
+				.execute().getAll();
+		assertThat(first.size(), is(3));
+
+		// キャッシュから取得した場合もResultSetを返す
+		ResultSet rs = DB.find(TestData.class).where("id", "<=", 3).orderBy("id").cached(Duration.ofMinutes(1))
+				.execute().getResultSet();
+		List<Integer> ids = new ArrayList<>();
+		while (rs.next()) {
+			ids.add(rs.getInt("id"));
+		}
+		assertThat(ids, is(Arrays.asList(1, 2, 3)));
+	}
+
+	@Test
+	public void cached_get_正常() throws Exception {
+		TestData first = DB.find(TestData.class).where("id", "=", 1).cached(Duration.ofMinutes(1)).execute().get();
+		assertThat(first.getName(), is("name1"));
+
+		// キャッシュを経由しない更新は反映されない
+		try (Connection con = DB.getDatabase().getConnection()) {
+			Query.Builder.createUpdateQuery(con, new TestData(1, "updated", "hoge")).execute();
+		}
+		TestData cached = DB.find(TestData.class).where("id", "=", 1).cached(Duration.ofMinutes(1)).execute().get();
+		assertThat(cached, is(not(sameInstance(first))));
+		assertThat(cached.getName(), is("name1"));
+		assertThat(DB.find(TestData.class).where("id", "=", 1).execute().get().getName(), is("updated"));
+	}
+
+	@Test
+	public void insertAll_正常() {
+		List<TestData> dataList = IntStream.rangeClosed(1, 5).mapToObj(i -> new TestData("batch" + i, "batch"))
+				.collect(Collectors.toList());
+		assertThat(DB.insertAll(dataList), is(5));
+		assertThat(dataList.stream().map(TestData::getId).collect(Collectors.toList()),
+				is(IntStream.rangeClosed(insertRow + 1, insertRow + 5).boxed().collect(Collectors.toList())));
+		assertThat(DB.find(TestData.class).where("options", "=", "batch").count(), is(5L));
+	}
+
+	@Test
+	public void save_採番_正常() {
+		GeneratedKeyTestData data = new GeneratedKeyTestData("generated");
+		assertThat(DB.save(data), is(true));
+		assertThat(data.getId(), notNullValue());
+		assertThat(DB.findByPrimary(GeneratedKeyTestData.class, data.getId()).getName(), is("generated"));
+	}
+
+	@Test
+	public void mapper_正常() {
+		// テストのコンパイル時にEntityMapperProcessorが生成したマッパーを使用する
+		assertThat(EntityMetadata.of(GeneratedKeyTestData.class).getMapper().getClass().getName(),
+				is(GeneratedKeyTestData.class.getName() + EntityMapper.SUFFIX));
+		// 引数無しのコンストラクタが無いため生成されない
+		assertThat(EntityMetadata.of(TestData.class).getMapper(), nullValue());
+
+		GeneratedKeyTestData data = new GeneratedKeyTestData("mapped");
+		assertThat(DB.save(data), is(true));
+		GeneratedKeyTestData found = DB.find(GeneratedKeyTestData.class).where("id", "=", data.getId()).execute()
+				.get();
+		assertThat(found.getId(), is(data.getId()));
+		assertThat(found.getName(), is("mapped"));
+	}
+
+	@Test
+	public void insertAll_採番_正常() {
+		List<GeneratedKeyTestData> dataList = IntStream.rangeClosed(1, 5)
+				.mapToObj(i -> new GeneratedKeyTestData("generated" + i)).collect(Collectors.toList());
+		assertThat(DB.insertAll(dataList), is(5));
+		dataList.forEach(d -> {
+			assertThat(d.getId(), notNullValue());
+			assertThat(DB.findByPrimary(GeneratedKeyTestData.class, d.getId()).getName(), is(d.getName()));
+		});
+	}
+
+	/**
+	 * 1000から範囲を確保し、確保した回数を数える採番方法
+	 */
+	static class CountingIdGenerator extends BlockIdGenerator {
+		final AtomicInteger reserved = new AtomicInteger();
+
+		CountingIdGenerator(int blockSize) {
+			super(blockSize);
+		}
+
+		@Override
+		protected long reserve(DB.Type type, ConnectionProvider connectionProvider) {
+			return 1000 + reserved.getAndIncrement() * getBlockSize();
+		}
+	}
+
+	@Test
+	public void save_採番方法_正常() {
+		CountingIdGenerator generator = new CountingIdGenerator(10);
+		DB.registerIdGenerator("test_data", generator);
+		List<AllocatedIdTestData> dataList = IntStream.rangeClosed(1, 3)
+				.mapToObj(i -> new AllocatedIdTestData("allocated" + i, "allocated")).collect(Collectors.toList());
+		dataList.forEach(d -> assertThat(DB.save(d), is(true)));
+		assertThat(dataList.stream().map(AllocatedIdTestData::getId).collect(Collectors.toList()),
+				is(Arrays.asList(1000, 1001, 1002)));
+		assertThat(generator.reserved.get(), is(1));
+		assertThat(DB.findByPrimary(TestData.class, 1001).getName(), is("allocated2"));
+	}
+
+	@Test
+	public void configPool_採番方法を引き継ぐ_正常() {
+		CountingIdGenerator generator = new CountingIdGenerator(10);
+		DB.registerIdGenerator("test_data", generator);
+		AllocatedIdTestData first = new AllocatedIdTestData("allocated1", "allocated");
+		assertThat(DB.save(first), is(true));
+
+		Database before = DB.getDatabase();
+		DB.configPool(new PoolConfig());
+		assertThat(DB.getDatabase(), is(not(sameInstance(before))));
+		AllocatedIdTestData second = new AllocatedIdTestData("allocated2", "allocated");
+		assertThat(DB.save(second), is(true));
+		assertThat(Arrays.asList(first.getId(), second.getId()), is(Arrays.asList(1000, 1001)));
+		assertThat(generator.reserved.get(), is(1));
+	}
+
+	@Test
+	public void insertAll_採番方法_正常() {
+		CountingIdGenerator generator = new CountingIdGenerator(10);
+		DB.registerIdGenerator("test_data", generator);
+		List<AllocatedIdTestData> dataList = IntStream.rangeClosed(1, 15)
+				.mapToObj(i -> new AllocatedIdTestData("allocated" + i, "allocated")).collect(Collectors.toList());
+		assertThat(DB.insertAll(dataList), is(15));
+		assertThat(dataList.stream().map(AllocatedIdTestData::getId).collect(Collectors.toList()),
+				is(IntStream.range(1000, 1015).boxed().collect(Collectors.toList())));
+		assertThat(generator.reserved.get(), is(2));
+		assertThat(DB.find(TestData.class).where("options", "=", "allocated").count(), is(15L));
+	}
+
+	@Test
+	public void blockIdGenerator_複数スレッド_正常() {
+		CountingIdGenerator generator = new CountingIdGenerator(7);
+		int threads = 8;
+		int count = 1000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<CompletableFuture<List<Long>>> futures = IntStream.range(0, threads)
+					.mapToObj(t -> CompletableFuture.supplyAsync(() -> LongStream.range(0, count)
+							.map(i -> generator.next(null, null)).boxed().collect(Collectors.toList()), executor))
+					.collect(Collectors.toList());
+			Set<Long> ids = futures.stream().flatMap(f -> f.join().stream()).collect(Collectors.toSet());
+			assertThat(ids.size(), is(threads * count));
+			// 範囲を使い切った時だけ確保する
+			assertThat(generator.reserved.get(), is((threads * count + 6) / 7));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void tableIdGenerator_正常() throws Exception {
+		ConnectionProvider provider = DB.getDatabase()::getConnection;
+		DB.Type type = DB.getDatabase().getType();
+		TableIdGenerator generator = new TableIdGenerator(ID_ALLOCATION_TABLE, "test", 3);
+		// 行が無い場合は登録して1から確保し、使い切ると次の範囲を確保する
+		assertThat(LongStream.range(0, 4).map(i -> generator.next(type, provider)).boxed()
+				.collect(Collectors.toList()), is(Arrays.asList(1L, 2L, 3L, 4L)));
+		// 他のインスタンスは確保済みの範囲の後ろから確保する
+		assertThat(new TableIdGenerator(ID_ALLOCATION_TABLE, "test", 3).next(type, provider), is(7L));
+		try (Connection con = provider.getConnection();
+				PreparedStatement pstmt = con
+						.prepareStatement("select next_value from " + ID_ALLOCATION_TABLE + " where name = ?")) {
+			pstmt.setString(1, "test");
+			try (ResultSet rs = pstmt.executeQuery()) {
+				assertTrue(rs.next());
+				assertThat(rs.getLong(1), is(10L));
+			}
+		}
+	}
+
+	@Test
+	public void insertAll_複数行_分割_正常() {
+		Database db = DB.getDatabase();
+		db.setBatchSize(3);
+		try {
+			List<TestData> dataList = IntStream.rangeClosed(1, 10).mapToObj(i -> new TestData("batch" + i, "batch"))
+					.collect(Collectors.toList());
+			assertThat(DB.insertAll(dataList), is(10));
+			assertThat(DB.find(TestData.class).where("options", "=", "batch").orderBy("id").execute().getAll().stream()
+					.map(TestData::getName).collect(Collectors.toList()),
+					is(dataList.stream().map(TestData::getName).collect(Collectors.toList())));
+		} finally {
+			db.setBatchSize(BatchWriter.DEFAULT_BATCH_SIZE);
+		}
+	}
+
+	@Test
+	public void saveAll_deleteAll_正常() {
+		List<TestData> dataList = Arrays.asList(new TestData(1, "saved1", "batch"), new TestData(2, "saved2", "batch"),
+				new TestData(insertRow + 1, "saved3", "batch"), new TestData("saved4", "batch"));
+		assertThat(DB.saveAll(dataList), is(4));
+		assertThat(DB.findByPrimary(TestData.class, 2).getName(), is("saved2"));
+		assertThat(DB.findByPrimary(TestData.class, insertRow + 1).getName(), is("saved3"));
+		assertThat(dataList.get(3).getId(), is(insertRow + 2));
+
+		assertThat(DB.deleteAll(dataList.subList(0, 2)), is(2));
+		assertThat(DB.find(TestData.class).where("options", "=", "batch").count(), is(2L));
+		assertThat(DB.insertAll(new ArrayList<TestData>()), is(0));
+	}
+
+	@Test
+	public void upsertAll_正常() {
+		List<TestData> dataList = Arrays.asList(new TestData(1, "upserted1", "upsert"),
+				new TestData(insertRow + 1, "upserted2", "upsert"));
+		assertThat(DB.upsertAll(dataList), is(2));
+		assertThat(DB.findByPrimary(TestData.class, 1).getName(), is("upserted1"));
+		assertThat(DB.findByPrimary(TestData.class, insertRow + 1).getName(), is("upserted2"));
+		assertThat(DB.find(TestData.class).count(), is((long) insertRow + 1));
+	}
+
+	@Test
+	public void save_nativeUpsert_正常() {
+		Database db = DB.getDatabase();
+		db.setNativeUpsert(true);
+		try {
+			assertThat(DB.save(new TestData(1, "upserted1", "upsert")), is(true));
+			assertThat(DB.save(new TestData(insertRow + 1, "upserted2", "upsert")), is(true));
+			assertThat(DB.findByPrimary(TestData.class, 1).getName(), is("upserted1"));
+			assertThat(DB.findByPrimary(TestData.class, insertRow + 1).getName(), is("upserted2"));
+			assertThat(DB.find(TestData.class).count(), is((long) insertRow + 1));
+		} finally {
+			db.setNativeUpsert(false);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void upsertAll_主キー無し_異常() {
+		DB.upsertAll(Arrays.asList(new TestData("name", "upsert")));
+	}
+
+	@Test
+	public void whereIn_正常() {
+		List<TestData> dataList = DB.find(TestData.class).whereIn("id", Arrays.asList(2, 4, 6)).orderBy("id")
+				.execute().getAll();
+		assertThat(dataList.stream().map(TestData::getId).collect(Collectors.toList()), is(Arrays.asList(2, 4, 6)));
+		assertThat(DB.find(TestData.class).whereIn("id", new ArrayList<>()).execute().getAll().size(), is(0));
+	}
+
+	@Test
+	public void find_hasOne_同名カラム_正常() {
+		DB.save(new TestData(6, "new_name", "new_option"));
+		HasOneTestData hasOne = new HasOneTestData();
+		hasOne.setId(100);
+		hasOne.setName("has_one_100");
+		hasOne.setTestDataId(6);
+		DB.save(hasOne);
+
+		TestData data = DB.find(TestData.class).where("id", "=", 6).execute().get();
+		assertThat(data.getId(), is(6));
+		assertThat(data.getHasOneTestData().getId(), is(100));
+		assertThat(data.getHasOneTestData().getName(), is("has_one_100"));
+	}
+
 	@Test
 	public void findList_loadHasMany_正常() {
 		List<TestData> dataList = DB.find(TestData.class).execute().getAll();
@@ -143,6 +571,149 @@ public class DBTest {
 		assertThat(dataList.get(1).getName(), is("name4"));
 	}
 
+	@Test
+	public void find_並列_正常() {
+		List<TestData> dataList = IntStream.range(0, insertRow * 4).parallel()
+				.mapToObj(idx -> DB.find(TestData.class).where("id", "=", idx % insertRow + 1).execute().get())
+				.collect(Collectors.toList());
+		dataList.forEach(d -> assertThat(d, notNullValue()));
+	}
+
+	@Test
+	public void stream_正常() {
+		try (Stream<TestData> stream = DB.find(TestData.class).orderBy("id").fetchSize(2).stream()) {
+			List<Integer> ids = stream.map(TestData::getId).collect(Collectors.toList());
+			assertThat(ids, is(IntStream.rangeClosed(1, insertRow).boxed().collect(Collectors.toList())));
+		}
+	}
+
+	@Test
+	public void stream_途中で閉じる_正常() {
+		try (Stream<TestData> stream = DB.find(TestData.class).fetchSize(1).stream()) {
+			assertThat(stream.findFirst().isPresent(), is(true));
+		}
+		// コネクションが返却されていれば続けて検索できる
+		assertThat(DB.find(TestData.class).execute().getAll().size(), is(insertRow));
+	}
+
+	@Test
+	public void forEach_正常() {
+		List<TestData> dataList = new ArrayList<>();
+		DB.find(TestData.class).where("options", "=", "hoge").forEach(dataList::add);
+		assertThat(dataList.size(), is(insertRow));
+	}
+
+	@Test
+	public void select_DTO_正常() {
+		List<IdName> dataList = DB.find(TestData.class).select("id", "name").orderBy("id").execute()
+				.getAll(IdName.class);
+		assertThat(dataList.size(), is(insertRow));
+		assertThat(dataList.get(0).id, is(1));
+		assertThat(dataList.get(0).name, is("name1"));
+	}
+
+	@Test
+	public void select_エンティティ_正常() {
+		TestData data = DB.find(TestData.class).select("id").where("name", "=", "name2").execute().get();
+		assertThat(data.getId(), is(2));
+		assertThat(data.getName(), nullValue());
+		assertThat(data.getHasOneTestData(), nullValue());
+	}
+
+	@Test
+	public void pluck_正常() {
+		long[] ids = DB.find(TestData.class).orderBy("id").pluckLong("id");
+		assertThat(ids.length, is(insertRow));
+		assertThat(ids[0], is(1L));
+		assertThat(ids[insertRow - 1], is((long) insertRow));
+
+		List<String> names = DB.find(TestData.class).where("id", "=", 3).pluck("name", String.class);
+		assertThat(names, is(Arrays.asList("name3")));
+	}
+
+	@Test
+	public void count_正常() {
+		assertThat(DB.find(TestData.class).count(), is((long) insertRow));
+		assertThat(DB.find(TestData.class).where("id", "<=", 3).orderBy("id").limit(1).count(), is(3L));
+	}
+
+	@Test
+	public void exists_正常() {
+		assertTrue(DB.find(TestData.class).where("id", "=", 1).exists());
+		assertFalse(DB.find(TestData.class).where("id", "=", insertRow + 1).exists());
+	}
+
+	@Test
+	public void max_正常() {
+		assertThat(DB.find(TestData.class).max("id", Integer.class), is(insertRow));
+		assertThat(DB.find(TestData.class).min("id", Integer.class), is(1));
+		assertThat(DB.find(TestData.class).where("id", ">", insertRow).max("id", Integer.class), is(nullValue()));
+	}
+
+	@Test
+	public void countBy_正常() {
+		Map<String, Long> counts = DB.find(TestData.class).countBy("options", String.class);
+		assertThat(counts.size(), is(1));
+		assertThat(counts.get("hoge"), is((long) insertRow));
+	}
+
+	@Test
+	public void page_正常() {
+		Page<TestData> first = DB.find(TestData.class).page(4);
+		assertThat(first.getItems().stream().map(TestData::getId).collect(Collectors.toList()),
+				is(Arrays.asList(1, 2, 3, 4)));
+		assertTrue(first.hasNext());
+
+		Page<TestData> second = DB.find(TestData.class).page(4, first.getNextToken());
+		assertThat(second.getItems().stream().map(TestData::getId).collect(Collectors.toList()),
+				is(Arrays.asList(5, 6, 7, 8)));
+
+		Page<TestData> last = DB.find(TestData.class).page(4, second.getNextToken());
+		assertThat(last.getItems().size(), is(insertRow - 8));
+		assertFalse(last.hasNext());
+		assertThat(last.getNextToken(), is(nullValue()));
+	}
+
+	@Test
+	public void pages_降順_正常() {
+		List<Integer> ids = new ArrayList<>();
+		int pageCount = 0;
+		Iterator<Page<TestData>> pages = DB.find(TestData.class).where("options", "=", "hoge")
+				.orderBy("id", Sort.DESC).pages(3);
+		while (pages.hasNext()) {
+			pages.next().getItems().forEach(data -> ids.add(data.getId()));
+			pageCount++;
+		}
+		assertThat(pageCount, is((insertRow + 2) / 3));
+		assertThat(ids, is(IntStream.rangeClosed(1, insertRow).map(i -> insertRow + 1 - i).boxed()
+				.collect(Collectors.toList())));
+	}
+
+	@Test(expected = DBException.class)
+	public void page_ソート順が異なるトークン_異常() {
+		Page<TestData> first = DB.find(TestData.class).orderBy("id", Sort.ASC).page(4);
+		DB.find(TestData.class).orderBy("id", Sort.DESC).page(4, first.getNextToken());
+	}
+
+	static class IdName {
+		final int id;
+		final String name;
+
+		IdName(int id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+	}
+
+	@Test
+	public void fieldValue_正常() {
+		TestData data = new TestData(6, "new_name", "new_option");
+		assertThat(DBUtil.getFieldValue(DBUtil.getField(TestData.class, "name"), data), is("new_name"));
+		DBUtil.setFieldValue(DBUtil.getField(TestData.class, "name"), data, "renamed");
+		assertThat(data.getName(), is("renamed"));
+		assertThat(DBUtil.getPrimaryValue(data), is(6));
+	}
+
 	@Test
 	public void findList_正常_存在しない() {
 		List<TestData> dataList = DB.find(TestData.class).where("name", "=", "not exist user").execute().getAll();
@@ -234,4 +805,194 @@ public class DBTest {
 		DB.delete(null);
 	}
 
+	// Database
+
+	@Test
+	public void database_インスタンス_正常() {
+		try (Database database = createDatabase()) {
+			TestData data = database.find(TestData.class).where("id", "=", 3).execute().get();
+			assertThat(data, notNullValue());
+			assertThat(data.getName(), is("name3"));
+		}
+	}
+
+	@Test
+	public void route_ShardRouter_正常() {
+		try (Database other = createDatabase()) {
+			ShardRouter router = new ShardRouter(DB.getDatabase(), other).pin(HasOneTestData.class, other);
+			DB.configRouter(router);
+			assertThat(DB.route(TestData.class, 2), is(DB.getDatabase()));
+			assertThat(DB.route(TestData.class, 3), is(other));
+			assertThat(DB.route(HasOneTestData.class, 2), is(other));
+			assertThat(DB.route(new TestData(4, "name4", "hoge")), is(DB.getDatabase()));
+		} finally {
+			DB.configRouter(null);
+		}
+	}
+
+	@Test
+	public void route_ShardRouter_close_正常() {
+		AtomicInteger shardReleased = new AtomicInteger();
+		AtomicInteger pinnedReleased = new AtomicInteger();
+		Database shard = new Database(DB.getDatabase().getType(), new ConnectionProvider() {
+			@Override
+			public Connection getConnection() {
+				return DB.getDatabase().getConnection();
+			}
+
+			@Override
+			public void close() {
+				shardReleased.incrementAndGet();
+			}
+		});
+		Database pinned = new Database(DB.getDatabase().getType(), new ConnectionProvider() {
+			@Override
+			public Connection getConnection() {
+				return DB.getDatabase().getConnection();
+			}
+
+			@Override
+			public void close() {
+				pinnedReleased.incrementAndGet();
+			}
+		});
+		new ShardRouter(shard).pin(HasOneTestData.class, pinned).pin(HasManyTestData.class, shard).close();
+		// 同じデータベースは1度だけ破棄する
+		assertThat(shardReleased.get(), is(1));
+		assertThat(pinnedReleased.get(), is(1));
+	}
+
+	@Test
+	public void configReplicas_書き込み後はプライマリから読む() {
+		try (Database primary = createDatabase(); Database replica = createDatabase()) {
+			primary.configReplicas(ReplicaSelector.LEAST_LOADED, replica);
+			assertThat(primary.find(TestData.class).where("id", "=", 1).execute().get(), notNullValue());
+			TestData data = primary.transaction(() -> {
+				primary.save(new TestData(102, "tx_name", "tx_option"));
+				return primary.find(TestData.class).where("id", "=", 102).execute().get();
+			});
+			assertThat(data, notNullValue());
+		}
+	}
+
+	/**
+	 * closeの呼び出し回数を数えるコネクションを生成します。
+	 */
+	private static Connection countClose(Connection connection, AtomicInteger closed) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					if (method.getName().equals("close")) {
+						closed.incrementAndGet();
+					}
+					try {
+						return method.invoke(connection, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	@Test
+	public void getResultSet_コネクション返却_正常() throws Exception {
+		AtomicInteger closed = new AtomicInteger();
+		try (Database database = new Database(DB.getDatabase().getType(),
+				() -> countClose(DB.getDatabase().getConnection(), closed))) {
+			ResultSet rs = database.find(TestData.class).where("id", "<=", 3).execute().getResultSet();
+			// 結果を読み出す前にコネクションを返却する
+			assertThat(closed.get(), is(1));
+			int count = 0;
+			while (rs.next()) {
+				count++;
+			}
+			assertThat(count, is(3));
+		}
+	}
+
+	@Test
+	public void config_DataSource_正常() {
+		AtomicInteger borrowed = new AtomicInteger();
+		AtomicInteger closed = new AtomicInteger();
+		try (Database origin = createDatabase()) {
+			DataSource dataSource = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+					new Class<?>[] { DataSource.class }, (proxy, method, args) -> {
+						if (!method.getName().equals("getConnection")) {
+							throw new UnsupportedOperationException(method.getName());
+						}
+						borrowed.incrementAndGet();
+						return countClose(origin.getConnection(), closed);
+					});
+			DB.config(origin.getType(), dataSource);
+			assertThat(DB.find(TestData.class).orderBy("id").pluckLong("id").length, is(insertRow));
+			assertThat(DB.find(TestData.class).where("id", "<=", 3).pluckLong("id").length, is(3));
+			// 操作ごとにDataSourceから取得し、完了後にcloseで返却する
+			assertThat(borrowed.get(), is(2));
+			assertThat(closed.get(), is(2));
+		} finally {
+			config();
+		}
+	}
+
+	@Test
+	public void config_ConnectionProvider_正常() {
+		AtomicInteger borrowed = new AtomicInteger();
+		AtomicInteger closed = new AtomicInteger();
+		AtomicInteger released = new AtomicInteger();
+		try (Database origin = createDatabase()) {
+			DB.config(origin.getType(), new ConnectionProvider() {
+				@Override
+				public Connection getConnection() {
+					borrowed.incrementAndGet();
+					return countClose(origin.getConnection(), closed);
+				}
+
+				@Override
+				public void close() {
+					released.incrementAndGet();
+				}
+			});
+			DB.transaction(() -> {
+				DB.save(new TestData(103, "provider_name", "provider_option"));
+				return DB.find(TestData.class).where("id", "=", 103).pluckLong("id");
+			});
+			// トランザクション内は1つのコネクションを使用する
+			assertThat(borrowed.get(), is(1));
+			assertThat(closed.get(), is(1));
+			assertThat(released.get(), is(0));
+		} finally {
+			config();
+		}
+		// 設定を変更すると取得元を破棄する
+		assertThat(released.get(), is(1));
+	}
+
+	// Transaction
+
+	@Test
+	public void transaction_rollback_正常系() {
+		try (Transaction tx = DB.beginTransaction()) {
+			assertThat(DB.save(new TestData(100, "tx_name", "tx_option")), is(true));
+			assertThat(DB.find(TestData.class).where("id", "=", 100).execute().get(), notNullValue());
+			tx.rollback();
+		}
+		assertThat(DB.find(TestData.class).where("id", "=", 100).execute().get(), nullValue());
+	}
+
+	@Test
+	public void transaction_別スレッドから見えない() {
+		DB.transaction(() -> {
+			assertThat(DB.save(new TestData(101, "tx_name", "tx_option")), is(true));
+			TestData[] other = new TestData[1];
+			Thread thread = new Thread(() -> other[0] = DB.find(TestData.class).where("id", "=", 101).execute().get());
+			thread.start();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			assertThat(other[0], nullValue());
+			return null;
+		});
+		assertThat(DB.find(TestData.class).where("id", "=", 101).execute().get(), notNullValue());
+	}
+
 }
@@ -0,0 +1,38 @@
+package jp.natsukishina.orm4j8;
+
+import jp.natsukishina.orm4j8.annotations.Column;
+import jp.natsukishina.orm4j8.annotations.UseTable;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+
+@UseTable("generated_key_test_data")
+public class GeneratedKeyTestData extends BaseEntity {
+	@Column(value = "id", primary = true, generated = true)
+	private Long id;
+
+	@Column("name")
+	private String name;
+
+	public GeneratedKeyTestData() {
+	}
+
+	public GeneratedKeyTestData(String name) {
+		this.name = name;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+}
@@ -27,6 +27,21 @@ public class Setup4DBTest {
 		DB.config(type, host, port, dbName, user, pass, option);
 	}
 
+	/**
+	 * DB設定と同じ接続先のDatabaseインスタンスを生成
+	 */
+	static Database createDatabase() {
+		Properties properties = loadProperties();
+		Type type = Type.valueOf(properties.getProperty("type"));
+		String host = properties.getProperty("host");
+		int port = Integer.parseInt(properties.getProperty("port"));
+		String dbName = properties.getProperty("dbName");
+		String user = properties.getProperty("user");
+		String pass = properties.getProperty("pass");
+		String[] option = properties.getProperty("option").split(",");
+		return new Database(type, host, port, dbName, user, pass, option);
+	}
+
 	private static Properties loadProperties() {
 		try(InputStream inputStream = new FileInputStream("src/test/resources/test.properties")) {
 			Properties properties = new Properties();
@@ -40,6 +55,7 @@ public class Setup4DBTest {
 
 	static final int insertRow = 10;
 	static final int manyRow = 3;
+	static final String ID_ALLOCATION_TABLE = "id_allocation_test_data";
 
 	@SuppressWarnings("deprecation")
 	static void createTables() {
@@ -82,6 +98,30 @@ public class Setup4DBTest {
 		sql.append(", has_one_test_data_id int");
 		sql.append(");");
 		DB.rawQuery(HasManyTestData.class, sql.toString()).execute();
+
+		sql = new StringBuilder("create table ");
+		sql.append(DBUtil.getTableName(GeneratedKeyTestData.class));
+		sql.append(" (");
+		sql.append("id bigint auto_increment primary key");
+		sql.append(", name varchar(20)");
+		sql.append(");");
+		DB.rawQuery(GeneratedKeyTestData.class, sql.toString()).execute();
+
+		sql = new StringBuilder("create table ");
+		sql.append(DBUtil.getTableName(CacheableTestData.class));
+		sql.append(" (");
+		sql.append("id int primary key");
+		sql.append(", name varchar(20)");
+		sql.append(");");
+		DB.rawQuery(CacheableTestData.class, sql.toString()).execute();
+
+		sql = new StringBuilder("create table ");
+		sql.append(ID_ALLOCATION_TABLE);
+		sql.append(" (");
+		sql.append("name varchar(64) primary key");
+		sql.append(", next_value bigint not null");
+		sql.append(");");
+		DB.rawQuery(TestData.class, sql.toString()).execute();
 }
 
 	@SuppressWarnings("deprecation")
@@ -102,6 +142,18 @@ public class Setup4DBTest {
 		sql.append(DBUtil.getTableName(HasOneHasOneTestData.class));
 		sql.append(";");
 		DB.rawQuery(HasOneHasOneTestData.class, sql.toString()).execute();
+		sql = new StringBuilder("drop table if exists ");
+		sql.append(DBUtil.getTableName(GeneratedKeyTestData.class));
+		sql.append(";");
+		DB.rawQuery(GeneratedKeyTestData.class, sql.toString()).execute();
+		sql = new StringBuilder("drop table if exists ");
+		sql.append(DBUtil.getTableName(CacheableTestData.class));
+		sql.append(";");
+		DB.rawQuery(CacheableTestData.class, sql.toString()).execute();
+		sql = new StringBuilder("drop table if exists ");
+		sql.append(ID_ALLOCATION_TABLE);
+		sql.append(";");
+		DB.rawQuery(TestData.class, sql.toString()).execute();
 	}
 
 	@SuppressWarnings("deprecation")
@@ -148,6 +200,16 @@ public class Setup4DBTest {
 			sql.append(idx + 1);
 			sql.append(");");
 			DB.rawQuery(HasOneHasOneTestData.class, sql.toString()).execute();
+
+			sql = new StringBuilder("insert into ");
+			sql.append(DBUtil.getTableName(CacheableTestData.class));
+			sql.append(" values (");
+			sql.append(idx + 1);
+			sql.append(", '");
+			sql.append("name");
+			sql.append(idx + 1);
+			sql.append("');");
+			DB.rawQuery(CacheableTestData.class, sql.toString()).execute();
 });
 		IntStream.range(0, insertRow * manyRow).forEach(idx -> {
 			StringBuilder sql = new StringBuilder("insert into ");
@@ -184,6 +246,18 @@ public class Setup4DBTest {
 		sql.append(DBUtil.getTableName(HasOneHasOneTestData.class));
 		sql.append(";");
 		DB.rawQuery(HasOneHasOneTestData.class, sql.toString()).execute();
+		sql = new StringBuilder("delete from ");
+		sql.append(DBUtil.getTableName(GeneratedKeyTestData.class));
+		sql.append(";");
+		DB.rawQuery(GeneratedKeyTestData.class, sql.toString()).execute();
+		sql = new StringBuilder("delete from ");
+		sql.append(DBUtil.getTableName(CacheableTestData.class));
+		sql.append(";");
+		DB.rawQuery(CacheableTestData.class, sql.toString()).execute();
+		sql = new StringBuilder("delete from ");
+		sql.append(ID_ALLOCATION_TABLE);
+		sql.append(";");
+		DB.rawQuery(TestData.class, sql.toString()).execute();
 	}
 
 }
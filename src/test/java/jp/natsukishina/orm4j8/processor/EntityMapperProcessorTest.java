@@ -0,0 +1,102 @@
+package jp.natsukishina.orm4j8.processor;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jp.natsukishina.orm4j8.EntityMapper;
+import jp.natsukishina.orm4j8.entity.BaseEntity;
+
+public class EntityMapperProcessorTest {
+	private Path dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("processor");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.walk(dir).sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+	}
+
+	@Test
+	public void process_正常() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			// JDKでない場合は実行できない
+			return;
+		}
+		Path mapped = write("sample/Mapped.java", "package sample;",
+				"@jp.natsukishina.orm4j8.annotations.UseTable(\"mapped\")",
+				"public class Mapped extends jp.natsukishina.orm4j8.entity.BaseEntity {",
+				"	@jp.natsukishina.orm4j8.annotations.Column(value = \"id\", primary = true)",
+				"	private Integer id;",
+				"	@jp.natsukishina.orm4j8.annotations.Column(\"name\")",
+				"	String name;",
+				"	public Integer getId() { return id; }",
+				"	public void setId(Integer id) { this.id = id; }",
+				"}");
+		Path skipped = write("sample/Skipped.java", "package sample;",
+				"@jp.natsukishina.orm4j8.annotations.UseTable(\"skipped\")",
+				"public class Skipped extends jp.natsukishina.orm4j8.entity.BaseEntity {",
+				"	@jp.natsukishina.orm4j8.annotations.Column(\"id\")",
+				"	Integer id;",
+				"	public Skipped(Integer id) { this.id = id; }",
+				"}");
+		Path notEntity = write("sample/NotEntity.java", "package sample;",
+				"@jp.natsukishina.orm4j8.annotations.UseTable(\"not_entity\")",
+				"public class NotEntity {",
+				"	@jp.natsukishina.orm4j8.annotations.Column(\"id\")",
+				"	Integer id;",
+				"}");
+		Path classes = Files.createDirectories(dir.resolve("classes"));
+		Path generated = Files.createDirectories(dir.resolve("generated"));
+		int result = compiler.run(null, null, null, "-processor", EntityMapperProcessor.class.getName(),
+				"-classpath", System.getProperty("java.class.path"), "-d", classes.toString(), "-s",
+				generated.toString(), mapped.toString(), skipped.toString(), notEntity.toString());
+		assertThat(result, is(0));
+
+		assertTrue(Files.exists(generated.resolve("sample/Mapped" + EntityMapper.SUFFIX + ".java")));
+		assertFalse(Files.exists(generated.resolve("sample/Skipped" + EntityMapper.SUFFIX + ".java")));
+		assertFalse(Files.exists(generated.resolve("sample/NotEntity" + EntityMapper.SUFFIX + ".java")));
+
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { classes.toUri().toURL() },
+				getClass().getClassLoader())) {
+			@SuppressWarnings("unchecked")
+			EntityMapper<BaseEntity> mapper = (EntityMapper<BaseEntity>) loader
+					.loadClass("sample.Mapped" + EntityMapper.SUFFIX).getDeclaredConstructor().newInstance();
+			assertThat(Arrays.asList(mapper.columnNames()), is(Arrays.asList("id", "name")));
+			BaseEntity entity = mapper.newInstance();
+			assertThat(entity.getClass().getName(), is("sample.Mapped"));
+			mapper.setValue(entity, 0, 1);
+			mapper.setValue(entity, 1, "mapped");
+			assertThat(mapper.getValue(entity, 0), is((Object) 1));
+			assertThat(mapper.getValue(entity, 1), is((Object) "mapped"));
+		}
+	}
+
+	private Path write(String name, String... lines) throws IOException {
+		Path file = dir.resolve(name);
+		Files.createDirectories(file.getParent());
+		List<String> source = Arrays.asList(lines);
+		Files.write(file, source, StandardCharsets.UTF_8);
+		return file;
+	}
+}